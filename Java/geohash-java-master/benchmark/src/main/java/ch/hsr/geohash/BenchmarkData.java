@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import java.util.Random;
+
+/**
+ * Random inputs created once per trial so that the benchmarks don't measure
+ * the cost of the random number generator. Benchmarks cycle through the
+ * inputs with {@link #next(int)}.
+ */
+final class BenchmarkData {
+	static final int SIZE = 1024;
+	private static final int MASK = SIZE - 1;
+
+	final double[] latitudes = new double[SIZE];
+	final double[] longitudes = new double[SIZE];
+	final WGS84Point[] points = new WGS84Point[SIZE];
+
+	BenchmarkData() {
+		Random rand = new Random(9817298371L);
+		for (int i = 0; i < SIZE; i++) {
+			latitudes[i] = rand.nextDouble() * 180 - 90;
+			longitudes[i] = rand.nextDouble() * 360 - 180;
+			points[i] = new WGS84Point(latitudes[i], longitudes[i]);
+		}
+	}
+
+	static int next(int index) {
+		return (index + 1) & MASK;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.hsr.geohash.util.DistanceStrategy;
+
+@State(Scope.Thread)
+public class DistanceStrategyBenchmark {
+	private static final WGS84Point CENTER = new WGS84Point(47.3769, 8.5417);
+
+	@Param({ "VINCENTY", "HAVERSINE", "EQUIRECTANGULAR" })
+	public DistanceStrategy strategy;
+
+	private double[] latitudes;
+	private double[] longitudes;
+	private int[] indexes;
+	private int index;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		latitudes = new double[BenchmarkData.SIZE];
+		longitudes = new double[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			// within about 100km of the center
+			latitudes[i] = CENTER.getLatitude() + data.latitudes[i] / 90;
+			longitudes[i] = CENTER.getLongitude() + data.longitudes[i] / 180;
+		}
+		indexes = new int[BenchmarkData.SIZE];
+	}
+
+	@Benchmark
+	public double distanceInMeters() {
+		index = BenchmarkData.next(index);
+		return strategy.distanceInMeters(CENTER.getLatitude(), CENTER.getLongitude(), latitudes[index],
+				longitudes[index]);
+	}
+
+	/**
+	 * filters {@link BenchmarkData#SIZE} points per operation.
+	 */
+	@Benchmark
+	public int filterWithinRadius() {
+		return strategy.filterWithinRadius(CENTER, 50000, latitudes, longitudes, indexes);
+	}
+}
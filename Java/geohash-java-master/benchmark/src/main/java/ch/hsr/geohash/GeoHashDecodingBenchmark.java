@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class GeoHashDecodingBenchmark {
+	private String[] base32;
+	private long[] longValues;
+	private long[] packed;
+	private double[] box;
+	private int index;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		base32 = new String[BenchmarkData.SIZE];
+		longValues = new long[BenchmarkData.SIZE];
+		packed = new long[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			// between 2 and 12 characters
+			GeoHash hash = GeoHash.withCharacterPrecision(data.latitudes[i], data.longitudes[i], 2 + i % 11);
+			base32[i] = hash.toBase32();
+			longValues[i] = hash.longValue();
+			packed[i] = hash.toPackedLong();
+		}
+		box = new double[4];
+	}
+
+	@Benchmark
+	public GeoHash fromGeohashString() {
+		index = BenchmarkData.next(index);
+		return GeoHash.fromGeohashString(base32[index]);
+	}
+
+	@Benchmark
+	public GeoHash fromLongValue() {
+		index = BenchmarkData.next(index);
+		return GeoHash.fromLongValue(longValues[index], base32[index].length() * 5);
+	}
+
+	@Benchmark
+	public double[] decodePackedLong() {
+		index = BenchmarkData.next(index);
+		GeoHash.decodePackedLong(packed[index], box, 0);
+		return box;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class GeoHashEncodingBenchmark {
+	private BenchmarkData data;
+	private GeoHash[] hashes;
+	private long[] packed;
+	private char[] chars;
+	private int index;
+
+	@Setup
+	public void setup() {
+		data = new BenchmarkData();
+		hashes = new GeoHash[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			hashes[i] = GeoHash.withCharacterPrecision(data.latitudes[i], data.longitudes[i], 12);
+		}
+		packed = new long[BenchmarkData.SIZE];
+		chars = new char[12];
+	}
+
+	@Benchmark
+	public GeoHash withCharacterPrecision() {
+		index = BenchmarkData.next(index);
+		return GeoHash.withCharacterPrecision(data.latitudes[index], data.longitudes[index], 12);
+	}
+
+	@Benchmark
+	public GeoHash withBitPrecision() {
+		index = BenchmarkData.next(index);
+		return GeoHash.withBitPrecision(data.latitudes[index], data.longitudes[index], 64);
+	}
+
+	@Benchmark
+	public String toBase32() {
+		index = BenchmarkData.next(index);
+		return hashes[index].toBase32();
+	}
+
+	@Benchmark
+	public long encodeToPackedLong() {
+		index = BenchmarkData.next(index);
+		return GeoHash.encodeToPackedLong(data.latitudes[index], data.longitudes[index], 12);
+	}
+
+	@Benchmark
+	public char[] packedLongToBase32() {
+		index = BenchmarkData.next(index);
+		GeoHash.packedLongToBase32(hashes[index].toPackedLong(), chars, 0);
+		return chars;
+	}
+
+	/**
+	 * encodes {@link BenchmarkData#SIZE} points per operation.
+	 */
+	@Benchmark
+	public long[] encodeToPackedLongsBatch() {
+		GeoHash.encodeToPackedLongs(data.latitudes, data.longitudes, 12, packed);
+		return packed;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.hsr.geohash.util.BoundingBoxGeoHashIterator;
+import ch.hsr.geohash.util.TwoGeoHashBoundingBox;
+
+@State(Scope.Thread)
+public class GeoHashNeighbourBenchmark {
+	private GeoHash[] hashes;
+	private TwoGeoHashBoundingBox iteratorBox;
+	private int index;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		hashes = new GeoHash[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			hashes[i] = GeoHash.withCharacterPrecision(data.latitudes[i], data.longitudes[i], 8);
+		}
+		// about 100 hashes of 7 characters around Zurich
+		iteratorBox = TwoGeoHashBoundingBox.withCharacterPrecision(new BoundingBox(47.37, 47.38, 8.53, 8.545), 7);
+	}
+
+	@Benchmark
+	public GeoHash[] getAdjacent() {
+		index = BenchmarkData.next(index);
+		return hashes[index].getAdjacent();
+	}
+
+	@Benchmark
+	public GeoHash next() {
+		index = BenchmarkData.next(index);
+		return hashes[index].next();
+	}
+
+	@Benchmark
+	public long stepsBetween() {
+		index = BenchmarkData.next(index);
+		return GeoHash.stepsBetween(hashes[index], hashes[BenchmarkData.next(index)]);
+	}
+
+	@Benchmark
+	public void boundingBoxGeoHashIterator(Blackhole bh) {
+		BoundingBoxGeoHashIterator iterator = new BoundingBoxGeoHashIterator(iteratorBox);
+		while (iterator.hasNext()) {
+			bh.consume(iterator.next());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.queries.GeoHashCoverer;
+import ch.hsr.geohash.queries.GeoHashPolygonQuery;
+import ch.hsr.geohash.queries.GeoHashRange;
+
+@State(Scope.Thread)
+public class GeoHashQueryBenchmark {
+	private static final WGS84Point CENTER = new WGS84Point(47.3769, 8.5417);
+	private static final BoundingBox BOX = new BoundingBox(47.30, 47.42, 8.45, 8.65);
+	private static final List<WGS84Point> L_SHAPE = Arrays.asList(new WGS84Point(47.30, 8.45), new WGS84Point(
+			47.30, 8.65), new WGS84Point(47.35, 8.65), new WGS84Point(47.35, 8.50), new WGS84Point(47.42, 8.50),
+			new WGS84Point(47.42, 8.45));
+
+	private GeoHashCoverer coverer;
+	private GeoHashCircleQuery circleQuery;
+	private GeoHashPolygonQuery polygonQuery;
+	private WGS84Point[] points;
+	private int index;
+
+	@Setup
+	public void setup() {
+		coverer = new GeoHashCoverer(32, 0, 50, 0);
+		circleQuery = new GeoHashCircleQuery(CENTER, 5000);
+		polygonQuery = new GeoHashPolygonQuery(L_SHAPE);
+		points = new WGS84Point[BenchmarkData.SIZE];
+		BenchmarkData data = new BenchmarkData();
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			// spread over the bounding box of the queries
+			points[i] = new WGS84Point(47.28 + (data.latitudes[i] + 90) / 180 * 0.16,
+					8.43 + (data.longitudes[i] + 180) / 360 * 0.24);
+		}
+	}
+
+	@Benchmark
+	public GeoHashCircleQuery circleQuery() {
+		return new GeoHashCircleQuery(CENTER, 5000);
+	}
+
+	@Benchmark
+	public GeoHashBoundingBoxQuery boundingBoxQuery() {
+		return new GeoHashBoundingBoxQuery(BOX);
+	}
+
+	@Benchmark
+	public List<GeoHashRange> boundingBoxCoveringRanges() {
+		return coverer.getCoveringRanges(BOX, 60);
+	}
+
+	@Benchmark
+	public GeoHashPolygonQuery polygonQuery() {
+		return new GeoHashPolygonQuery(L_SHAPE);
+	}
+
+	@Benchmark
+	public boolean circleQueryContains() {
+		index = BenchmarkData.next(index);
+		return circleQuery.contains(points[index]);
+	}
+
+	@Benchmark
+	public boolean polygonQueryContains() {
+		index = BenchmarkData.next(index);
+		return polygonQuery.contains(points[index]);
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.hsr.geohash.util.VincentyGeodesy;
+
+@State(Scope.Thread)
+public class VincentyGeodesyBenchmark {
+	private BenchmarkData data;
+	private int index;
+
+	@Setup
+	public void setup() {
+		data = new BenchmarkData();
+	}
+
+	@Benchmark
+	public double distanceInMeters() {
+		index = BenchmarkData.next(index);
+		return VincentyGeodesy.distanceInMeters(data.points[index], data.points[BenchmarkData.next(index)]);
+	}
+
+	@Benchmark
+	public WGS84Point moveInDirection() {
+		index = BenchmarkData.next(index);
+		return VincentyGeodesy.moveInDirection(data.points[index], index % 360, 5000);
+	}
+}
@@ -21,6 +21,7 @@ public final class GeoHash implements Comparable<GeoHash>, Serializable {
 	private static final int[] BITS = { 16, 8, 4, 2, 1 };
 	private static final int BASE32_BITS = 5;
 	public static final long FIRST_BIT_FLAGGED = 0x8000000000000000l;
+	private static final long PACKED_PRECISION_MASK = 0xfl;
 	private static final char[] base32 = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'b', 'c', 'd', 'e', 'f',
 			'g', 'h', 'j', 'k', 'm', 'n', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z' };
 
@@ -160,6 +161,181 @@ public final class GeoHash implements Comparable<GeoHash>, Serializable {
 		return hash.toBase32();
 	}
 
+	/**
+	 * Encodes the given point with the given number of characters precision to
+	 * a single long without creating any objects. The hash bits are left
+	 * aligned as in {@link #longValue()} and the number of characters is
+	 * stored in the lowest 4 bits, which are always zero for a hash of at most
+	 * 12 characters. The result can be passed to
+	 * {@link #decodePackedLong(long, double[], int)},
+	 * {@link #packedLongToBase32(long, char[], int)} or
+	 * {@link #fromPackedLong(long)}.
+	 */
+	public static long encodeToPackedLong(double latitude, double longitude, int numberOfCharacters) {
+		checkPackedPrecision(numberOfCharacters);
+		checkLatLon(latitude, longitude);
+		return encodeBits(latitude, longitude, numberOfCharacters * BASE32_BITS) | numberOfCharacters;
+	}
+
+	/**
+	 * Encodes every <code>(latitudes[i], longitudes[i])</code> pair like
+	 * {@link #encodeToPackedLong(double, double, int)} and writes the results
+	 * to <code>result</code>, which must be at least as long as the input
+	 * arrays. Nothing is allocated so this can be called repeatedly with the
+	 * same buffers.
+	 */
+	public static void encodeToPackedLongs(double[] latitudes, double[] longitudes, int numberOfCharacters,
+			long[] result) {
+		if (latitudes.length != longitudes.length) {
+			throw new IllegalArgumentException("latitudes and longitudes must have the same length: "
+					+ latitudes.length + " != " + longitudes.length);
+		}
+		if (result.length < latitudes.length) {
+			throw new IllegalArgumentException("result must have length at least " + latitudes.length);
+		}
+		checkPackedPrecision(numberOfCharacters);
+		int numberOfBits = numberOfCharacters * BASE32_BITS;
+		for (int i = 0; i < latitudes.length; i++) {
+			checkLatLon(latitudes[i], longitudes[i]);
+			result[i] = encodeBits(latitudes[i], longitudes[i], numberOfBits) | numberOfCharacters;
+		}
+	}
+
+	/**
+	 * Encodes every <code>(latitudes[i], longitudes[i])</code> pair like
+	 * {@link #encodeToPackedLong(double, double, int)} and returns the results
+	 * in a new array.
+	 */
+	public static long[] encodeToPackedLongs(double[] latitudes, double[] longitudes, int numberOfCharacters) {
+		long[] result = new long[latitudes.length];
+		encodeToPackedLongs(latitudes, longitudes, numberOfCharacters, result);
+		return result;
+	}
+
+	/**
+	 * Decodes a long created by {@link #encodeToPackedLong(double, double, int)}
+	 * and writes the bounding box of the hash to <code>buffer</code> starting at
+	 * <code>offset</code> in the order minLat, maxLat, minLon, maxLon. The
+	 * center of the hash is then at the mean of each pair.
+	 */
+	public static void decodePackedLong(long packed, double[] buffer, int offset) {
+		int numberOfBits = packedCharacterPrecision(packed) * BASE32_BITS;
+		double minLat = -90;
+		double maxLat = 90;
+		double minLon = -180;
+		double maxLon = 180;
+		long bitsCopy = packed;
+		for (int i = 0; i < numberOfBits; i++) {
+			boolean on = (bitsCopy & FIRST_BIT_FLAGGED) != 0;
+			if (i % 2 == 0) {
+				double mid = (minLon + maxLon) / 2;
+				if (on) {
+					minLon = mid;
+				} else {
+					maxLon = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				if (on) {
+					minLat = mid;
+				} else {
+					maxLat = mid;
+				}
+			}
+			bitsCopy <<= 1;
+		}
+		buffer[offset] = minLat;
+		buffer[offset + 1] = maxLat;
+		buffer[offset + 2] = minLon;
+		buffer[offset + 3] = maxLon;
+	}
+
+	/**
+	 * Writes the base32 characters of a long created by
+	 * {@link #encodeToPackedLong(double, double, int)} to <code>buffer</code>
+	 * starting at <code>offset</code> and returns the number of characters
+	 * written.
+	 */
+	public static int packedLongToBase32(long packed, char[] buffer, int offset) {
+		int numberOfCharacters = packedCharacterPrecision(packed);
+		long bitsCopy = packed;
+		for (int i = 0; i < numberOfCharacters; i++) {
+			buffer[offset + i] = base32[(int) (bitsCopy >>> 59)];
+			bitsCopy <<= 5;
+		}
+		return numberOfCharacters;
+	}
+
+	/**
+	 * returns the number of characters precision of a long created by
+	 * {@link #encodeToPackedLong(double, double, int)}.
+	 */
+	public static int packedCharacterPrecision(long packed) {
+		return (int) (packed & PACKED_PRECISION_MASK);
+	}
+
+	/**
+	 * build a new {@link GeoHash} from a long created by
+	 * {@link #encodeToPackedLong(double, double, int)}.
+	 */
+	public static GeoHash fromPackedLong(long packed) {
+		return fromLongValue(packed & ~PACKED_PRECISION_MASK, packedCharacterPrecision(packed) * BASE32_BITS);
+	}
+
+	/**
+	 * returns this hash in the form created by
+	 * {@link #encodeToPackedLong(double, double, int)}.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the precision is not a multiple of 5.
+	 */
+	public long toPackedLong() {
+		return bits | getCharacterPrecision();
+	}
+
+	private static long encodeBits(double latitude, double longitude, int numberOfBits) {
+		// the same range halving as the GeoHash constructor so the bits are
+		// identical, but on local variables
+		double minLat = -90;
+		double maxLat = 90;
+		double minLon = -180;
+		double maxLon = 180;
+		long result = 0;
+		for (int i = 0; i < numberOfBits; i++) {
+			result <<= 1;
+			if (i % 2 == 0) {
+				double mid = (minLon + maxLon) / 2;
+				if (longitude >= mid) {
+					result |= 0x1;
+					minLon = mid;
+				} else {
+					maxLon = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				if (latitude >= mid) {
+					result |= 0x1;
+					minLat = mid;
+				} else {
+					maxLat = mid;
+				}
+			}
+		}
+		return result << (MAX_BIT_PRECISION - numberOfBits);
+	}
+
+	private static void checkPackedPrecision(int numberOfCharacters) {
+		if (numberOfCharacters < 0 || numberOfCharacters > MAX_CHARACTER_PRECISION) {
+			throw new IllegalArgumentException("A geohash can only be " + MAX_CHARACTER_PRECISION + " character long.");
+		}
+	}
+
+	private static void checkLatLon(double latitude, double longitude) {
+		if (Math.abs(latitude) > 90.0 || Math.abs(longitude) > 180.0) {
+			throw new IllegalArgumentException("Can't have lat/lon values out of (-90,90)/(-180/180)");
+		}
+	}
+
 	private GeoHash(double latitude, double longitude, int desiredPrecision) {
 		point = new WGS84Point(latitude, longitude);
 		desiredPrecision = Math.min(desiredPrecision, MAX_BIT_PRECISION);
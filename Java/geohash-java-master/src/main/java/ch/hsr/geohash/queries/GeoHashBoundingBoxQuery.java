@@ -28,8 +28,11 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 	private List<GeoHash> searchHashes = new ArrayList<>(4);
 	/* the combined bounding box of those hashes. */
 	private BoundingBox boundingBox;
+	/* the bounding box that was queried. */
+	private BoundingBox queryBox;
 
 	public GeoHashBoundingBoxQuery(BoundingBox bbox) {
+		queryBox = new BoundingBox(bbox);
 		int fittingBits = GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(bbox);
 		WGS84Point center = bbox.getCenterPoint();
 		GeoHash centerHash = GeoHash.withBitPrecision(center.getLatitude(), center.getLongitude(), fittingBits);
@@ -85,6 +88,16 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 		return searchHashes;
 	}
 
+	/**
+	 * returns the sorted ranges of ords of hashes with <code>rangeBits</code>
+	 * bits precision that cover the queried box using the given
+	 * {@link GeoHashCoverer}. Unlike {@link #getSearchHashes()} the covering
+	 * uses cells of mixed precision.
+	 */
+	public List<GeoHashRange> getCoveringRanges(GeoHashCoverer coverer, int rangeBits) {
+		return coverer.getCoveringRanges(queryBox, rangeBits);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder bui = new StringBuilder();
@@ -14,6 +14,7 @@ import java.util.List;
 import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
 import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.DistanceStrategy;
 import ch.hsr.geohash.util.VincentyGeodesy;
 
 /**
@@ -25,14 +26,27 @@ public class GeoHashCircleQuery implements GeoHashQuery, Serializable {
 	private double radius;
 	private GeoHashBoundingBoxQuery query;
 	private WGS84Point center;
+	/* null to check points against the square around the circle. */
+	private DistanceStrategy distanceStrategy;
 
 	/**
 	 * create a {@link GeoHashCircleQuery} with the given center point and a
 	 * radius in meters.
 	 */
 	public GeoHashCircleQuery(WGS84Point center, double radius) {
+		this(center, radius, null);
+	}
+
+	/**
+	 * create a {@link GeoHashCircleQuery} with the given center point and a
+	 * radius in meters whose {@link #contains(WGS84Point)} checks the distance
+	 * to the center using the given {@link DistanceStrategy} rather than the
+	 * square around the circle.
+	 */
+	public GeoHashCircleQuery(WGS84Point center, double radius, DistanceStrategy distanceStrategy) {
 		this.radius = radius;
 		this.center = center;
+		this.distanceStrategy = distanceStrategy;
 		WGS84Point northEast = VincentyGeodesy.moveInDirection(VincentyGeodesy.moveInDirection(center, 0, radius), 90,
 				radius);
 		WGS84Point southWest = VincentyGeodesy.moveInDirection(VincentyGeodesy.moveInDirection(center, 180, radius),
@@ -56,6 +70,15 @@ public class GeoHashCircleQuery implements GeoHashQuery, Serializable {
 		return query.getSearchHashes();
 	}
 
+	/**
+	 * returns the sorted ranges of ords of hashes with <code>rangeBits</code>
+	 * bits precision that cover the square around the circle using the given
+	 * {@link GeoHashCoverer}.
+	 */
+	public List<GeoHashRange> getCoveringRanges(GeoHashCoverer coverer, int rangeBits) {
+		return query.getCoveringRanges(coverer, rangeBits);
+	}
+
 	@Override
 	public String toString() {
 		return "Cicle Query [center=" + center + ", radius=" + getRadiusString() + "]";
@@ -71,6 +94,10 @@ public class GeoHashCircleQuery implements GeoHashQuery, Serializable {
 
 	@Override
 	public boolean contains(WGS84Point point) {
-		return query.contains(point);
+		if (distanceStrategy == null) {
+			return query.contains(point);
+		} else {
+			return distanceStrategy.distanceInMeters(center, point) <= radius;
+		}
 	}
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Covers a bounding box with geohashes of mixed precision. Starting from the
+ * whole world the largest cell that only partly overlaps the box is split in
+ * two (one more bit of precision) until either the number of cells would
+ * exceed <code>maxCells</code> or the area of the cells outside the box is at
+ * most <code>maxError</code> times the area of the box. Cells that lie
+ * completely inside the box are not split once they have at least
+ * <code>minBits</code> bits.
+ *
+ * The covering can be turned into sorted, merged {@link GeoHashRange}s of the
+ * ords of hashes with a fixed precision, ready for range scans on storage
+ * sorted by that ord.
+ */
+public class GeoHashCoverer {
+	private static final int MAX_BITS = 63;
+	/*
+	 * the end of a range of 63 bit ords can be 2^63 which doesn't fit in a
+	 * long.
+	 */
+	private static final int MAX_RANGE_BITS = 62;
+
+	private final int maxCells;
+	private final int minBits;
+	private final int maxBits;
+	private final double maxError;
+
+	/**
+	 * @param maxCells
+	 *            the maximum number of cells in a covering. This may be
+	 *            exceeded if minBits requires more cells.
+	 * @param minBits
+	 *            cells will have at least this many bits precision.
+	 * @param maxBits
+	 *            cells will have at most this many bits precision.
+	 * @param maxError
+	 *            stop refining once the area of the cells outside the box is
+	 *            at most this fraction of the area of the box. Use 0 to refine
+	 *            until maxCells is reached.
+	 */
+	public GeoHashCoverer(int maxCells, int minBits, int maxBits, double maxError) {
+		if (maxCells < 1) {
+			throw new IllegalArgumentException("maxCells must be at least 1: " + maxCells);
+		}
+		if (minBits < 0 || maxBits > MAX_BITS || minBits > maxBits) {
+			throw new IllegalArgumentException("need 0 <= minBits <= maxBits <= " + MAX_BITS + ": " + minBits
+					+ ", " + maxBits);
+		}
+		if (maxError < 0) {
+			throw new IllegalArgumentException("maxError must not be negative: " + maxError);
+		}
+		this.maxCells = maxCells;
+		this.minBits = minBits;
+		this.maxBits = maxBits;
+		this.maxError = maxError;
+	}
+
+	/**
+	 * returns the cells covering the given box, ordered by
+	 * {@link GeoHash#compareTo(GeoHash)}. The cells don't overlap.
+	 */
+	public List<GeoHash> getCovering(BoundingBox bbox) {
+		return getCovering(new BoundingBoxRegion(bbox));
+	}
+
+	List<GeoHash> getCovering(Region region) {
+		Covering covering = new Covering(region);
+		covering.add(GeoHash.fromLongValue(0, 0));
+
+		PriorityQueue<GeoHash> candidates = covering.candidates;
+		while (!candidates.isEmpty() && candidates.peek().significantBits() < minBits) {
+			covering.split(candidates.poll());
+		}
+
+		double regionArea = region.area();
+		while (!candidates.isEmpty() && covering.result.size() + candidates.size() < maxCells
+				&& covering.area - regionArea > maxError * regionArea) {
+			covering.split(candidates.poll());
+		}
+		List<GeoHash> result = covering.result;
+		result.addAll(candidates);
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * returns the covering of the given box as ranges of ords of hashes with
+	 * <code>rangeBits</code> bits precision, which must be at least the maximum
+	 * precision of this coverer and at most 62.
+	 */
+	public List<GeoHashRange> getCoveringRanges(BoundingBox bbox, int rangeBits) {
+		return toRanges(getCovering(bbox), rangeBits);
+	}
+
+	/**
+	 * converts cells to the sorted ranges of the ords of the hashes with
+	 * <code>rangeBits</code> bits precision that lie within them. Adjacent and
+	 * overlapping ranges are merged. <code>rangeBits</code> is at most 62 so
+	 * that the end of every range fits in a long.
+	 */
+	public static List<GeoHashRange> toRanges(List<GeoHash> cells, int rangeBits) {
+		if (rangeBits < 0 || rangeBits > MAX_RANGE_BITS) {
+			throw new IllegalArgumentException("rangeBits must be in [0," + MAX_RANGE_BITS + "]: " + rangeBits);
+		}
+		long[][] ranges = new long[cells.size()][];
+		for (int i = 0; i < cells.size(); i++) {
+			GeoHash cell = cells.get(i);
+			int shift = rangeBits - cell.significantBits();
+			if (shift < 0) {
+				throw new IllegalArgumentException("cell " + cell + " has more than " + rangeBits + " bits");
+			}
+			ranges[i] = new long[] { cell.ord() << shift, (cell.ord() + 1) << shift };
+		}
+		Arrays.sort(ranges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+		List<GeoHashRange> result = new ArrayList<>();
+		int i = 0;
+		while (i < ranges.length) {
+			long start = ranges[i][0];
+			long end = ranges[i][1];
+			i++;
+			while (i < ranges.length && ranges[i][0] <= end) {
+				end = Math.max(end, ranges[i][1]);
+				i++;
+			}
+			result.add(new GeoHashRange(start, end));
+		}
+		return result;
+	}
+
+	/* the state of a covering while it is being refined. */
+	private final class Covering {
+		private final Region region;
+		private final List<GeoHash> result = new ArrayList<>();
+		/* cells that may be split, largest first. */
+		private final PriorityQueue<GeoHash> candidates = new PriorityQueue<>(16, new Comparator<GeoHash>() {
+			@Override
+			public int compare(GeoHash a, GeoHash b) {
+				return Integer.compare(a.significantBits(), b.significantBits());
+			}
+		});
+		/* the total area of the cells in result and candidates. */
+		private double area;
+
+		Covering(Region region) {
+			this.region = region;
+		}
+
+		void split(GeoHash cell) {
+			area -= area(cell.getBoundingBox());
+			int bits = cell.significantBits();
+			add(GeoHash.fromLongValue(cell.longValue(), bits + 1));
+			add(GeoHash.fromLongValue(cell.longValue() | (GeoHash.FIRST_BIT_FLAGGED >>> bits), bits + 1));
+		}
+
+		void add(GeoHash cell) {
+			BoundingBox box = cell.getBoundingBox();
+			if (!region.intersects(box)) {
+				return;
+			}
+			area += area(box);
+			int bits = cell.significantBits();
+			if (bits >= maxBits || bits >= minBits && region.contains(box)) {
+				result.add(cell);
+			} else {
+				candidates.add(cell);
+			}
+		}
+	}
+
+	private static final class BoundingBoxRegion implements Region {
+		private final BoundingBox bbox;
+
+		BoundingBoxRegion(BoundingBox bbox) {
+			this.bbox = bbox;
+		}
+
+		/*
+		 * a geohash cell includes its southern and western edges but only
+		 * includes its northern and eastern edges at 90 and 180 degrees.
+		 */
+		@Override
+		public boolean intersects(BoundingBox cell) {
+			return cell.getMinLon() <= bbox.getMaxLon()
+					&& (bbox.getMinLon() < cell.getMaxLon() || cell.getMaxLon() == 180)
+					&& cell.getMinLat() <= bbox.getMaxLat()
+					&& (bbox.getMinLat() < cell.getMaxLat() || cell.getMaxLat() == 90);
+		}
+
+		@Override
+		public boolean contains(BoundingBox cell) {
+			return cell.getMinLon() >= bbox.getMinLon() && cell.getMaxLon() <= bbox.getMaxLon()
+					&& cell.getMinLat() >= bbox.getMinLat() && cell.getMaxLat() <= bbox.getMaxLat();
+		}
+
+		@Override
+		public double area() {
+			return GeoHashCoverer.area(bbox);
+		}
+	}
+
+	static double area(BoundingBox box) {
+		return box.getLatitudeSize() * box.getLongitudeSize();
+	}
+}
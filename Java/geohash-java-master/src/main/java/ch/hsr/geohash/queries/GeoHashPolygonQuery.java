@@ -0,0 +1,375 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * A search for the points within a simple polygon. The polygon is covered
+ * with geohashes of mixed precision by a {@link GeoHashCoverer}. Search hashes
+ * that lie completely inside the polygon are marked as interior, so points
+ * whose hash lies within them need no further check (see
+ * {@link #isFullyContained(GeoHash)}).
+ *
+ * {@link #contains(WGS84Point)} is exact and uses a grid over the polygon
+ * that stores, for each grid cell, whether it is inside, outside or crossed by
+ * an edge. Only points in crossed cells are checked against the edges of their
+ * grid row.
+ *
+ * Latitudes and longitudes are treated as planar coordinates, so polygon edges
+ * are straight lines in lat/lon and the polygon must not cross the 180th
+ * meridian.
+ */
+public class GeoHashPolygonQuery implements GeoHashQuery, Serializable {
+	private static final long serialVersionUID = -3521880513423197425L;
+	private static final GeoHashCoverer DEFAULT_COVERER = new GeoHashCoverer(64, 0, 50, 0.05);
+
+	private final Polygon polygon;
+	private final List<GeoHash> searchHashes;
+	private final List<GeoHash> interiorHashes = new ArrayList<>();
+
+	/**
+	 * create a {@link GeoHashPolygonQuery} for the polygon with the given
+	 * vertices, covered by at most 64 hashes.
+	 */
+	public GeoHashPolygonQuery(List<WGS84Point> vertices) {
+		this(vertices, DEFAULT_COVERER);
+	}
+
+	/**
+	 * create a {@link GeoHashPolygonQuery} for the polygon with the given
+	 * vertices, covered using the given {@link GeoHashCoverer}. The polygon is
+	 * closed automatically, i.e. the last vertex needn't repeat the first.
+	 */
+	public GeoHashPolygonQuery(List<WGS84Point> vertices, GeoHashCoverer coverer) {
+		polygon = new Polygon(vertices);
+		searchHashes = coverer.getCovering(polygon);
+		for (GeoHash hash : searchHashes) {
+			if (polygon.contains(hash.getBoundingBox())) {
+				interiorHashes.add(hash);
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(GeoHash hash) {
+		return withinAny(hash, searchHashes);
+	}
+
+	/**
+	 * returns true iff the given hash lies within one of the interior search
+	 * hashes, in which case every point of it lies within the polygon.
+	 */
+	public boolean isFullyContained(GeoHash hash) {
+		return withinAny(hash, interiorHashes);
+	}
+
+	@Override
+	public boolean contains(WGS84Point point) {
+		return polygon.contains(point.getLatitude(), point.getLongitude());
+	}
+
+	/**
+	 * returns the search hashes of mixed precision, ordered by
+	 * {@link GeoHash#compareTo(GeoHash)}.
+	 */
+	@Override
+	public List<GeoHash> getSearchHashes() {
+		return searchHashes;
+	}
+
+	/**
+	 * returns the search hashes that lie completely inside the polygon.
+	 */
+	public List<GeoHash> getInteriorHashes() {
+		return interiorHashes;
+	}
+
+	/**
+	 * returns the sorted ranges of ords of hashes with <code>rangeBits</code>
+	 * bits precision that cover the polygon.
+	 */
+	public List<GeoHashRange> getCoveringRanges(int rangeBits) {
+		return GeoHashCoverer.toRanges(searchHashes, rangeBits);
+	}
+
+	/**
+	 * returns the sorted ranges of ords of hashes with <code>rangeBits</code>
+	 * bits precision that lie completely inside the polygon. Points found by
+	 * scanning these ranges need no point in polygon check.
+	 */
+	public List<GeoHashRange> getInteriorRanges(int rangeBits) {
+		return GeoHashCoverer.toRanges(interiorHashes, rangeBits);
+	}
+
+	@Override
+	public String getWktBox() {
+		return "BOX(" + polygon.minLon + " " + polygon.minLat + "," + polygon.maxLon + " " + polygon.maxLat + ")";
+	}
+
+	@Override
+	public String toString() {
+		return "Polygon Query [vertices=" + polygon.lats.length + ", searchHashes=" + searchHashes.size()
+				+ ", interiorHashes=" + interiorHashes.size() + "]";
+	}
+
+	private static boolean withinAny(GeoHash hash, List<GeoHash> hashes) {
+		for (GeoHash searchHash : hashes) {
+			if (hash.within(searchHash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Polygon implements Region, Serializable {
+		private static final long serialVersionUID = 6079318263214960236L;
+		private static final byte BOUNDARY = 0;
+		private static final byte INSIDE = 1;
+		private static final byte OUTSIDE = 2;
+		private static final int MAX_GRID_SIZE = 256;
+
+		private final double[] lats;
+		private final double[] lons;
+		private final double minLat;
+		private final double maxLat;
+		private final double minLon;
+		private final double maxLon;
+		private final int gridSize;
+		private final double rowHeight;
+		private final double columnWidth;
+		/* the indexes of the edges that overlap each row of the grid. */
+		private final int[][] rowEdges;
+		/* BOUNDARY, INSIDE or OUTSIDE for each grid cell, row by row. */
+		private final byte[] cells;
+
+		Polygon(List<WGS84Point> vertices) {
+			int n = vertices.size();
+			if (n > 1 && vertices.get(0).equals(vertices.get(n - 1))) {
+				n--;
+			}
+			if (n < 3) {
+				throw new IllegalArgumentException("a polygon needs at least 3 vertices: " + vertices);
+			}
+			lats = new double[n];
+			lons = new double[n];
+			BoundingBox bbox = null;
+			for (int i = 0; i < n; i++) {
+				WGS84Point p = vertices.get(i);
+				lats[i] = p.getLatitude();
+				lons[i] = p.getLongitude();
+				if (bbox == null) {
+					bbox = new BoundingBox(p, p);
+				} else {
+					bbox.expandToInclude(new BoundingBox(p, p));
+				}
+			}
+			minLat = bbox.getMinLat();
+			maxLat = bbox.getMaxLat();
+			minLon = bbox.getMinLon();
+			maxLon = bbox.getMaxLon();
+
+			gridSize = Math.max(1, Math.min(MAX_GRID_SIZE, 2 * (int) Math.ceil(Math.sqrt(n))));
+			rowHeight = (maxLat - minLat) / gridSize;
+			columnWidth = (maxLon - minLon) / gridSize;
+			cells = new byte[gridSize * gridSize];
+			rowEdges = new int[gridSize][];
+			buildGrid();
+		}
+
+		private void buildGrid() {
+			int n = lats.length;
+			List<List<Integer>> rows = new ArrayList<>(gridSize);
+			for (int r = 0; r < gridSize; r++) {
+				rows.add(new ArrayList<Integer>());
+			}
+			boolean[] boundary = new boolean[cells.length];
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				double lat1 = Math.min(lats[i], lats[j]);
+				double lat2 = Math.max(lats[i], lats[j]);
+				for (int r = row(lat1); r <= row(lat2); r++) {
+					rows.get(r).add(i);
+					// the longitudes of the part of the edge within this row
+					double lon1;
+					double lon2;
+					if (lats[i] == lats[j]) {
+						lon1 = lons[i];
+						lon2 = lons[j];
+					} else {
+						lon1 = lonAt(i, j, Math.max(lat1, minLat + r * rowHeight));
+						lon2 = lonAt(i, j, Math.min(lat2, minLat + (r + 1) * rowHeight));
+					}
+					int c1 = column(Math.min(lon1, lon2));
+					int c2 = column(Math.max(lon1, lon2));
+					for (int c = c1; c <= c2; c++) {
+						boundary[r * gridSize + c] = true;
+					}
+				}
+			}
+			for (int r = 0; r < gridSize; r++) {
+				List<Integer> edges = rows.get(r);
+				rowEdges[r] = new int[edges.size()];
+				for (int k = 0; k < edges.size(); k++) {
+					rowEdges[r][k] = edges.get(k);
+				}
+			}
+			for (int r = 0; r < gridSize; r++) {
+				for (int c = 0; c < gridSize; c++) {
+					int index = r * gridSize + c;
+					if (boundary[index]) {
+						cells[index] = BOUNDARY;
+					} else {
+						double lat = minLat + (r + 0.5) * rowHeight;
+						double lon = minLon + (c + 0.5) * columnWidth;
+						cells[index] = crossings(lat, lon, rowEdges[r]) ? INSIDE : OUTSIDE;
+					}
+				}
+			}
+		}
+
+		/* the longitude of the non horizontal edge i-j at the given latitude. */
+		private double lonAt(int i, int j, double lat) {
+			double t = (lat - lats[i]) / (lats[j] - lats[i]);
+			return lons[i] + t * (lons[j] - lons[i]);
+		}
+
+		private int row(double lat) {
+			if (rowHeight == 0) {
+				return 0;
+			}
+			return Math.max(0, Math.min(gridSize - 1, (int) ((lat - minLat) / rowHeight)));
+		}
+
+		private int column(double lon) {
+			if (columnWidth == 0) {
+				return 0;
+			}
+			return Math.max(0, Math.min(gridSize - 1, (int) ((lon - minLon) / columnWidth)));
+		}
+
+		boolean contains(double lat, double lon) {
+			if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+				return false;
+			}
+			int r = row(lat);
+			byte state = cells[r * gridSize + column(lon)];
+			if (state == BOUNDARY) {
+				return crossings(lat, lon, rowEdges[r]);
+			} else {
+				return state == INSIDE;
+			}
+		}
+
+		/*
+		 * even-odd rule: returns true iff a ray from the point towards the east
+		 * crosses an odd number of the given edges. Every edge that spans the
+		 * latitude of the point is in the point's grid row.
+		 */
+		private boolean crossings(double lat, double lon, int[] edges) {
+			boolean inside = false;
+			int n = lats.length;
+			for (int i : edges) {
+				int j = (i + 1) % n;
+				if ((lats[i] > lat) != (lats[j] > lat)
+						&& lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+					inside = !inside;
+				}
+			}
+			return inside;
+		}
+
+		@Override
+		public boolean intersects(BoundingBox cell) {
+			if (cell.getMinLat() > maxLat || cell.getMaxLat() < minLat || cell.getMinLon() > maxLon
+					|| cell.getMaxLon() < minLon) {
+				return false;
+			}
+			if (anyEdgeIntersects(cell)) {
+				return true;
+			}
+			// the cell is either completely inside or completely outside
+			WGS84Point center = cell.getCenterPoint();
+			return contains(center.getLatitude(), center.getLongitude());
+		}
+
+		@Override
+		public boolean contains(BoundingBox cell) {
+			if (cell.getMinLat() < minLat || cell.getMaxLat() > maxLat || cell.getMinLon() < minLon
+					|| cell.getMaxLon() > maxLon) {
+				return false;
+			}
+			if (anyEdgeIntersects(cell)) {
+				return false;
+			}
+			WGS84Point center = cell.getCenterPoint();
+			return contains(center.getLatitude(), center.getLongitude());
+		}
+
+		private boolean anyEdgeIntersects(BoundingBox cell) {
+			int n = lats.length;
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				if (segmentIntersects(lons[i], lats[i], lons[j], lats[j], cell)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/* Liang-Barsky clipping of the segment against the closed box. */
+		private static boolean segmentIntersects(double x1, double y1, double x2, double y2, BoundingBox box) {
+			double dx = x2 - x1;
+			double dy = y2 - y1;
+			double[] p = { -dx, dx, -dy, dy };
+			double[] q = { x1 - box.getMinLon(), box.getMaxLon() - x1, y1 - box.getMinLat(), box.getMaxLat() - y1 };
+			double t0 = 0;
+			double t1 = 1;
+			for (int k = 0; k < 4; k++) {
+				if (p[k] == 0) {
+					if (q[k] < 0) {
+						return false;
+					}
+				} else {
+					double t = q[k] / p[k];
+					if (p[k] < 0) {
+						if (t > t1) {
+							return false;
+						}
+						t0 = Math.max(t0, t);
+					} else {
+						if (t < t0) {
+							return false;
+						}
+						t1 = Math.min(t1, t);
+					}
+				}
+			}
+			return true;
+		}
+
+		/* shoelace formula. */
+		@Override
+		public double area() {
+			double sum = 0;
+			int n = lats.length;
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				sum += lons[i] * lats[j] - lons[j] * lats[i];
+			}
+			return Math.abs(sum) / 2;
+		}
+	}
+}
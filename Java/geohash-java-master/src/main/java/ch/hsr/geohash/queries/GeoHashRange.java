@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import java.io.Serializable;
+
+/**
+ * A half open range [start, end) of {@link ch.hsr.geohash.GeoHash#ord()}
+ * values of hashes that all have the same number of significant bits. Stored
+ * hashes of that precision whose ord lies within the range can be found with
+ * a single range scan on storage sorted by ord.
+ */
+public class GeoHashRange implements Serializable {
+	private static final long serialVersionUID = 3894561251232458810L;
+	private final long start;
+	private final long end;
+
+	public GeoHashRange(long start, long end) {
+		if (end < start) {
+			throw new IllegalArgumentException("end " + end + " is less than start " + start);
+		}
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * the smallest ord in this range.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * one more than the largest ord in this range.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	public boolean contains(long ord) {
+		return ord >= start && ord < end;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj instanceof GeoHashRange) {
+			GeoHashRange that = (GeoHashRange) obj;
+			return start == that.start && end == that.end;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 17;
+		result = 37 * result + (int) (start ^ (start >>> 32));
+		result = 37 * result + (int) (end ^ (end >>> 32));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import ch.hsr.geohash.BoundingBox;
+
+/**
+ * A region that can be covered by a {@link GeoHashCoverer}. The checks may be
+ * conservative: reporting an intersection that doesn't exist only makes the
+ * covering larger, but a region must never report that it contains a cell it
+ * doesn't contain.
+ */
+interface Region {
+
+	/**
+	 * returns false only if no point of the cell lies within this region.
+	 */
+	boolean intersects(BoundingBox cell);
+
+	/**
+	 * returns true only if every point of the cell lies within this region.
+	 */
+	boolean contains(BoundingBox cell);
+
+	/**
+	 * the area of this region in square degrees.
+	 */
+	double area();
+}
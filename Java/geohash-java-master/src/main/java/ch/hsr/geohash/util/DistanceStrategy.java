@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * Ways to compute the distance in meters between two points, from exact and
+ * slow to approximate and fast.
+ * <ul>
+ * <li>{@link #VINCENTY}: iterative solution on the WGS84 ellipsoid, exact to
+ * within millimeters.</li>
+ * <li>{@link #HAVERSINE}: great circle distance on a sphere, within 0.6% of
+ * the ellipsoidal distance.</li>
+ * <li>{@link #EQUIRECTANGULAR}: pythagoras on a plane that is scaled by the
+ * cosine of the latitude of the first point. Within 0.6% for distances up to
+ * about 100 kilometers away from the poles, and needs no trigonometric
+ * functions once that cosine is known.</li>
+ * </ul>
+ * The batch methods compute everything that depends on the center only once,
+ * so filtering large arrays of candidates is a tight loop over primitives.
+ */
+public enum DistanceStrategy {
+	VINCENTY {
+		@Override
+		public double distanceInMeters(double lat1, double lon1, double lat2, double lon2) {
+			return VincentyGeodesy.distanceInMeters(lat1, lon1, lat2, lon2);
+		}
+	},
+
+	HAVERSINE {
+		@Override
+		public double distanceInMeters(double lat1, double lon1, double lat2, double lon2) {
+			return haversine(lat1, lon1, Math.cos(lat1 * RAD), lat2, lon2);
+		}
+
+		@Override
+		public void distancesInMeters(WGS84Point center, double[] latitudes, double[] longitudes, double[] result) {
+			checkLengths(latitudes, longitudes, result);
+			double lat = center.getLatitude();
+			double lon = center.getLongitude();
+			double cosLat = Math.cos(lat * RAD);
+			for (int i = 0; i < latitudes.length; i++) {
+				result[i] = haversine(lat, lon, cosLat, latitudes[i], longitudes[i]);
+			}
+		}
+
+		@Override
+		public int filterWithinRadius(WGS84Point center, double radiusInMeters, double[] latitudes,
+				double[] longitudes, int[] result) {
+			checkLengths(latitudes, longitudes, result);
+			double lat = center.getLatitude();
+			double lon = center.getLongitude();
+			double cosLat = Math.cos(lat * RAD);
+			int count = 0;
+			for (int i = 0; i < latitudes.length; i++) {
+				if (haversine(lat, lon, cosLat, latitudes[i], longitudes[i]) <= radiusInMeters) {
+					result[count++] = i;
+				}
+			}
+			return count;
+		}
+	},
+
+	EQUIRECTANGULAR {
+		@Override
+		public double distanceInMeters(double lat1, double lon1, double lat2, double lon2) {
+			return equirectangular(lat1, lon1, Math.cos(lat1 * RAD), lat2, lon2);
+		}
+
+		@Override
+		public void distancesInMeters(WGS84Point center, double[] latitudes, double[] longitudes, double[] result) {
+			checkLengths(latitudes, longitudes, result);
+			double lat = center.getLatitude();
+			double lon = center.getLongitude();
+			double cosLat = Math.cos(lat * RAD);
+			for (int i = 0; i < latitudes.length; i++) {
+				result[i] = equirectangular(lat, lon, cosLat, latitudes[i], longitudes[i]);
+			}
+		}
+
+		@Override
+		public int filterWithinRadius(WGS84Point center, double radiusInMeters, double[] latitudes,
+				double[] longitudes, int[] result) {
+			checkLengths(latitudes, longitudes, result);
+			double lat = center.getLatitude();
+			double lon = center.getLongitude();
+			// compare squared distances in radians to avoid the square root
+			double cosLat = Math.cos(lat * RAD);
+			double maxAngle = radiusInMeters / EARTH_RADIUS;
+			double maxAngleSquared = maxAngle * maxAngle;
+			int count = 0;
+			for (int i = 0; i < latitudes.length; i++) {
+				double x = wrap((longitudes[i] - lon) * RAD) * cosLat;
+				double y = (latitudes[i] - lat) * RAD;
+				if (x * x + y * y <= maxAngleSquared) {
+					result[count++] = i;
+				}
+			}
+			return count;
+		}
+	};
+
+	/**
+	 * mean radius of the earth in meters.
+	 */
+	public static final double EARTH_RADIUS = 6371008.8;
+	private static final double RAD = Math.PI / 180;
+
+	/**
+	 * returns the distance in meters between the two points given in degrees.
+	 */
+	public abstract double distanceInMeters(double lat1, double lon1, double lat2, double lon2);
+
+	/**
+	 * returns the distance in meters between the two points.
+	 */
+	public double distanceInMeters(WGS84Point a, WGS84Point b) {
+		return distanceInMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+	}
+
+	/**
+	 * writes the distance in meters from <code>center</code> to each point
+	 * <code>(latitudes[i], longitudes[i])</code> to <code>result[i]</code>.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the arrays have different lengths or result is shorter.
+	 */
+	public void distancesInMeters(WGS84Point center, double[] latitudes, double[] longitudes, double[] result) {
+		checkLengths(latitudes, longitudes, result);
+		double lat = center.getLatitude();
+		double lon = center.getLongitude();
+		for (int i = 0; i < latitudes.length; i++) {
+			result[i] = distanceInMeters(lat, lon, latitudes[i], longitudes[i]);
+		}
+	}
+
+	/**
+	 * writes the indexes of the points <code>(latitudes[i], longitudes[i])</code>
+	 * that are at most <code>radiusInMeters</code> from <code>center</code> to
+	 * the start of <code>result</code> in increasing order and returns how many
+	 * there are.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the arrays have different lengths or result is shorter.
+	 */
+	public int filterWithinRadius(WGS84Point center, double radiusInMeters, double[] latitudes,
+			double[] longitudes, int[] result) {
+		checkLengths(latitudes, longitudes, result);
+		double lat = center.getLatitude();
+		double lon = center.getLongitude();
+		int count = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (distanceInMeters(lat, lon, latitudes[i], longitudes[i]) <= radiusInMeters) {
+				result[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	private static double haversine(double lat1, double lon1, double cosLat1, double lat2, double lon2) {
+		double sinDLat = Math.sin((lat2 - lat1) * RAD / 2);
+		double sinDLon = Math.sin((lon2 - lon1) * RAD / 2);
+		double a = sinDLat * sinDLat + cosLat1 * Math.cos(lat2 * RAD) * sinDLon * sinDLon;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	private static double equirectangular(double lat1, double lon1, double cosLat1, double lat2, double lon2) {
+		double x = wrap((lon2 - lon1) * RAD) * cosLat1;
+		double y = (lat2 - lat1) * RAD;
+		return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+	}
+
+	/* the equivalent angle in [-pi, pi]. */
+	private static double wrap(double radians) {
+		if (radians > Math.PI) {
+			return radians - 2 * Math.PI;
+		} else if (radians < -Math.PI) {
+			return radians + 2 * Math.PI;
+		} else {
+			return radians;
+		}
+	}
+
+	private static void checkLengths(double[] latitudes, double[] longitudes, double[] result) {
+		checkLengths(latitudes, longitudes, result.length);
+	}
+
+	private static void checkLengths(double[] latitudes, double[] longitudes, int[] result) {
+		checkLengths(latitudes, longitudes, result.length);
+	}
+
+	private static void checkLengths(double[] latitudes, double[] longitudes, int resultLength) {
+		if (latitudes.length != longitudes.length) {
+			throw new IllegalArgumentException("latitudes and longitudes must have the same length: "
+					+ latitudes.length + " != " + longitudes.length);
+		}
+		if (resultLength < latitudes.length) {
+			throw new IllegalArgumentException("result must have length at least " + latitudes.length);
+		}
+	}
+}
@@ -84,11 +84,19 @@ public class VincentyGeodesy {
 	}
 
 	public static double distanceInMeters(WGS84Point foo, WGS84Point bar) {
+		return distanceInMeters(foo.getLatitude(), foo.getLongitude(), bar.getLatitude(), bar.getLongitude());
+	}
+
+	/**
+	 * returns the distance in meters between the two points given in degrees,
+	 * without creating any objects.
+	 */
+	public static double distanceInMeters(double lat1, double lon1, double lat2, double lon2) {
 		double a = 6378137, b = 6356752.3142, f = 1 / 298.257223563; // WGS-84
 		// ellipsiod
-		double L = (bar.getLongitude() - foo.getLongitude()) * degToRad;
-		double U1 = Math.atan((1 - f) * Math.tan(foo.getLatitude() * degToRad));
-		double U2 = Math.atan((1 - f) * Math.tan(bar.getLatitude() * degToRad));
+		double L = (lon2 - lon1) * degToRad;
+		double U1 = Math.atan((1 - f) * Math.tan(lat1 * degToRad));
+		double U2 = Math.atan((1 - f) * Math.tan(lat2 * degToRad));
 		double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
 		double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
 
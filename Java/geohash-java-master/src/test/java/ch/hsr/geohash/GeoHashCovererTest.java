@@ -0,0 +1,140 @@
+package ch.hsr.geohash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.queries.GeoHashCoverer;
+import ch.hsr.geohash.queries.GeoHashRange;
+
+public class GeoHashCovererTest {
+	private static final int RANGE_BITS = 60;
+
+	@Test
+	public void testCoveringContainsEveryPointOfRandomBoxes() {
+		Random rand = new Random(3458792L);
+		GeoHashCoverer coverer = new GeoHashCoverer(16, 0, 40, 0);
+		for (int i = 0; i < 200; i++) {
+			double lat = rand.nextDouble() * 170 - 85;
+			double lon = rand.nextDouble() * 350 - 175;
+			double size = Math.pow(10, -rand.nextInt(4));
+			BoundingBox bbox = new BoundingBox(lat, lat + rand.nextDouble() * size, lon, lon + rand.nextDouble()
+					* size);
+			List<GeoHash> cells = coverer.getCovering(bbox);
+			assertTrue(cells.size() <= 16);
+			List<GeoHashRange> ranges = GeoHashCoverer.toRanges(cells, RANGE_BITS);
+			assertSortedAndMerged(ranges);
+			for (int j = 0; j < 50; j++) {
+				double pointLat = bbox.getMinLat() + rand.nextDouble() * bbox.getLatitudeSize();
+				double pointLon = bbox.getMinLon() + rand.nextDouble() * bbox.getLongitudeSize();
+				assertTrue(contains(ranges, GeoHash.withBitPrecision(pointLat, pointLon, RANGE_BITS).ord()));
+			}
+			assertTrue(contains(ranges, GeoHash.withBitPrecision(bbox.getMaxLat(), bbox.getMaxLon(), RANGE_BITS)
+					.ord()));
+		}
+	}
+
+	@Test
+	public void testBoxEqualToHashIsCoveredByThatHash() {
+		GeoHash hash = GeoHash.fromGeohashString("u0qj");
+		BoundingBox box = hash.getBoundingBox();
+		// shrink slightly to stay off the shared northern and eastern edges
+		BoundingBox bbox = new BoundingBox(box.getMinLat(), box.getMaxLat() - 1e-9, box.getMinLon(),
+				box.getMaxLon() - 1e-9);
+		List<GeoHash> cells = new GeoHashCoverer(8, 0, 60, 1e-6).getCovering(bbox);
+		assertEquals(1, cells.size());
+		assertEquals(hash, cells.get(0));
+		List<GeoHashRange> ranges = GeoHashCoverer.toRanges(cells, 20);
+		assertEquals(1, ranges.size());
+		assertEquals(new GeoHashRange(hash.ord(), hash.ord() + 1), ranges.get(0));
+	}
+
+	@Test
+	public void testMoreCellsGiveLessExcessArea() {
+		BoundingBox bbox = new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215);
+		double previous = Double.MAX_VALUE;
+		for (int maxCells = 1; maxCells <= 64; maxCells *= 2) {
+			double area = 0;
+			for (GeoHash cell : new GeoHashCoverer(maxCells, 0, 60, 0).getCovering(bbox)) {
+				area += cell.getBoundingBox().getLatitudeSize() * cell.getBoundingBox().getLongitudeSize();
+			}
+			assertTrue(area <= previous);
+			previous = area;
+		}
+	}
+
+	@Test
+	public void testMaxErrorStopsRefinement() {
+		BoundingBox bbox = new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215);
+		int loose = new GeoHashCoverer(1000, 0, 60, 1).getCovering(bbox).size();
+		int tight = new GeoHashCoverer(1000, 0, 60, 0.1).getCovering(bbox).size();
+		assertTrue(loose < tight);
+		assertTrue(tight < 1000);
+	}
+
+	@Test
+	public void testMinBitsIsRespected() {
+		BoundingBox bbox = new BoundingBox(-10, 10, -10, 10);
+		for (GeoHash cell : new GeoHashCoverer(1, 15, 20, 0).getCovering(bbox)) {
+			assertTrue(cell.significantBits() >= 15);
+		}
+	}
+
+	@Test
+	public void testQueriesReturnCoveringRanges() {
+		WGS84Point center = new WGS84Point(39.86391280373075, 116.37356590048701);
+		GeoHashCircleQuery query = new GeoHashCircleQuery(center, 589);
+		List<GeoHashRange> ranges = query.getCoveringRanges(new GeoHashCoverer(8, 0, 50, 0), RANGE_BITS);
+		assertSortedAndMerged(ranges);
+		WGS84Point test = new WGS84Point(39.8664787092599, 116.378552856158);
+		assertTrue(contains(ranges, GeoHash.withBitPrecision(test.getLatitude(), test.getLongitude(), RANGE_BITS)
+				.ord()));
+
+		GeoHashBoundingBoxQuery bboxQuery = new GeoHashBoundingBoxQuery(new BoundingBox(47.3, 47.4, 8.5, 8.6));
+		assertTrue(contains(bboxQuery.getCoveringRanges(new GeoHashCoverer(8, 0, 50, 0), RANGE_BITS), GeoHash
+				.withBitPrecision(47.35, 8.55, RANGE_BITS).ord()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testToRangesThrowsWhenCellIsTooPrecise() {
+		GeoHashCoverer.toRanges(new GeoHashCoverer(8, 30, 40, 0).getCovering(new BoundingBox(1, 2, 1, 2)), 20);
+	}
+
+	@Test
+	public void testToRangesOfWorldAndNorthEastCellsAtMaxRangeBits() {
+		GeoHash world = GeoHash.withBitPrecision(0, 0, 0);
+		assertEquals(Collections.singletonList(new GeoHashRange(0, 1L << 62)),
+				GeoHashCoverer.toRanges(Collections.singletonList(world), 62));
+		GeoHash northEast = GeoHash.withBitPrecision(89.9, 179.9, 12);
+		List<GeoHashRange> ranges = GeoHashCoverer.toRanges(Collections.singletonList(northEast), 62);
+		assertEquals(1L << 62, ranges.get(0).getEnd());
+		assertTrue(ranges.get(0).contains(GeoHash.withBitPrecision(89.99, 179.99, 62).ord()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testToRangesRejects63RangeBits() {
+		GeoHashCoverer.toRanges(Collections.singletonList(GeoHash.withBitPrecision(0, 0, 0)), 63);
+	}
+
+	private static boolean contains(List<GeoHashRange> ranges, long ord) {
+		for (GeoHashRange range : ranges) {
+			if (range.contains(ord)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void assertSortedAndMerged(List<GeoHashRange> ranges) {
+		for (int i = 1; i < ranges.size(); i++) {
+			assertTrue(ranges.get(i - 1).getEnd() < ranges.get(i).getStart());
+		}
+	}
+}
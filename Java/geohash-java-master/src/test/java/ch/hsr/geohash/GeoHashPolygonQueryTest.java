@@ -0,0 +1,142 @@
+package ch.hsr.geohash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.queries.GeoHashCoverer;
+import ch.hsr.geohash.queries.GeoHashPolygonQuery;
+import ch.hsr.geohash.queries.GeoHashRange;
+
+public class GeoHashPolygonQueryTest {
+	private static final int RANGE_BITS = 60;
+
+	// an L shape around Zurich, concave at its north east
+	private static final List<WGS84Point> L_SHAPE = Arrays.asList(new WGS84Point(47.30, 8.45), new WGS84Point(
+			47.30, 8.65), new WGS84Point(47.35, 8.65), new WGS84Point(47.35, 8.50), new WGS84Point(47.42, 8.50),
+			new WGS84Point(47.42, 8.45));
+
+	// a thin diagonal strip
+	private static final List<WGS84Point> DIAGONAL = Arrays.asList(new WGS84Point(10, 10), new WGS84Point(10.2,
+			10), new WGS84Point(12, 11.8), new WGS84Point(12, 12), new WGS84Point(11.8, 12));
+
+	@Test
+	public void testContainsPointMatchesRayCasting() {
+		for (List<WGS84Point> vertices : Arrays.asList(L_SHAPE, DIAGONAL, circle(-33.86, 151.2, 0.5, 200))) {
+			GeoHashPolygonQuery query = new GeoHashPolygonQuery(vertices);
+			BoundingBox bbox = boundingBox(vertices);
+			Random rand = new Random(1234);
+			for (int i = 0; i < 20000; i++) {
+				double lat = bbox.getMinLat() - 0.1 + rand.nextDouble() * (bbox.getLatitudeSize() + 0.2);
+				double lon = bbox.getMinLon() - 0.1 + rand.nextDouble() * (bbox.getLongitudeSize() + 0.2);
+				assertEquals(rayCasting(vertices, lat, lon), query.contains(new WGS84Point(lat, lon)));
+			}
+		}
+	}
+
+	@Test
+	public void testSearchHashesAndRangesCoverThePolygon() {
+		for (List<WGS84Point> vertices : Arrays.asList(L_SHAPE, DIAGONAL)) {
+			GeoHashPolygonQuery query = new GeoHashPolygonQuery(vertices, new GeoHashCoverer(32, 0, 50, 0));
+			assertTrue(query.getSearchHashes().size() <= 32);
+			List<GeoHashRange> ranges = query.getCoveringRanges(RANGE_BITS);
+			BoundingBox bbox = boundingBox(vertices);
+			Random rand = new Random(5678);
+			for (int i = 0; i < 5000; i++) {
+				double lat = bbox.getMinLat() + rand.nextDouble() * bbox.getLatitudeSize();
+				double lon = bbox.getMinLon() + rand.nextDouble() * bbox.getLongitudeSize();
+				GeoHash hash = GeoHash.withBitPrecision(lat, lon, RANGE_BITS);
+				if (rayCasting(vertices, lat, lon)) {
+					assertTrue(query.contains(hash));
+					assertTrue(contains(ranges, hash.ord()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPointsInInteriorHashesAreInsideThePolygon() {
+		GeoHashPolygonQuery query = new GeoHashPolygonQuery(L_SHAPE, new GeoHashCoverer(64, 0, 50, 0));
+		assertFalse(query.getInteriorHashes().isEmpty());
+		assertTrue(query.getInteriorHashes().size() < query.getSearchHashes().size());
+		Random rand = new Random(91011);
+		for (GeoHash interior : query.getInteriorHashes()) {
+			BoundingBox box = interior.getBoundingBox();
+			for (int i = 0; i < 100; i++) {
+				double lat = box.getMinLat() + rand.nextDouble() * box.getLatitudeSize();
+				double lon = box.getMinLon() + rand.nextDouble() * box.getLongitudeSize();
+				assertTrue(rayCasting(L_SHAPE, lat, lon));
+				assertTrue(query.isFullyContained(GeoHash.withBitPrecision(lat, lon, RANGE_BITS)));
+			}
+		}
+		assertFalse(query.isFullyContained(GeoHash.withBitPrecision(47.40, 8.60, RANGE_BITS)));
+	}
+
+	@Test
+	public void testCoverIsTighterThanBoundingBoxCover() {
+		GeoHashCoverer coverer = new GeoHashCoverer(32, 0, 50, 0);
+		double polygonCoverArea = area(new GeoHashPolygonQuery(DIAGONAL, coverer).getSearchHashes());
+		double bboxCoverArea = area(coverer.getCovering(boundingBox(DIAGONAL)));
+		assertTrue(polygonCoverArea < bboxCoverArea / 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNeedsThreeVertices() {
+		new GeoHashPolygonQuery(Arrays.asList(new WGS84Point(1, 1), new WGS84Point(2, 2), new WGS84Point(1, 1)));
+	}
+
+	private static boolean rayCasting(List<WGS84Point> vertices, double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0, j = vertices.size() - 1; i < vertices.size(); j = i++) {
+			WGS84Point a = vertices.get(i);
+			WGS84Point b = vertices.get(j);
+			if ((a.getLatitude() > lat) != (b.getLatitude() > lat)
+					&& lon < (b.getLongitude() - a.getLongitude()) * (lat - a.getLatitude())
+							/ (b.getLatitude() - a.getLatitude()) + a.getLongitude()) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	private static List<WGS84Point> circle(double lat, double lon, double radius, int n) {
+		List<WGS84Point> list = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			list.add(new WGS84Point(lat + radius * Math.sin(angle), lon + radius * Math.cos(angle)));
+		}
+		return list;
+	}
+
+	private static BoundingBox boundingBox(List<WGS84Point> vertices) {
+		BoundingBox bbox = new BoundingBox(vertices.get(0), vertices.get(0));
+		for (WGS84Point p : vertices) {
+			bbox.expandToInclude(new BoundingBox(p, p));
+		}
+		return bbox;
+	}
+
+	private static double area(List<GeoHash> hashes) {
+		double area = 0;
+		for (GeoHash hash : hashes) {
+			area += hash.getBoundingBox().getLatitudeSize() * hash.getBoundingBox().getLongitudeSize();
+		}
+		return area;
+	}
+
+	private static boolean contains(List<GeoHashRange> ranges, long ord) {
+		for (GeoHashRange range : ranges) {
+			if (range.contains(ord)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
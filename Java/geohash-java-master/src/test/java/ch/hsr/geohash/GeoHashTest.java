@@ -14,6 +14,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -581,4 +582,64 @@ public class GeoHashTest {
 		GeoHash hash = GeoHash.withCharacterPrecision(-36.919550434870125,174.71024582237604,7);
 		assertTrue(hash.ord() > 0);
 	}
+
+	@Test
+	public void testEncodeToPackedLongMatchesWithCharacterPrecision() {
+		Random rand = new Random(2387462L);
+		char[] chars = new char[12];
+		double[] box = new double[4];
+		for (int i = 0; i < 10000; i++) {
+			double lat = rand.nextDouble() * 180 - 90;
+			double lon = rand.nextDouble() * 360 - 180;
+			int precision = 1 + rand.nextInt(12);
+			GeoHash expected = GeoHash.withCharacterPrecision(lat, lon, precision);
+			long packed = GeoHash.encodeToPackedLong(lat, lon, precision);
+
+			assertEquals(precision, GeoHash.packedCharacterPrecision(packed));
+			assertEquals(expected.toPackedLong(), packed);
+			assertEquals(expected, GeoHash.fromPackedLong(packed));
+			int n = GeoHash.packedLongToBase32(packed, chars, 0);
+			assertEquals(expected.toBase32(), new String(chars, 0, n));
+			GeoHash.decodePackedLong(packed, box, 0);
+			BoundingBox bbox = expected.getBoundingBox();
+			assertEquals(bbox.getMinLat(), box[0], 0);
+			assertEquals(bbox.getMaxLat(), box[1], 0);
+			assertEquals(bbox.getMinLon(), box[2], 0);
+			assertEquals(bbox.getMaxLon(), box[3], 0);
+		}
+	}
+
+	@Test
+	public void testEncodeToPackedLongAtTheEdges() {
+		assertEquals(GeoHash.withCharacterPrecision(90, 180, 12).toPackedLong(),
+				GeoHash.encodeToPackedLong(90, 180, 12));
+		assertEquals(GeoHash.withCharacterPrecision(-90, -180, 12).toPackedLong(),
+				GeoHash.encodeToPackedLong(-90, -180, 12));
+		assertEquals(0, GeoHash.encodeToPackedLong(10, 20, 0));
+	}
+
+	@Test
+	public void testEncodeToPackedLongsBatch() {
+		double[] lats = { 40.390943, -36.919550434870125, 0 };
+		double[] lons = { 75.9375, 174.71024582237604, 0 };
+		long[] packed = GeoHash.encodeToPackedLongs(lats, lons, 7);
+		for (int i = 0; i < lats.length; i++) {
+			assertEquals(GeoHash.encodeToPackedLong(lats[i], lons[i], 7), packed[i]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodeToPackedLongsThrowsWhenLengthsDiffer() {
+		GeoHash.encodeToPackedLongs(new double[2], new double[3], 7);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodeToPackedLongThrowsWhenPrecisionTooHigh() {
+		GeoHash.encodeToPackedLong(10, 20, 13);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodeToPackedLongThrowsWhenLatitudeOutOfRange() {
+		GeoHash.encodeToPackedLong(90.5, 20, 5);
+	}
 }
@@ -0,0 +1,99 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+
+public class DistanceStrategyTest {
+	private static final WGS84Point ZURICH = new WGS84Point(47.3769, 8.5417);
+	private static final WGS84Point BERN = new WGS84Point(46.9480, 7.4474);
+
+	@Test
+	public void testVincentyMatchesVincentyGeodesy() {
+		assertEquals(VincentyGeodesy.distanceInMeters(ZURICH, BERN),
+				DistanceStrategy.VINCENTY.distanceInMeters(ZURICH, BERN), 0);
+	}
+
+	@Test
+	public void testApproximationsAreWithinSixTenthsOfAPercentOfVincenty() {
+		Random rand = new Random(127364L);
+		for (int i = 0; i < 10000; i++) {
+			double lat = rand.nextDouble() * 140 - 70;
+			double lon = rand.nextDouble() * 360 - 180;
+			WGS84Point a = new WGS84Point(lat, lon);
+			// up to about 100km away, possibly across the 180th meridian
+			WGS84Point b = new WGS84Point(lat + rand.nextDouble() - 0.5, wrap(lon + rand.nextDouble() - 0.5));
+			double exact = VincentyGeodesy.distanceInMeters(a, b);
+			assertEquals(exact, DistanceStrategy.HAVERSINE.distanceInMeters(a, b), exact * 0.006 + 0.01);
+			assertEquals(exact, DistanceStrategy.EQUIRECTANGULAR.distanceInMeters(a, b), exact * 0.006 + 0.01);
+		}
+	}
+
+	@Test
+	public void testBatchMatchesSingleDistances() {
+		Random rand = new Random(2387L);
+		double[] lats = new double[100];
+		double[] lons = new double[100];
+		for (int i = 0; i < lats.length; i++) {
+			lats[i] = ZURICH.getLatitude() + rand.nextDouble() - 0.5;
+			lons[i] = ZURICH.getLongitude() + rand.nextDouble() - 0.5;
+		}
+		double[] distances = new double[lats.length];
+		int[] indexes = new int[lats.length];
+		for (DistanceStrategy strategy : DistanceStrategy.values()) {
+			strategy.distancesInMeters(ZURICH, lats, lons, distances);
+			int expectedCount = 0;
+			for (int i = 0; i < lats.length; i++) {
+				assertEquals(strategy.distanceInMeters(ZURICH.getLatitude(), ZURICH.getLongitude(), lats[i],
+						lons[i]), distances[i], 1e-6);
+				if (distances[i] <= 20000) {
+					expectedCount++;
+				}
+			}
+			int count = strategy.filterWithinRadius(ZURICH, 20000, lats, lons, indexes);
+			assertEquals(expectedCount, count);
+			for (int k = 0; k < count; k++) {
+				assertTrue(distances[indexes[k]] <= 20000 + 1e-6);
+				if (k > 0) {
+					assertTrue(indexes[k - 1] < indexes[k]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchThrowsWhenLengthsDiffer() {
+		DistanceStrategy.HAVERSINE.distancesInMeters(ZURICH, new double[2], new double[3], new double[3]);
+	}
+
+	@Test
+	public void testCircleQueryWithDistanceStrategy() {
+		// the corner of the square around the circle is outside the circle
+		WGS84Point corner = VincentyGeodesy.moveInDirection(VincentyGeodesy.moveInDirection(ZURICH, 0, 900), 90,
+				900);
+		WGS84Point inside = VincentyGeodesy.moveInDirection(ZURICH, 45, 900);
+		assertTrue(new GeoHashCircleQuery(ZURICH, 1000).contains(corner));
+		for (DistanceStrategy strategy : DistanceStrategy.values()) {
+			GeoHashCircleQuery query = new GeoHashCircleQuery(ZURICH, 1000, strategy);
+			assertFalse(query.contains(corner));
+			assertTrue(query.contains(inside));
+		}
+	}
+
+	private static double wrap(double lon) {
+		if (lon > 180) {
+			return lon - 360;
+		} else if (lon < -180) {
+			return lon + 360;
+		} else {
+			return lon;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.github.davidmoten.grumpy.wms.ImageCache;
+import com.github.davidmoten.grumpy.wms.WmsRequest;
+
+/**
+ * Gets and puts of tile images from several threads sharing one
+ * {@link ImageCache}. The tiles requested outnumber the cache size so
+ * <code>readWrite</code> also measures eviction.
+ */
+@State(Scope.Benchmark)
+public class ImageCacheBenchmark {
+
+    private static final int SIZE = 4096;
+
+    @Param({ "250" })
+    public int cacheSize;
+
+    private ImageCache cache;
+    private WmsRequest[] requests;
+    private byte[] image;
+
+    @Setup
+    public void setup() {
+        List<String> queries = TileRequests.sessions(1283763L, "Custom", SIZE);
+        requests = ServletRequests.createWmsRequests(queries).toArray(new WmsRequest[SIZE]);
+        cache = ImageCache.create(cacheSize).add("Custom");
+        // a typical size for a png tile
+        image = new byte[8 * 1024];
+        for (int i = 0; i < cacheSize; i++)
+            cache.put(requests[i], image);
+    }
+
+    /**
+     * The index of the next request of each thread. Threads start at
+     * different requests so they don't all hit the same entries.
+     */
+    @State(Scope.Thread)
+    public static class Index {
+
+        private static int threads;
+
+        private int index;
+
+        @Setup
+        public void setup() {
+            synchronized (Index.class) {
+                index = (threads++ * 997) % SIZE;
+            }
+        }
+
+        int next(int size) {
+            index = (index + 1) % size;
+            return index;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] getHit(Index index) {
+        // only the first cacheSize requests were put
+        return cache.get(requests[index.next(cacheSize)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public byte[] get(Index index) {
+        return cache.get(requests[index.next(SIZE)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void put(Index index) {
+        cache.put(requests[index.next(SIZE)], image);
+    }
+}
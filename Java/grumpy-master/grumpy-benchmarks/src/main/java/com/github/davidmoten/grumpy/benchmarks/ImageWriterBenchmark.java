@@ -0,0 +1,67 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.davidmoten.grumpy.wms.ImageWriter;
+import com.github.davidmoten.grumpy.wms.ImageWriterDefault;
+import com.github.davidmoten.grumpy.wms.ImageWriterPng;
+import com.github.davidmoten.grumpy.wms.WmsRequest;
+import com.github.davidmoten.grumpy.wms.layer.darkness.DarknessLayer;
+
+/**
+ * Encodes a rendered Darkness layer image the size of a tile or of a 4x4
+ * metatile.
+ */
+@State(Scope.Thread)
+public class ImageWriterBenchmark {
+
+    @Param({ "imageio", "png", "png-level1", "png8" })
+    public String writer;
+
+    @Param({ "256", "1024" })
+    public int size;
+
+    private ImageWriter imageWriter;
+    private String imageType;
+    private BufferedImage image;
+    private ByteArrayOutputStream bytes;
+
+    @Setup
+    public void setup() {
+        if (writer.equals("imageio"))
+            imageWriter = new ImageWriterDefault();
+        else if (writer.equals("png-level1"))
+            imageWriter = ImageWriterPng.builder().level(1).build();
+        else
+            imageWriter = new ImageWriterPng();
+        imageType = writer.equals("png8") ? "png8" : "png";
+
+        // the whole world so the image shows all the bands
+        WmsRequest request = ServletRequests.createWmsRequest(TileRequests.getMapQuery(
+                "Darkness", 0, 0, 0, size));
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            new DarknessLayer().render(g, request);
+        } finally {
+            g.dispose();
+        }
+        bytes = new ByteArrayOutputStream();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        bytes.reset();
+        imageWriter.writeImage(image, bytes, imageType);
+        return bytes.size();
+    }
+}
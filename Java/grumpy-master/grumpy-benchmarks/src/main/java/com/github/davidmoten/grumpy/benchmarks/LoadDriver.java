@@ -0,0 +1,263 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Servlet;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+/**
+ * Replays GetMap tile requests against a WMS servlet running in an embedded
+ * Jetty server (or against the url of a running server) from several client
+ * threads and reports the latency percentiles and the throughput. By default
+ * the requests are sessions of panning and zooming over the layers of the
+ * demo {@link com.github.davidmoten.grumpy.wms.demo.WmsServlet}.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.github.davidmoten.grumpy.benchmarks.LoadDriver
+ *     [-threads 16] [-requests 20000] [-warmup 2000] [-layers Custom,Darkness]
+ *     [-file queries.txt] [-servlet class] [-url http://host:port/wms]
+ *     [-revalidate]
+ * </pre>
+ *
+ * A file has one request per line, either a query string or a url whose
+ * query string is used, for example taken from an access log. Lines are
+ * replayed in order and repeated if there are fewer than the requests
+ * needed. With <code>-revalidate</code> a client that has already received a
+ * tile sends its ETag in <code>If-None-Match</code>.
+ */
+public final class LoadDriver {
+
+    private static final String DEMO_SERVLET = "com.github.davidmoten.grumpy.wms.demo.WmsServlet";
+
+    private final String url;
+    private final int threads;
+    private final boolean revalidate;
+    private final ConcurrentHashMap<String, String> etags = new ConcurrentHashMap<String, String>();
+
+    private LoadDriver(String url, int threads, boolean revalidate) {
+        this.url = url;
+        this.threads = threads;
+        this.revalidate = revalidate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.parseInt(getOption(args, "-threads", "16"));
+        int requests = Integer.parseInt(getOption(args, "-requests", "20000"));
+        int warmup = Integer.parseInt(getOption(args, "-warmup", "2000"));
+        String layers = getOption(args, "-layers", "Custom,Darkness");
+        String file = getOption(args, "-file", null);
+        String servlet = getOption(args, "-servlet", DEMO_SERVLET);
+        String url = getOption(args, "-url", null);
+        boolean revalidate = Arrays.asList(args).contains("-revalidate");
+
+        List<String> queries;
+        if (file == null)
+            queries = TileRequests.sessions(29384723L, layers, warmup + requests);
+        else
+            queries = repeat(readQueries(new File(file)), warmup + requests);
+
+        Server server = null;
+        if (url == null) {
+            server = startServer((Servlet) Class.forName(servlet).newInstance());
+            url = "http://localhost:" + server.getConnectors()[0].getLocalPort() + "/wms";
+        }
+        try {
+            LoadDriver driver = new LoadDriver(url, threads, revalidate);
+            System.out.println("warming up with " + warmup + " requests to " + url);
+            driver.run(queries.subList(0, warmup));
+            System.out.println("running " + requests + " requests from " + threads
+                    + " threads");
+            Result result = driver.run(queries.subList(warmup, queries.size()));
+            System.out.println(result);
+        } finally {
+            if (server != null)
+                server.stop();
+        }
+    }
+
+    private static Server startServer(Servlet servlet) throws Exception {
+        // any free port
+        Server server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(servlet), "/wms");
+        server.setHandler(context);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Makes the requests from the client threads which take the next request
+     * in order as they become free.
+     */
+    private Result run(final List<String> queries) throws InterruptedException {
+        final long[] latencies = new long[queries.size()];
+        final int[] statuses = new int[queries.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < queries.size()) {
+                            long requestStart = System.nanoTime();
+                            statuses[index] = request(queries.get(index));
+                            latencies[index] = System.nanoTime() - requestStart;
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "load-driver-" + i);
+            t.start();
+        }
+        finished.await();
+        return new Result(latencies, statuses, System.nanoTime() - start);
+    }
+
+    /**
+     * Makes the request and reads the whole response so the connection is
+     * kept alive. Returns the status code or 0 if the request failed.
+     */
+    private int request(String query) {
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(url + "?" + query)
+                    .openConnection();
+            if (revalidate) {
+                String etag = etags.get(query);
+                if (etag != null)
+                    con.setRequestProperty("If-None-Match", etag);
+            }
+            int status = con.getResponseCode();
+            InputStream is = status < 400 ? con.getInputStream() : con.getErrorStream();
+            if (is != null)
+                consume(is);
+            String etag = con.getHeaderField("ETag");
+            if (revalidate && etag != null)
+                etags.put(query, etag);
+            return status;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void consume(InputStream is) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            while (is.read(buffer) != -1)
+                ;
+        } finally {
+            is.close();
+        }
+    }
+
+    private static List<String> readQueries(File file) throws IOException {
+        List<String> queries = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+                file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0)
+                    queries.add(line.substring(line.indexOf('?') + 1));
+            }
+        } finally {
+            reader.close();
+        }
+        if (queries.isEmpty())
+            throw new IllegalArgumentException("no requests in " + file);
+        return queries;
+    }
+
+    private static List<String> repeat(List<String> queries, int count) {
+        List<String> list = new ArrayList<String>(count);
+        while (list.size() < count)
+            list.add(queries.get(list.size() % queries.size()));
+        return list;
+    }
+
+    private static String getOption(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++)
+            if (args[i].equals(name))
+                return args[i + 1];
+        return defaultValue;
+    }
+
+    /**
+     * The latencies and response statuses of a run.
+     */
+    static final class Result {
+
+        private final long[] latencies;
+        private final int[] statuses;
+        private final long elapsedNanos;
+
+        Result(long[] latencies, int[] statuses, long elapsedNanos) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.statuses = statuses;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double getRequestsPerSecond() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Returns the latency in ms that the given proportion of requests
+         * took no longer than.
+         *
+         * @param p
+         *            between 0 and 1
+         * @return latency in ms
+         */
+        double getPercentileMs(double p) {
+            if (latencies.length == 0)
+                return 0;
+            int index = Math.max(0, (int) Math.ceil(p * latencies.length) - 1);
+            return latencies[index] / 1e6;
+        }
+
+        int count(int fromStatus, int toStatus) {
+            int count = 0;
+            for (int status : statuses)
+                if (status >= fromStatus && status <= toStatus)
+                    count++;
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d, seconds=%.2f, requestsPerSecond=%.1f%n"
+                    + "latencyMs p50=%.2f, p90=%.2f, p99=%.2f, max=%.2f%n"
+                    + "status 200=%d, 304=%d, 4xx=%d, 503=%d, other 5xx=%d, failed=%d",
+                    latencies.length, elapsedNanos / 1e9, getRequestsPerSecond(),
+                    getPercentileMs(0.5), getPercentileMs(0.9), getPercentileMs(0.99),
+                    getPercentileMs(1), count(200, 200), count(304, 304), count(400, 499),
+                    count(503, 503), count(500, 502) + count(504, 599), count(0, 0));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.grumpy.projection.FeatureUtil;
+import com.github.davidmoten.grumpy.projection.Projector;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+import com.github.davidmoten.grumpy.projection.ProjectorTarget;
+
+/**
+ * Transforms between positions and pixels of a world image one point at a
+ * time and in batches. The batch benchmarks report the time per point.
+ */
+@State(Scope.Thread)
+public class ProjectorBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({ FeatureUtil.EPSG_4326, FeatureUtil.EPSG_3857 })
+    public String srs;
+
+    private Projector projector;
+    private double[] lonLats;
+    private double[] pixels;
+    private double[] out;
+    private int index;
+
+    @Setup
+    public void setup() {
+        ProjectorBounds bounds;
+        ProjectorTarget target;
+        if (srs.equals(FeatureUtil.EPSG_4326)) {
+            bounds = new ProjectorBounds(srs, -180, -90, 180, 90);
+            target = new ProjectorTarget(1024, 512);
+        } else {
+            double extent = 20037508.342789244;
+            bounds = new ProjectorBounds(srs, -extent, -extent, extent, extent);
+            target = new ProjectorTarget(1024, 1024);
+        }
+        projector = new Projector(bounds, target);
+        Random random = new Random(2938474L);
+        lonLats = new double[2 * SIZE];
+        pixels = new double[2 * SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            lonLats[2 * i] = random.nextDouble() * 360 - 180;
+            lonLats[2 * i + 1] = random.nextDouble() * 170 - 85;
+            pixels[2 * i] = random.nextDouble() * target.getWidth();
+            pixels[2 * i + 1] = random.nextDouble() * target.getHeight();
+        }
+        out = new double[2 * SIZE];
+    }
+
+    @Benchmark
+    public Point2D.Double toPoint2D() {
+        index = (index + 1) % SIZE;
+        return projector.toPoint2D(lonLats[2 * index + 1], lonLats[2 * index]);
+    }
+
+    @Benchmark
+    public Position toPosition() {
+        index = (index + 1) % SIZE;
+        return projector.toPosition(pixels[2 * index], pixels[2 * index + 1]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double[] toTargetBatch() {
+        projector.toTarget(lonLats, 0, out, 0, SIZE);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double[] toLonLatBatch() {
+        projector.toLonLat(pixels, 0, out, 0, SIZE);
+        return out;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.grumpy.projection.FeatureUtil;
+import com.github.davidmoten.grumpy.projection.Projector;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+import com.github.davidmoten.grumpy.projection.ProjectorTarget;
+import com.github.davidmoten.grumpy.wms.layer.darkness.SunUtil;
+import com.github.davidmoten.grumpy.wms.layer.darkness.SunUtil.Twilight;
+import com.github.davidmoten.grumpy.wms.reduction.RectangleSampler;
+import com.github.davidmoten.grumpy.wms.reduction.RectangleSamplerCorners;
+import com.github.davidmoten.grumpy.wms.reduction.RectangleSamplerGrid;
+import com.github.davidmoten.grumpy.wms.reduction.Reducer;
+import com.github.davidmoten.grumpy.wms.reduction.ValueRenderer;
+import com.google.common.base.Function;
+
+/**
+ * Renders the twilight bands of the whole world with the {@link Reducer}.
+ * The value renderer only fills rectangles so the time is mostly sampling,
+ * projecting and evaluating the value function.
+ */
+@State(Scope.Thread)
+public class ReducerBenchmark {
+
+    private static final Color[] COLORS = { new Color(0, 0, 0, 180), new Color(0, 0, 0, 140),
+            new Color(0, 0, 0, 100), new Color(0, 0, 0, 60), new Color(0, 0, 0, 0) };
+
+    @Param({ "corners", "grid" })
+    public String sampler;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    @Param({ "256", "1024" })
+    public int size;
+
+    private Projector projector;
+    private RectangleSampler rectangleSampler;
+    private Function<Position, Twilight> function;
+    private ValueRenderer<Twilight> renderer;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() {
+        double extent = 20037508.342789244;
+        projector = new Projector(new ProjectorBounds(FeatureUtil.EPSG_3857, -extent, -extent,
+                extent, extent), new ProjectorTarget(size, size));
+        if (sampler.equals("corners"))
+            rectangleSampler = new RectangleSamplerCorners();
+        else
+            rectangleSampler = new RectangleSamplerGrid(500);
+        final Position subSolarPoint = new Position(15, 60);
+        function = new Function<Position, Twilight>() {
+            @Override
+            public Twilight apply(Position p) {
+                return SunUtil.getTwilight(subSolarPoint, p);
+            }
+        };
+        renderer = new ValueRenderer<Twilight>() {
+            @Override
+            public void render(Graphics2D g, Projector projector, Rectangle region, Twilight t) {
+                g.setColor(COLORS[t.ordinal()]);
+                g.fill(region);
+            }
+        };
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        if (parallel)
+            Reducer.renderParallel(g, function, projector, rectangleSampler, renderer);
+        else
+            Reducer.render(g, function, projector, rectangleSampler, renderer);
+        return image;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.github.davidmoten.grumpy.wms.MissingMandatoryParameterException;
+import com.github.davidmoten.grumpy.wms.WmsRequest;
+
+/**
+ * Creates {@link HttpServletRequest}s from query strings without a servlet
+ * container. Only the methods {@link WmsRequest} uses are supported.
+ */
+final class ServletRequests {
+
+    private static final String URL = "http://localhost/wms";
+
+    private ServletRequests() {
+        // prevent instantiation
+    }
+
+    static HttpServletRequest create(final String queryString) {
+        final Map<String, String> parameters = parse(queryString);
+        return (HttpServletRequest) Proxy.newProxyInstance(ServletRequests.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getParameter"))
+                            return parameters.get(args[0]);
+                        else if (name.equals("getParameterNames"))
+                            return Collections.enumeration(parameters.keySet());
+                        else if (name.equals("getQueryString"))
+                            return queryString;
+                        else if (name.equals("getRequestURL"))
+                            return new StringBuffer(URL);
+                        else
+                            throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    static WmsRequest createWmsRequest(String queryString) {
+        try {
+            return new WmsRequest(create(queryString));
+        } catch (MissingMandatoryParameterException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static List<WmsRequest> createWmsRequests(List<String> queryStrings) {
+        List<WmsRequest> list = new ArrayList<WmsRequest>(queryStrings.size());
+        for (String queryString : queryStrings)
+            list.add(createWmsRequest(queryString));
+        return list;
+    }
+
+    private static Map<String, String> parse(String queryString) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        try {
+            for (String item : queryString.split("&")) {
+                int i = item.indexOf('=');
+                if (i > 0)
+                    map.put(URLDecoder.decode(item.substring(0, i), "UTF-8"),
+                            URLDecoder.decode(item.substring(i + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return map;
+    }
+}
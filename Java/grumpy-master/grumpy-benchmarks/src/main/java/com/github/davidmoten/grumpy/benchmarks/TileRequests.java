@@ -0,0 +1,146 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GetMap query strings for the 256x256 EPSG:3857 tiles a tiled map client
+ * requests. A session shows a square of tiles then pans by a tile or zooms
+ * in or out and shows the square again, so like a real client most of the
+ * tiles it requests overlap what was requested before.
+ */
+final class TileRequests {
+
+    static final int TILE_SIZE = 256;
+
+    /**
+     * Half the width of the EPSG:3857 world in metres.
+     */
+    private static final double EXTENT = 20037508.342789244;
+
+    private TileRequests() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the query string of the GetMap request for a tile.
+     *
+     * @param layers
+     *            comma separated layer names
+     * @param zoom
+     *            zoom level, the world is 2^zoom tiles wide
+     * @param x
+     *            tile column from the west
+     * @param y
+     *            tile row from the north
+     * @return query string
+     */
+    static String getMapQuery(String layers, int zoom, int x, int y) {
+        return getMapQuery(layers, zoom, x, y, TILE_SIZE);
+    }
+
+    /**
+     * Returns the query string of the GetMap request for a tile rendered at
+     * the given size in pixels.
+     *
+     * @param layers
+     *            comma separated layer names
+     * @param zoom
+     *            zoom level, the world is 2^zoom tiles wide
+     * @param x
+     *            tile column from the west
+     * @param y
+     *            tile row from the north
+     * @param pixels
+     *            width and height of the image
+     * @return query string
+     */
+    static String getMapQuery(String layers, int zoom, int x, int y, int pixels) {
+        double size = 2 * EXTENT / (1 << zoom);
+        double minX = -EXTENT + x * size;
+        double maxY = EXTENT - y * size;
+        return "SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap&LAYERS=" + layers
+                + "&STYLES=&SRS=EPSG:3857&BBOX=" + minX + "," + (maxY - size) + ","
+                + (minX + size) + "," + maxY + "&WIDTH=" + pixels + "&HEIGHT=" + pixels
+                + "&FORMAT=image/png&TRANSPARENT=true";
+    }
+
+    /**
+     * Returns the requests of one session in the order they are made.
+     *
+     * @param random
+     * @param layers
+     *            comma separated layer names
+     * @param minZoom
+     * @param maxZoom
+     * @param viewTiles
+     *            the view is this many tiles wide and high
+     * @param moves
+     *            the number of pans and zooms
+     * @return query strings
+     */
+    static List<String> session(Random random, String layers, int minZoom, int maxZoom,
+            int viewTiles, int moves) {
+        List<String> queries = new ArrayList<String>();
+        int zoom = minZoom + random.nextInt(maxZoom - minZoom + 1);
+        int x = random.nextInt(1 << zoom);
+        int y = random.nextInt(1 << zoom);
+        for (int move = 0; move <= moves; move++) {
+            int n = 1 << zoom;
+            for (int i = 0; i < viewTiles; i++) {
+                int row = y - viewTiles / 2 + i;
+                if (row >= 0 && row < n)
+                    for (int j = 0; j < viewTiles; j++) {
+                        // the map repeats east and west
+                        int column = ((x - viewTiles / 2 + j) % n + n) % n;
+                        queries.add(getMapQuery(layers, zoom, column, row));
+                    }
+            }
+            double p = random.nextDouble();
+            if (p < 0.15 && zoom < maxZoom) {
+                zoom++;
+                x = 2 * x;
+                y = 2 * y;
+            } else if (p < 0.3 && zoom > minZoom) {
+                zoom--;
+                x = x / 2;
+                y = y / 2;
+            } else {
+                // pan by a tile
+                int direction = random.nextInt(4);
+                if (direction == 0)
+                    x++;
+                else if (direction == 1)
+                    x--;
+                else if (direction == 2)
+                    y = Math.min(y + 1, n - 1);
+                else
+                    y = Math.max(y - 1, 0);
+            }
+            x = (x % (1 << zoom) + (1 << zoom)) % (1 << zoom);
+        }
+        return queries;
+    }
+
+    /**
+     * Returns the requests of consecutive sessions up to the given number of
+     * requests.
+     *
+     * @param seed
+     * @param layers
+     *            comma separated layer names
+     * @param count
+     *            number of requests
+     * @return query strings
+     */
+    static List<String> sessions(long seed, String layers, int count) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<String>(count);
+        while (queries.size() < count) {
+            List<String> session = session(random, layers, 2, 10, 4, 20);
+            queries.addAll(session.subList(0, Math.min(session.size(), count - queries.size())));
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.davidmoten.grumpy.benchmarks;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.davidmoten.grumpy.wms.MissingMandatoryParameterException;
+import com.github.davidmoten.grumpy.wms.WmsRequest;
+
+/**
+ * Parsing the parameters of GetMap tile requests.
+ */
+@State(Scope.Thread)
+public class WmsRequestBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private HttpServletRequest[] requests;
+    private int index;
+
+    @Setup
+    public void setup() {
+        List<String> queries = TileRequests.sessions(8234234L, "Custom,Darkness", SIZE);
+        requests = new HttpServletRequest[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            requests[i] = ServletRequests.create(queries.get(i));
+    }
+
+    @Benchmark
+    public WmsRequest parse() throws MissingMandatoryParameterException {
+        index = (index + 1) % SIZE;
+        return new WmsRequest(requests[index]);
+    }
+}
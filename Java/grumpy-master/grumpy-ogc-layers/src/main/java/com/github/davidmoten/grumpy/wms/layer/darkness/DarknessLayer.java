@@ -3,37 +3,38 @@ package com.github.davidmoten.grumpy.wms.layer.darkness;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
 
 import javax.imageio.ImageIO;
 
 import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.grumpy.projection.FeatureUtil;
 import com.github.davidmoten.grumpy.projection.Projector;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
 import com.github.davidmoten.grumpy.wms.Layer;
 import com.github.davidmoten.grumpy.wms.LayerFeatures;
-import com.github.davidmoten.grumpy.wms.RendererUtil;
+import com.github.davidmoten.grumpy.wms.LayerVersion;
 import com.github.davidmoten.grumpy.wms.WmsRequest;
 import com.github.davidmoten.grumpy.wms.WmsUtil;
 import com.github.davidmoten.grumpy.wms.layer.darkness.SunUtil.Twilight;
-import com.github.davidmoten.grumpy.wms.reduction.RectangleSampler;
-import com.github.davidmoten.grumpy.wms.reduction.RectangleSamplerCorners;
-import com.github.davidmoten.grumpy.wms.reduction.Reducer;
-import com.github.davidmoten.grumpy.wms.reduction.ValueRenderer;
-import com.google.common.base.Function;
 
 /**
- * Splits the visible region into rectangles recursively till all sampled points
- * in each rectangle have the same {@link Twilight} value. Once the rectangle
- * has a uniform {@link Twilight} value it is filled with the shade
- * corresponding to the {@link Twilight} value.
+ * Fills the twilight bands around the night side of the Earth with the shade
+ * corresponding to their {@link Twilight} value. The band boundaries are
+ * calculated analytically by {@link Terminator} for the position of the sun,
+ * which is recalculated every {@value #TIME_BUCKET_MS}ms, and drawn as
+ * polygons.
  * 
  * @author Steven Ring
  * @author Dave Moten
@@ -42,22 +43,57 @@ public class DarknessLayer implements Layer {
 
     private static final String STYLE_PLAIN = "plain";
     private static final int SUB_SOLAR_POINT_SIZE_PIXELS = 30;
+    private static final long TIME_BUCKET_MS = 10000;
+    private static final double COARSE_STEP_DEGREES = 0.25;
+    private static final double MAX_MERCATOR_LAT = 85.06;
     private static final Map<Twilight, Color> shades = createShades();
     private final BufferedImage subSolarImage;
     private final LayerFeatures features;
+    private volatile CachedTerminator cachedTerminator;
 
     public DarknessLayer() {
         subSolarImage = loadSubSolarPointImage();
+        // the image only changes when the sun position is recalculated
+        LayerVersion version = new LayerVersion() {
+            @Override
+            public long getLastModified() {
+                return System.currentTimeMillis() / TIME_BUCKET_MS * TIME_BUCKET_MS;
+            }
+        };
         features = LayerFeatures.builder().name("Darkness").style(STYLE_PLAIN).crs("EPSG:4326")
-                .crs("EPSG:3857").build();
+                .crs("EPSG:3857").version(version).maxAgeSeconds((int) (TIME_BUCKET_MS / 1000))
+                .build();
     }
 
     @Override
     public void render(Graphics2D g, WmsRequest request) {
         Projector projector = WmsUtil.getProjector(request);
-        Position subSolarPoint = SunUtil.getSubSolarPoint();
-        renderSubSolarPoint(g, subSolarPoint, projector, subSolarImage, request.getStyles());
-        renderTwilight(g, subSolarPoint, projector);
+        Terminator terminator = getTerminator();
+        renderSubSolarPoint(g, terminator.getSubSolarPoint(), projector, subSolarImage,
+                request.getStyles());
+        renderTwilight(g, terminator, projector);
+    }
+
+    private Terminator getTerminator() {
+        long bucket = System.currentTimeMillis() / TIME_BUCKET_MS;
+        CachedTerminator cached = cachedTerminator;
+        if (cached == null || cached.bucket != bucket) {
+            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+            time.setTimeInMillis(bucket * TIME_BUCKET_MS);
+            cached = new CachedTerminator(bucket, new Terminator(SunUtil.getSubSolarPoint(time)));
+            cachedTerminator = cached;
+        }
+        return cached.terminator;
+    }
+
+    private static final class CachedTerminator {
+        final long bucket;
+        final Terminator terminator;
+
+        CachedTerminator(long bucket, Terminator terminator) {
+            this.bucket = bucket;
+            this.terminator = terminator;
+        }
     }
 
     private static void renderSubSolarPoint(Graphics2D g, Position subSolarPoint,
@@ -86,46 +122,79 @@ public class DarknessLayer implements Layer {
         }
     }
 
-    private static void renderTwilight(Graphics2D g, final Position subSolarPoint,
-            Projector projector) {
-
-        Function<Position, Twilight> function = createValueFunction(subSolarPoint);
-        ValueRenderer<Twilight> valueRenderer = createValueRenderer();
-        RectangleSampler sampler = new RectangleSamplerCorners();
-        Reducer.render(g, function, projector, sampler, valueRenderer);
-    }
-
-    private static Function<Position, Twilight> createValueFunction(final Position subSolarPoint) {
-        return new Function<Position, Twilight>() {
-            @Override
-            public Twilight apply(Position p) {
-                return SunUtil.getTwilight(subSolarPoint, p);
+    private static void renderTwilight(Graphics2D g, Terminator terminator, Projector projector) {
+        double[] lons = getLongitudes(projector);
+        double maxLat = FeatureUtil.EPSG_4326.equals(projector.getBounds().getSrs()) ? 90
+                : MAX_MERCATOR_LAT;
+        ProjectorBounds b = projector.getBounds();
+        // draw copies of the world either side for wrapped bounds
+        double periodPixels = projector.periodAtLat(0) / (b.getMaxX() - b.getMinX())
+                * projector.getTarget().getWidth();
+        for (int band = 0; band < Terminator.BANDS.length; band++) {
+            g.setColor(shades.get(Terminator.BANDS[band]));
+            for (double[] polygon : terminator.getPolygons(band, lons, maxLat)) {
+                GeneralPath path = toPath(projector, polygon);
+                g.fill(path);
+                g.fill(AffineTransform.getTranslateInstance(-periodPixels, 0)
+                        .createTransformedShape(path));
+                g.fill(AffineTransform.getTranslateInstance(periodPixels, 0)
+                        .createTransformedShape(path));
             }
-        };
+        }
     }
 
-    private static ValueRenderer<Twilight> createValueRenderer() {
-        return new ValueRenderer<Twilight>() {
-            @Override
-            public void render(Graphics2D g, Projector projector, Rectangle region, Twilight t) {
-                renderBounds(g, projector, region, t);
-            }
-        };
+    /**
+     * Returns the longitudes from -180 to 180 at which to evaluate the band
+     * boundaries, every {@value #COARSE_STEP_DEGREES} degrees and about every
+     * two pixels across the visible longitudes.
+     */
+    private static double[] getLongitudes(Projector projector) {
+        int width = projector.getTarget().getWidth();
+        int height = projector.getTarget().getHeight();
+        double[] edges = { 0, height / 2.0, width, height / 2.0 };
+        projector.toLonLat(edges, 0, edges, 0, 2);
+        double left = Math.max(-180, edges[0]);
+        double right = Math.min(180, edges[2]);
+        double fineStep = (right - left) / Math.max(1, width / 2);
+        List<Double> lons = new ArrayList<Double>();
+        double lon = -180;
+        while (lon < 180) {
+            lons.add(lon);
+            if (lon >= left && lon < right && fineStep < COARSE_STEP_DEGREES)
+                lon += fineStep;
+            else if (lon < left && fineStep > 0 && fineStep < COARSE_STEP_DEGREES)
+                lon = Math.min(lon + COARSE_STEP_DEGREES, left);
+            else
+                lon += COARSE_STEP_DEGREES;
+        }
+        lons.add(180.0);
+        double[] array = new double[lons.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = lons.get(i);
+        return array;
     }
 
-    private static void renderBounds(Graphics2D g, Projector projector, Rectangle region,
-            final Twilight twilight) {
-        if (twilight != Twilight.DAYLIGHT) {
-
-            List<Position> box = WmsUtil.getBorder(projector, region);
-
-            // use multiple paths to handle boundary weirdness
-            List<GeneralPath> path = RendererUtil.toPath(projector, box);
-
-            // fill the region
-            g.setColor(shades.get(twilight));
-            RendererUtil.fill(g, path);
+    /**
+     * Returns the polygon of lon, lat pairs as a path in target coordinates.
+     */
+    private static GeneralPath toPath(Projector projector, double[] polygon) {
+        int n = polygon.length / 2;
+        double[] xy = new double[polygon.length];
+        projector.toSrs(polygon, 0, xy, 0, n);
+        ProjectorBounds b = projector.getBounds();
+        double scaleX = projector.getTarget().getWidth() / (b.getMaxX() - b.getMinX());
+        double scaleY = projector.getTarget().getHeight() / (b.getMaxY() - b.getMinY());
+        GeneralPath path = new GeneralPath();
+        for (int i = 0; i < n; i++) {
+            double x = (xy[2 * i] - b.getMinX()) * scaleX;
+            double y = (b.getMaxY() - xy[2 * i + 1]) * scaleY;
+            if (i == 0)
+                path.moveTo(x, y);
+            else
+                path.lineTo(x, y);
         }
+        path.closePath();
+        return path;
     }
 
     private static Map<Twilight, Color> createShades() {
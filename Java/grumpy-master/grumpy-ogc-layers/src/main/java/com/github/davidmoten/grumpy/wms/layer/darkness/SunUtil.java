@@ -18,7 +18,8 @@ import com.github.davidmoten.grumpy.core.Position;
 public final class SunUtil {
 
 	private static Logger log = LoggerFactory.getLogger(SunUtil.class);
-	private static final double EARTH_RADIUS_KM = 6378.0;
+	// must match the radius used by Position to calculate distances
+	private static final double EARTH_RADIUS_KM = Position.EARTH_RADIUS_KM;
 
 	/**
 	 * Constructor to prevent inheritance
@@ -0,0 +1,194 @@
+package com.github.davidmoten.grumpy.wms.layer.darkness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.grumpy.wms.layer.darkness.SunUtil.Twilight;
+
+/**
+ * The twilight bands for one sub-solar point. The band of a {@link Twilight}
+ * value is the set of positions at least a given great circle distance from
+ * the sub-solar point, so the bands nest and can be painted darkest last. At
+ * each longitude a band covers a single range of latitudes which is
+ * calculated analytically, so a band can be drawn as polygons without
+ * evaluating {@link SunUtil#getTwilight(Position, Position)} per pixel.
+ */
+final class Terminator {
+
+    /**
+     * The bands in painting order.
+     */
+    static final Twilight[] BANDS = { Twilight.CIVIL, Twilight.NAUTICAL, Twilight.ASTRONOMICAL,
+            Twilight.NIGHT };
+
+    /**
+     * Great circle distance in degrees from the sub-solar point where each
+     * band starts, matching {@link SunUtil#getTwilight(double)}.
+     */
+    private static final double[] BAND_DISTANCES_DEGREES = { 90, 96, 102, 108 };
+
+    private static final int EDGE_ITERATIONS = 30;
+
+    private final Position subSolarPoint;
+    private final double sinDeclination;
+    private final double cosDeclination;
+    private final double[] cosBandDistances = new double[BANDS.length];
+
+    Terminator(Position subSolarPoint) {
+        this.subSolarPoint = subSolarPoint;
+        double declination = Math.toRadians(subSolarPoint.getLat());
+        this.sinDeclination = Math.sin(declination);
+        this.cosDeclination = Math.cos(declination);
+        for (int i = 0; i < BANDS.length; i++)
+            cosBandDistances[i] = Math.cos(Math.toRadians(BAND_DISTANCES_DEGREES[i]));
+    }
+
+    Position getSubSolarPoint() {
+        return subSolarPoint;
+    }
+
+    /**
+     * Returns the polygons covering the band as arrays of lon, lat pairs. Each
+     * polygon follows the northern edge of the band from west to east then
+     * the southern edge back. The edges are evaluated at the given longitudes
+     * plus the longitudes where the band starts and ends.
+     *
+     * @param band
+     *            index into {@link #BANDS}
+     * @param lons
+     *            increasing longitudes from -180 to 180
+     * @param maxLat
+     *            latitudes are clamped to +/- this value
+     * @return polygons
+     */
+    List<double[]> getPolygons(int band, double[] lons, double maxLat) {
+        List<double[]> polygons = new ArrayList<double[]>();
+        double[] range = new double[2];
+        // lon, lo, hi of each point in the current run
+        double[] run = new double[3 * (lons.length + 2)];
+        int n = 0;
+        boolean previous = false;
+        for (int i = 0; i < lons.length; i++) {
+            boolean covered = getLatitudeRange(band, lons[i], range);
+            if (covered && !previous && i > 0)
+                n = addEdge(band, lons[i - 1], lons[i], run, n);
+            if (covered) {
+                run[n++] = lons[i];
+                run[n++] = range[0];
+                run[n++] = range[1];
+            } else if (previous) {
+                n = addEdge(band, lons[i], lons[i - 1], run, n);
+                polygons.add(toPolygon(run, n, maxLat));
+                n = 0;
+            }
+            previous = covered;
+        }
+        if (n > 0)
+            polygons.add(toPolygon(run, n, maxLat));
+        return polygons;
+    }
+
+    /**
+     * Adds the point where the band starts or ends between a longitude
+     * outside the band and one inside it.
+     */
+    private int addEdge(int band, double outside, double inside, double[] run, int n) {
+        double[] range = new double[2];
+        double[] insideRange = new double[2];
+        getLatitudeRange(band, inside, insideRange);
+        for (int i = 0; i < EDGE_ITERATIONS; i++) {
+            double lon = (outside + inside) / 2;
+            if (getLatitudeRange(band, lon, range)) {
+                inside = lon;
+                insideRange[0] = range[0];
+                insideRange[1] = range[1];
+            } else
+                outside = lon;
+        }
+        double lat = (insideRange[0] + insideRange[1]) / 2;
+        run[n++] = inside;
+        run[n++] = lat;
+        run[n++] = lat;
+        return n;
+    }
+
+    private static double[] toPolygon(double[] run, int n, double maxLat) {
+        int points = n / 3;
+        // the run is in increasing longitude
+        double[] polygon = new double[4 * points];
+        for (int i = 0; i < points; i++) {
+            double lon = run[3 * i];
+            polygon[2 * i] = lon;
+            polygon[2 * i + 1] = clamp(run[3 * i + 2], maxLat);
+            polygon[4 * points - 2 * i - 2] = lon;
+            polygon[4 * points - 2 * i - 1] = clamp(run[3 * i + 1], maxLat);
+        }
+        return polygon;
+    }
+
+    private static double clamp(double lat, double maxLat) {
+        return Math.max(-maxLat, Math.min(maxLat, lat));
+    }
+
+    /**
+     * Sets <code>range</code> to the lowest and highest latitude in degrees
+     * of the band at the longitude and returns true, or returns false if the
+     * band does not cross the longitude.
+     *
+     * @param band
+     *            index into {@link #BANDS}
+     * @param lon
+     *            longitude in degrees
+     * @param range
+     *            receives the latitude range
+     * @return true if the band crosses the longitude
+     */
+    boolean getLatitudeRange(int band, double lon, double[] range) {
+        // a position is in the band if the cosine of its distance to the
+        // sub-solar point, a sin(lat) + b cos(lat) = r sin(lat + psi), is at
+        // most the cosine of the band distance
+        double a = sinDeclination;
+        double b = cosDeclination * Math.cos(Math.toRadians(lon - subSolarPoint.getLon()));
+        double r = Math.sqrt(a * a + b * b);
+        double c = cosBandDistances[band];
+        if (r < 1e-12) {
+            if (c < 0)
+                return false;
+            range[0] = -90;
+            range[1] = 90;
+            return true;
+        }
+        double k = c / r;
+        if (k <= -1)
+            return false;
+        else if (k >= 1) {
+            range[0] = -90;
+            range[1] = 90;
+            return true;
+        }
+        double psi = Math.toDegrees(Math.atan2(b, a));
+        double asin = Math.toDegrees(Math.asin(k));
+        // sin(theta) <= k for theta in [180 - asin, 360 + asin] modulo 360
+        // and theta = lat + psi. Clamping in latitude rather than theta keeps
+        // the poles exactly in range.
+        boolean found = false;
+        for (int shift = -360; shift <= 360; shift += 360) {
+            double from = Math.max(180 - asin + shift - psi, -90);
+            double to = Math.min(360 + asin + shift - psi, 90);
+            // ignore ranges that only touch the band
+            if (to - from > 1e-9) {
+                if (found) {
+                    range[0] = Math.min(range[0], from);
+                    range[1] = Math.max(range[1], to);
+                } else {
+                    range[0] = from;
+                    range[1] = to;
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.github.davidmoten.grumpy.wms.layer.darkness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.core.Position;
+
+public class TerminatorTest {
+
+    /**
+     * Positions closer than this in degrees to the edge of a band are not
+     * checked because the great circle distance and the analytic range round
+     * differently there.
+     */
+    private static final double EDGE_MARGIN_DEGREES = 0.01;
+
+    private static final double DECLINATION_AT_SOLSTICE = 23.44;
+
+    @Test
+    public void testLatitudeRangeMatchesTwilightAtEquinox() {
+        checkAgainstTwilight(new Position(0, 0));
+    }
+
+    @Test
+    public void testLatitudeRangeMatchesTwilightAtJuneSolstice() {
+        // polar day in the north and polar night in the south
+        checkAgainstTwilight(new Position(DECLINATION_AT_SOLSTICE, 45));
+    }
+
+    @Test
+    public void testLatitudeRangeMatchesTwilightAtDecemberSolstice() {
+        checkAgainstTwilight(new Position(-DECLINATION_AT_SOLSTICE, -120));
+    }
+
+    @Test
+    public void testLatitudeRangeMatchesTwilightWithSunOverAntimeridian() {
+        checkAgainstTwilight(new Position(DECLINATION_AT_SOLSTICE, 180));
+        checkAgainstTwilight(new Position(-10, -175));
+    }
+
+    @Test
+    public void testNightDoesNotReachPoleInPolarDay() {
+        Terminator terminator = new Terminator(new Position(DECLINATION_AT_SOLSTICE, 45));
+        double[] range = new double[2];
+        for (int band = 0; band < Terminator.BANDS.length; band++)
+            for (double lon = -180; lon <= 180; lon += 5)
+                if (terminator.getLatitudeRange(band, lon, range))
+                    assertTrue(range[1] < 90 - DECLINATION_AT_SOLSTICE + 1e-9);
+    }
+
+    @Test
+    public void testPolygonsCoverBandAtEquinox() {
+        Terminator terminator = new Terminator(new Position(0, 0));
+        double[] lons = new double[361];
+        for (int i = 0; i < lons.length; i++)
+            lons[i] = -180 + i;
+        // civil twilight and darker is the half of the world away from the
+        // sun, split by the antimeridian
+        assertEquals(2, terminator.getPolygons(0, lons, 85).size());
+    }
+
+    /**
+     * Checks on a grid of positions that a position is within the latitude
+     * range of a band exactly when {@link SunUtil#getTwilight(Position,
+     * Position)} puts it in that band or a darker one.
+     */
+    private static void checkAgainstTwilight(Position subSolarPoint) {
+        Terminator terminator = new Terminator(subSolarPoint);
+        double[] range = new double[2];
+        for (int band = 0; band < Terminator.BANDS.length; band++) {
+            double bandDistance = 90 + 6 * band;
+            for (double lon = -180; lon <= 180; lon += 5) {
+                boolean covered = terminator.getLatitudeRange(band, lon, range);
+                for (double lat = -90; lat <= 90; lat += 2.5) {
+                    Position p = new Position(lat, lon);
+                    double distance = Math.toDegrees(p.getDistanceToKm(subSolarPoint)
+                            / Position.EARTH_RADIUS_KM);
+                    if (Math.abs(distance - bandDistance) < EDGE_MARGIN_DEGREES)
+                        continue;
+                    boolean expected = SunUtil.getTwilight(subSolarPoint, p).compareTo(
+                            Terminator.BANDS[band]) <= 0;
+                    boolean actual = covered && lat >= range[0] && lat <= range[1];
+                    assertEquals("band=" + Terminator.BANDS[band] + ", sun=" + subSolarPoint
+                            + ", lat=" + lat + ", lon=" + lon, expected, actual);
+                }
+            }
+        }
+    }
+
+}
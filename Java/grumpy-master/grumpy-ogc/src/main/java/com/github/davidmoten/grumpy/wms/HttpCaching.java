@@ -0,0 +1,120 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The validators and lifetime of the image returned by a GetMap request whose
+ * layers all have a {@link LayerVersion}. The ETag is a hash of the request
+ * parameters and the versions of its layers so it changes whenever the image
+ * would.
+ */
+final class HttpCaching {
+
+    private final String etag;
+    private final long lastModified;
+    private final int maxAgeSeconds;
+
+    HttpCaching(String etag, long lastModified, int maxAgeSeconds) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Returns the caching for the request or null if any of its layers has no
+     * version.
+     * 
+     * @param request
+     * @param layers
+     * @return caching or null
+     */
+    static HttpCaching create(WmsRequest request, Layers layers) {
+        StringBuilder s = new StringBuilder(ImageCache.getKey(request));
+        long lastModified = 0;
+        int maxAgeSeconds = Integer.MAX_VALUE;
+        for (String name : request.getLayers()) {
+            Layer layer = layers.getLayer(name);
+            if (layer == null)
+                return null;
+            LayerFeatures features = layer.getFeatures();
+            if (features.getVersion() == null)
+                return null;
+            long modified = features.getVersion().getLastModified();
+            s.append(name).append("@").append(modified).append(";");
+            lastModified = Math.max(lastModified, modified);
+            maxAgeSeconds = Math.min(maxAgeSeconds, features.getMaxAgeSeconds());
+        }
+        if (maxAgeSeconds == Integer.MAX_VALUE)
+            return null;
+        return new HttpCaching("\"" + sha1(s.toString()) + "\"", lastModified, maxAgeSeconds);
+    }
+
+    String getETag() {
+        return etag;
+    }
+
+    void setHeaders(HttpServletResponse response) {
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (maxAgeSeconds > 0)
+            response.setHeader("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        else
+            response.setHeader("Cache-Control", "no-cache");
+    }
+
+    boolean isNotModified(HttpServletRequest request) {
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            ifModifiedSince = -1;
+        }
+        return isNotModified(request.getHeader("If-None-Match"), ifModifiedSince);
+    }
+
+    /**
+     * Returns true if the client's copy of the image is current.
+     * 
+     * @param ifNoneMatch
+     *            the If-None-Match header or null. Takes precedence over
+     *            <code>ifModifiedSince</code>.
+     * @param ifModifiedSince
+     *            the If-Modified-Since header in ms or -1
+     * @return true if a 304 response should be returned
+     */
+    boolean isNotModified(String ifNoneMatch, long ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // If-None-Match uses weak comparison
+                if (tag.startsWith("W/"))
+                    tag = tag.substring(2);
+                if (tag.equals(etag) || tag.equals("*"))
+                    return true;
+            }
+            return false;
+        } else
+            // http dates have a resolution of a second
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
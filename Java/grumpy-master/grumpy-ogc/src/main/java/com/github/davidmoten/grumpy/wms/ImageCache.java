@@ -1,59 +1,112 @@
 package com.github.davidmoten.grumpy.wms;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
 /**
  * Caches images keyed on the {@link WmsRequest}.
- * 
+ *
+ * <p>
+ * The cache is bounded by both the number of images and their total size in
+ * bytes. Eviction uses the CLOCK algorithm with a small hit count per image
+ * (an approximation of LRU that also favours frequently used images) so that
+ * {@link #get(WmsRequest)} and {@link #put(WmsRequest, byte[])} never take a
+ * lock shared by all requests. Cached images are indexed by layer name so
+ * {@link #clear(String)} only visits the images of that layer.
+ * </p>
+ *
+ * <p>
+ * Optionally images are also written to a directory (see
+ * {@link Builder#diskDirectory(File)}) that is reloaded on startup so a warm
+ * cache survives restarts. Images evicted from memory are read back from disk
+ * on demand.
+ * </p>
+ *
  * @author dxm
- * 
+ *
  */
 public class ImageCache {
 
     private static Logger log = LoggerFactory.getLogger(ImageCache.class);
 
-    private static int DEFAULT_SIZE = 250;// 50MB at 200K per image
+    private static final int DEFAULT_SIZE = 250;
+
+    private static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * The maximum hit count of an image. An image that has been hit this many
+     * times survives that many passes of the clock hand.
+     */
+    private static final int MAX_HITS = 3;
+
+    private final Set<String> layers = newConcurrentSet();
+
+    private final ConcurrentMap<String, CachedImage> cache = new ConcurrentHashMap<String, CachedImage>();
+
+    /**
+     * The keys of the cached images for each layer.
+     */
+    private final ConcurrentMap<String, Set<String>> layerKeys = new ConcurrentHashMap<String, Set<String>>();
 
     /**
-     * Records the keys and the order they went into the cache so we can trim
-     * the cache if needed.
+     * The clock. Images are added at the tail and the hand is the head. May
+     * contain images that have since been removed from the cache, which are
+     * counted by {@link #stale}.
      */
-    private volatile List<String> keys = new ArrayList<String>();
+    private final ConcurrentLinkedQueue<CachedImage> clock = new ConcurrentLinkedQueue<CachedImage>();
 
-    private volatile Set<String> layers = new HashSet<String>();
+    private final AtomicInteger count = new AtomicInteger();
 
-    private volatile Map<String, byte[]> cache = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicInteger stale = new AtomicInteger();
 
     private final int maxSize;
 
+    private final long maxBytes;
+
+    private final ImageCacheDisk disk;
+
     /**
-     * Constructor.
+     * Constructor. The cache holds at most 250 images and 50MB.
      */
     public ImageCache() {
-        this(DEFAULT_SIZE);
+        this(DEFAULT_SIZE, DEFAULT_MAX_BYTES, null);
     }
 
     /**
      * Constructor.
-     * 
+     *
      * @param size
      *            the maximum number of elements in the cache
      */
     public ImageCache(int size) {
+        this(size, Long.MAX_VALUE, null);
+    }
+
+    private ImageCache(int size, long maxBytes, ImageCacheDisk disk) {
         this.maxSize = size;
+        this.maxBytes = maxBytes;
+        this.disk = disk;
     }
 
     /**
      * Factory method. Returns a new {@link ImageCache} of given maximum size.
-     * 
+     *
      * @param size
      * @return
      */
@@ -61,64 +114,176 @@ public class ImageCache {
         return new ImageCache(size);
     }
 
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int maxSize = DEFAULT_SIZE;
+        private long maxBytes = DEFAULT_MAX_BYTES;
+        private File diskDirectory;
+        private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of images held in memory.
+         *
+         * @param maxSize
+         * @return this
+         */
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size in bytes of the images held in memory.
+         *
+         * @param maxBytes
+         * @return this
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the directory used to persist images. The directory is created
+         * if it does not exist and images already in it are available
+         * immediately.
+         *
+         * @param directory
+         * @return this
+         */
+        public Builder diskDirectory(File directory) {
+            this.diskDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size in bytes of the images held on disk.
+         *
+         * @param maxDiskBytes
+         * @return this
+         */
+        public Builder maxDiskBytes(long maxDiskBytes) {
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public ImageCache build() {
+            ImageCacheDisk disk;
+            if (diskDirectory != null)
+                disk = new ImageCacheDisk(diskDirectory, maxDiskBytes);
+            else
+                disk = null;
+            return new ImageCache(maxSize, maxBytes, disk);
+        }
+    }
+
     /**
      * Clears the cache for the given layer name.
-     * 
+     *
      * @param layerName
      */
-    // TOOD improve this
     public void clear(String layerName) {
-        synchronized (this) {
-            log.info("clearing cache for layer " + layerName);
-            for (String key : cache.keySet()) {
-                if (key.contains(layerName))
-                    remove(key);
-            }
-        }
+        log.info("clearing cache for layer " + layerName);
+        Set<String> keys = layerKeys.remove(layerName);
+        if (keys != null)
+            for (String key : keys)
+                remove(key);
+        if (disk != null)
+            disk.clear(layerName);
     }
 
     private void remove(String key) {
-        cache.remove(key);
-        log.info("removed cache entry " + key);
+        CachedImage image = cache.remove(key);
+        if (image != null) {
+            removed(image);
+            log.debug("removed cache entry " + key);
+        }
+    }
+
+    /**
+     * Updates the accounting for an image that has been removed from the
+     * cache map. Its clock entry is now stale.
+     */
+    private void removed(CachedImage image) {
+        count.decrementAndGet();
+        bytes.addAndGet(-image.bytes.length);
+        stale.incrementAndGet();
+        // the key may already be back with a newer image
+        if (!cache.containsKey(image.key))
+            for (String layer : image.layers) {
+                Set<String> keys = layerKeys.get(layer);
+                if (keys != null)
+                    keys.remove(image.key);
+            }
     }
 
     /**
      * Clears the cache.
      */
     public void clear() {
-        synchronized (this) {
-            cache.clear();
-        }
+        for (String key : cache.keySet())
+            remove(key);
+        if (disk != null)
+            disk.clear();
     }
 
     /**
      * Enables/disables a layer for caching.
-     * 
+     *
      * @param layerName
      *            name of the WMS layer
      * @param enabled
      *            is true if want to cache
      */
     public void setEnabled(String layerName, boolean enabled) {
-        synchronized (this) {
-            if (enabled)
-                layers.add(layerName);
-            else
-                layers.remove(layerName);
-        }
+        if (enabled)
+            layers.add(layerName);
+        else
+            layers.remove(layerName);
     }
 
-    private static String getKey(WmsRequest request) {
-        StringBuffer s = new StringBuffer();
+    static String getKey(WmsRequest request) {
+        StringBuilder s = new StringBuilder();
         for (String name : request.getParameterNames())
             // make sure we exclude the _OLSALT parameter which changes with
             // every request
-            if (!name.startsWith("_"))
-                add(s, name, request.getParam(name));
+            if (!name.startsWith("_")) {
+                if (name.equalsIgnoreCase("BBOX") && request.getBounds() != null)
+                    add(s, name, getKey(request.getBounds()));
+                else
+                    add(s, name, request.getParam(name));
+            }
         return s.toString();
     }
 
-    private static void add(StringBuffer s, String name, Object value) {
+    /**
+     * Returns the bounds rounded to about a millionth of their size so that
+     * the same tile has the same key whether its bounds came from the client
+     * or were calculated for a {@link Metatile}. The rounding unit is a power
+     * of two so it is the same for both.
+     */
+    private static String getKey(ProjectorBounds b) {
+        if (b.getSizeX() <= 0 || b.getSizeY() <= 0)
+            return b.getMinX() + "," + b.getMinY() + "," + b.getMaxX() + "," + b.getMaxY();
+        int exponentX = Math.getExponent(b.getSizeX() / 1000000);
+        int exponentY = Math.getExponent(b.getSizeY() / 1000000);
+        return exponentX + "," + exponentY + "," + round(b.getMinX(), exponentX) + ","
+                + round(b.getMinY(), exponentY) + "," + round(b.getMaxX(), exponentX) + ","
+                + round(b.getMaxY(), exponentY);
+    }
+
+    private static long round(double x, int exponent) {
+        return Math.round(Math.scalb(x, -exponent));
+    }
+
+    private static void add(StringBuilder s, String name, Object value) {
         s.append(name);
         s.append("=");
         s.append(String.valueOf(value));
@@ -128,45 +293,119 @@ public class ImageCache {
     /**
      * Get the bytes of the image returned by a {@link WmsRequest}. Returns null
      * if no corresponding image exists in the cache.
-     * 
+     *
      * @param request
      *            the WMS http request
      * @return bytes of the image
      */
     public byte[] get(WmsRequest request) {
-        synchronized (this) {
-            log.info("cache size=" + cache.size());
-            return cache.get(getKey(request));
-        }
+        String key = getKey(request);
+        CachedImage image = cache.get(key);
+        if (image != null) {
+            image.hit();
+            return image.bytes;
+        } else if (disk != null && isCacheable(request)) {
+            byte[] bytes = disk.get(key);
+            if (bytes != null) {
+                log.debug("loaded image from disk with key=" + key);
+                putInMemory(key, request.getLayers(), bytes);
+            }
+            return bytes;
+        } else
+            return null;
     }
 
     /**
      * Sets the cached image for the request.
-     * 
+     *
      * @param request
      *            the WMS http request
      * @param image
      *            bytes of the image
      */
-    public synchronized void put(WmsRequest request, byte[] image) {
-        synchronized (this) {
+    public void put(WmsRequest request, byte[] image) {
+        if (isCacheable(request)) {
             String key = getKey(request);
-            // make sure it's the last on the list of keys so won't be dropped
-            // from cache
-            keys.remove(key);
-            keys.add(key);
-            if (keys.size() > maxSize)
-                remove(keys.get(0));
-            if (maxSize > 0 && layers.containsAll(request.getLayers())) {
-                cache.put(key, image);
-                log.info("cached image with key=" + key);
+            putInMemory(key, request.getLayers(), image);
+            if (disk != null)
+                disk.put(key, request.getLayers(), image);
+            log.debug("cached image with key=" + key);
+        }
+    }
+
+    /**
+     * Returns true if and only if images for the request are cached.
+     *
+     * @param request
+     *            the WMS http request
+     * @return true if cached
+     */
+    boolean isCacheable(WmsRequest request) {
+        return maxSize > 0 && layers.containsAll(request.getLayers());
+    }
+
+    private void putInMemory(String key, List<String> imageLayers, byte[] bytes) {
+        if (bytes.length > maxBytes)
+            return;
+        CachedImage image = new CachedImage(key, imageLayers, bytes);
+        CachedImage previous = cache.put(key, image);
+        if (previous != null)
+            removed(previous);
+        for (String layer : imageLayers)
+            keysForLayer(layer).add(key);
+        count.incrementAndGet();
+        this.bytes.addAndGet(bytes.length);
+        clock.offer(image);
+        evict();
+    }
+
+    private Set<String> keysForLayer(String layer) {
+        Set<String> keys = layerKeys.get(layer);
+        if (keys == null) {
+            Set<String> created = newConcurrentSet();
+            keys = layerKeys.putIfAbsent(layer, created);
+            if (keys == null)
+                keys = created;
+        }
+        return keys;
+    }
+
+    /**
+     * Advances the clock hand until the cache is within its bounds and the
+     * clock is not mostly stale entries. Safe to run from several threads at
+     * once because each image can only be removed from the map once.
+     */
+    private void evict() {
+        // bounds the clean up of stale entries while other threads are adding
+        int cleanups = count.get() + stale.get();
+        while (true) {
+            boolean overBudget = count.get() > maxSize || bytes.get() > maxBytes;
+            if (!overBudget && (stale.get() <= count.get() || cleanups-- <= 0))
+                return;
+            CachedImage image = clock.poll();
+            if (image == null)
+                return;
+            if (cache.get(image.key) != image)
+                stale.decrementAndGet();
+            else if (!overBudget)
+                clock.offer(image);
+            else if (image.hits.get() > 0) {
+                image.hits.decrementAndGet();
+                clock.offer(image);
+            } else {
+                if (cache.remove(image.key, image)) {
+                    removed(image);
+                    log.debug("evicted cache entry " + image.key);
+                }
+                // either way the polled clock entry is no longer counted
+                stale.decrementAndGet();
             }
         }
     }
 
     /**
      * Flags the given layer as a layer to be cached.
-     * 
+     *
      * @param layerName
      *            is the name of the WMS layer
      * @return this
@@ -176,4 +415,45 @@ public class ImageCache {
         return this;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the number of images held in memory.
+     *
+     * @return number of images
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns the total size in bytes of the images held in memory.
+     *
+     * @return total bytes
+     */
+    public long sizeInBytes() {
+        return bytes.get();
+    }
+
+    private static Set<String> newConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    private static class CachedImage {
+        final String key;
+        final List<String> layers;
+        final byte[] bytes;
+        final AtomicInteger hits = new AtomicInteger();
+
+        CachedImage(String key, List<String> layers, byte[] bytes) {
+            this.key = key;
+            this.layers = layers;
+            this.bytes = bytes;
+        }
+
+        void hit() {
+            // racy but only needs to be approximate
+            if (hits.get() < MAX_HITS)
+                hits.incrementAndGet();
+        }
+    }
+
+}
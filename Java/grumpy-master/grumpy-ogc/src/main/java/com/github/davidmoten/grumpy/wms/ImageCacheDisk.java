@@ -0,0 +1,301 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The disk tier of an {@link ImageCache}. Each image is stored in its own file
+ * named by a hash of its cache key, holding the key, the layers of the image
+ * and the image bytes. Files are written to a temporary file and renamed so
+ * that a crash never leaves a partial image behind and are read back by memory
+ * mapping. The index is rebuilt from the directory on startup and the oldest
+ * files are deleted once their total size exceeds the maximum.
+ */
+final class ImageCacheDisk {
+
+    private static Logger log = LoggerFactory.getLogger(ImageCacheDisk.class);
+
+    private static final int MAGIC = 0x67724331;
+
+    private static final String SUFFIX = ".img";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private final ConcurrentMap<String, DiskImage> index = new ConcurrentHashMap<String, DiskImage>();
+
+    private final ConcurrentMap<String, Set<String>> layerKeys = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * Images in the order they were written. May contain images that have
+     * since been removed from the index, which are counted by {@link #stale}.
+     */
+    private final ConcurrentLinkedQueue<DiskImage> order = new ConcurrentLinkedQueue<DiskImage>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicInteger stale = new AtomicInteger();
+
+    ImageCacheDisk(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.mkdirs() && !directory.isDirectory())
+            throw new RuntimeException("could not create image cache directory " + directory);
+        load();
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX))
+                // left over from an interrupted write
+                delete(file);
+            else if (file.getName().endsWith(SUFFIX)) {
+                try {
+                    added(readHeader(file));
+                } catch (IOException e) {
+                    log.warn("deleting unreadable image cache file " + file + ": " + e.getMessage());
+                    delete(file);
+                }
+            }
+        }
+        log.info("loaded " + index.size() + " images (" + bytes.get() + " bytes) from "
+                + directory);
+        evict();
+    }
+
+    private static DiskImage readHeader(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not an image cache file");
+            String key = in.readUTF();
+            int numLayers = in.readInt();
+            List<String> layers = new ArrayList<String>(numLayers);
+            for (int i = 0; i < numLayers; i++)
+                layers.add(in.readUTF());
+            int length = in.readInt();
+            long offset = file.length() - length;
+            if (length < 0 || offset < 0)
+                throw new IOException("truncated image cache file");
+            return new DiskImage(key, layers, file, offset, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the image bytes for the key or null if not on disk.
+     */
+    byte[] get(String key) {
+        DiskImage image = index.get(key);
+        if (image == null)
+            return null;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(image.file, "r");
+            try {
+                byte[] result = new byte[image.length];
+                raf.getChannel().map(FileChannel.MapMode.READ_ONLY, image.offset, image.length)
+                        .get(result);
+                return result;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            log.warn("could not read image cache file " + image.file + ": " + e.getMessage());
+            remove(key, image);
+            return null;
+        }
+    }
+
+    void put(String key, List<String> layers, byte[] bytes) {
+        if (bytes.length > maxBytes)
+            return;
+        File file = new File(directory, fileName(key));
+        File temp = null;
+        try {
+            temp = File.createTempFile("image", TEMP_SUFFIX, directory);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                out.writeInt(layers.size());
+                for (String layer : layers)
+                    out.writeUTF(layer);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            long offset = temp.length() - bytes.length;
+            // renameTo won't replace an existing file on some platforms
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+                throw new IOException("could not rename " + temp + " to " + file);
+            temp = null;
+            added(new DiskImage(key, layers, file, offset, bytes.length));
+            evict();
+        } catch (IOException e) {
+            log.warn("could not write image cache file " + file + ": " + e.getMessage());
+        } finally {
+            if (temp != null)
+                delete(temp);
+        }
+    }
+
+    private void added(DiskImage image) {
+        DiskImage previous = index.put(image.key, image);
+        if (previous != null)
+            removed(previous);
+        for (String layer : image.layers)
+            keysForLayer(layer).add(image.key);
+        bytes.addAndGet(image.length);
+        order.offer(image);
+    }
+
+    private void removed(DiskImage image) {
+        bytes.addAndGet(-image.length);
+        stale.incrementAndGet();
+        if (!index.containsKey(image.key))
+            for (String layer : image.layers) {
+                Set<String> keys = layerKeys.get(layer);
+                if (keys != null)
+                    keys.remove(image.key);
+            }
+    }
+
+    private void remove(String key, DiskImage image) {
+        if (index.remove(key, image)) {
+            removed(image);
+            delete(image.file);
+        }
+    }
+
+    /**
+     * Deletes the oldest images while over the maximum size, then drops stale
+     * entries from {@link #order} in place so that live images keep their
+     * write order. Synchronized so only one thread removes from the queue.
+     */
+    private synchronized void evict() {
+        while (bytes.get() > maxBytes) {
+            DiskImage image = order.poll();
+            if (image == null)
+                return;
+            if (index.get(image.key) == image)
+                remove(image.key, image);
+            // the polled entry is no longer counted
+            stale.decrementAndGet();
+        }
+        if (stale.get() > index.size()) {
+            Iterator<DiskImage> it = order.iterator();
+            while (it.hasNext()) {
+                DiskImage image = it.next();
+                if (index.get(image.key) != image) {
+                    it.remove();
+                    stale.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    void clear(String layerName) {
+        Set<String> keys = layerKeys.remove(layerName);
+        if (keys != null)
+            for (String key : keys) {
+                DiskImage image = index.get(key);
+                if (image != null)
+                    remove(key, image);
+            }
+    }
+
+    void clear() {
+        for (DiskImage image : index.values())
+            remove(image.key, image);
+    }
+
+    private Set<String> keysForLayer(String layer) {
+        Set<String> keys = layerKeys.get(layer);
+        if (keys == null) {
+            Set<String> created = Collections
+                    .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            keys = layerKeys.putIfAbsent(layer, created);
+            if (keys == null)
+                keys = created;
+        }
+        return keys;
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder s = new StringBuilder();
+            for (byte b : digest)
+                s.append(String.format("%02x", b));
+            return s.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists())
+            log.warn("could not delete " + file);
+    }
+
+    private static class DiskImage {
+        final String key;
+        final List<String> layers;
+        final File file;
+        final long offset;
+        final int length;
+
+        DiskImage(String key, List<String> layers, File file, long offset, int length) {
+            this.key = key;
+            this.layers = layers;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
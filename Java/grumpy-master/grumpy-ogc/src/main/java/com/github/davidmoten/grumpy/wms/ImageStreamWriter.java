@@ -0,0 +1,26 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link ImageWriter} that can also write encoded images directly to any
+ * {@link OutputStream} such as the output stream of a servlet response.
+ */
+public interface ImageStreamWriter extends ImageWriter {
+
+    /**
+     * Writes encoded images to an {@link OutputStream}.
+     *
+     * @param image
+     *            to be written
+     * @param os
+     *            {@link OutputStream} to write to
+     * @param imageType
+     *            type of image as per formatName specification of
+     *            {@link javax.imageio.ImageIO#write(java.awt.image.RenderedImage, String, OutputStream)}
+     * @throws IOException
+     */
+    void writeImage(BufferedImage image, OutputStream os, String imageType) throws IOException;
+}
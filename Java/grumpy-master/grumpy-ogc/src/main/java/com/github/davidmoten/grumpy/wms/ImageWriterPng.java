@@ -0,0 +1,543 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Encodes PNG images without {@link ImageIO}. The image types
+ * <code>png8</code> and <code>png; mode=8bit</code> are encoded as paletted
+ * PNG8 images, reducing the colour depth if the image has more than 256
+ * colours. Other image types are written with {@link ImageIO}.
+ *
+ * <p>
+ * Each thread reuses its own {@link Deflater} and row buffers so encoding an
+ * image allocates very little. Unlike {@link ImageIO} the encoder can write
+ * straight to the output stream of a servlet response.
+ */
+public class ImageWriterPng implements ImageStreamWriter {
+
+    /**
+     * The PNG filter applied to each row of a true colour image before
+     * compression. Paletted images are not filtered.
+     */
+    public static enum Filter {
+        // the order of the first five is the PNG filter type
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /**
+         * Chooses the filter with the smallest sum of absolute differences
+         * for each row.
+         */
+        ADAPTIVE;
+    }
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int IHDR = 0x49484452;
+    private static final int PLTE = 0x504c5445;
+    private static final int TRNS = 0x74524e53;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454e44;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    /**
+     * Maximum size of an IDAT chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final int level;
+    private final int strategy;
+    private final Filter filter;
+
+    private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers(level, strategy);
+        }
+    };
+
+    /**
+     * Constructor using deflate level 4, the default deflate strategy and
+     * adaptive filtering.
+     */
+    public ImageWriterPng() {
+        this(builder());
+    }
+
+    private ImageWriterPng(Builder builder) {
+        this.level = builder.level;
+        this.strategy = builder.strategy;
+        this.filter = builder.filter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int level = 4;
+        private int strategy = Deflater.DEFAULT_STRATEGY;
+        private Filter filter = Filter.ADAPTIVE;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the deflate level.
+         *
+         * @param level
+         *            from {@link Deflater#BEST_SPEED} to
+         *            {@link Deflater#BEST_COMPRESSION}
+         * @return this
+         */
+        public Builder level(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Sets the deflate strategy.
+         *
+         * @param strategy
+         *            {@link Deflater#DEFAULT_STRATEGY},
+         *            {@link Deflater#FILTERED} or
+         *            {@link Deflater#HUFFMAN_ONLY}
+         * @return this
+         */
+        public Builder strategy(int strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        public Builder filter(Filter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public ImageWriterPng build() {
+            return new ImageWriterPng(this);
+        }
+    }
+
+    @Override
+    public void writeImage(BufferedImage image, ByteArrayOutputStream os, String imageType)
+            throws IOException {
+        writeImage(image, (OutputStream) os, imageType);
+    }
+
+    @Override
+    public void writeImage(BufferedImage image, OutputStream os, String imageType)
+            throws IOException {
+        if (isPng8(imageType))
+            new Encoder(buffers.get(), os).writePaletted(image);
+        else if (imageType.startsWith("png"))
+            new Encoder(buffers.get(), os).writeTrueColor(image, image.getColorModel()
+                    .hasAlpha(), filter);
+        else {
+            // write to memory first, see the note in WmsServletRequestProcessor
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(image, imageType, bytes);
+            bytes.writeTo(os);
+        }
+    }
+
+    private static boolean isPng8(String imageType) {
+        return imageType.equals("png8") || imageType.startsWith("png")
+                && imageType.replace(" ", "").contains("mode=8bit");
+    }
+
+    /**
+     * Reusable per thread state.
+     */
+    private static final class Buffers {
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] header = new byte[8];
+        final byte[] compressed = new byte[CHUNK_SIZE];
+        int[] pixels = new int[0];
+        byte[] row = new byte[0];
+        byte[] previous = new byte[0];
+        final byte[][] filtered = new byte[5][0];
+
+        Buffers(int level, int strategy) {
+            deflater = new Deflater(level);
+            deflater.setStrategy(strategy);
+        }
+
+        int[] pixels(int size) {
+            if (pixels.length < size)
+                pixels = new int[size];
+            return pixels;
+        }
+
+        /**
+         * Ensures the row buffers hold a filter type byte and
+         * <code>size</code> bytes.
+         */
+        void rows(int size) {
+            if (row.length < size + 1) {
+                row = new byte[size + 1];
+                previous = new byte[size + 1];
+                for (int i = 0; i < filtered.length; i++)
+                    filtered[i] = new byte[size + 1];
+            }
+        }
+    }
+
+    /**
+     * Encodes one image.
+     */
+    private static final class Encoder {
+
+        private final Buffers b;
+        private final OutputStream os;
+        private int compressedLength;
+
+        Encoder(Buffers buffers, OutputStream os) {
+            this.b = buffers;
+            this.os = os;
+        }
+
+        void writeTrueColor(BufferedImage image, boolean alpha, Filter filter)
+                throws IOException {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int bpp = alpha ? 4 : 3;
+            int rowBytes = width * bpp;
+            b.rows(rowBytes);
+            int[] pixels = b.pixels(width);
+            writeHeader(width, height, alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+            try {
+                Arrays.fill(b.previous, (byte) 0);
+                for (int y = 0; y < height; y++) {
+                    getRow(image, y, pixels);
+                    byte[] row = b.row;
+                    int j = 1;
+                    for (int x = 0; x < width; x++) {
+                        int p = pixels[x];
+                        row[j++] = (byte) (p >> 16);
+                        row[j++] = (byte) (p >> 8);
+                        row[j++] = (byte) p;
+                        if (alpha)
+                            row[j++] = (byte) (p >>> 24);
+                    }
+                    deflate(filter(filter, bpp, rowBytes), rowBytes + 1);
+                    b.row = b.previous;
+                    b.previous = row;
+                }
+                finish();
+            } finally {
+                b.deflater.reset();
+            }
+            writeChunk(IEND, b.compressed, 0, 0);
+        }
+
+        void writePaletted(BufferedImage image) throws IOException {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            // the rows are read once to build the palette and again to write
+            // them so only a row of pixels is buffered
+            int[] pixels = b.pixels(width);
+            Palette palette = Palette.create(image, pixels);
+            b.rows(width);
+            writeHeader(width, height, COLOR_TYPE_PALETTE);
+            writeChunk(PLTE, palette.rgb(), 0, palette.size() * 3);
+            byte[] alphas = palette.alphas();
+            if (alphas.length > 0)
+                writeChunk(TRNS, alphas, 0, alphas.length);
+            try {
+                byte[] row = b.row;
+                row[0] = (byte) Filter.NONE.ordinal();
+                for (int y = 0; y < height; y++) {
+                    getRow(image, y, pixels);
+                    for (int x = 0; x < width; x++)
+                        row[x + 1] = palette.index(pixels[x]);
+                    deflate(row, width + 1);
+                }
+                finish();
+            } finally {
+                b.deflater.reset();
+            }
+            writeChunk(IEND, b.compressed, 0, 0);
+        }
+
+        private static void getRow(BufferedImage image, int y, int[] pixels) {
+            int width = image.getWidth();
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                    || image.getType() == BufferedImage.TYPE_INT_RGB) {
+                // packed pixels can be copied without colour conversion
+                image.getRaster().getDataElements(0, y, width, 1, pixels);
+                if (image.getType() == BufferedImage.TYPE_INT_RGB)
+                    for (int x = 0; x < width; x++)
+                        pixels[x] |= 0xff000000;
+            } else
+                image.getRGB(0, y, width, 1, pixels, 0, width);
+        }
+
+        private void writeHeader(int width, int height, int colorType) throws IOException {
+            os.write(SIGNATURE);
+            byte[] data = new byte[13];
+            putInt(data, 0, width);
+            putInt(data, 4, height);
+            // bit depth
+            data[8] = 8;
+            data[9] = (byte) colorType;
+            // compression, filter and interlace methods
+            data[10] = 0;
+            data[11] = 0;
+            data[12] = 0;
+            writeChunk(IHDR, data, 0, data.length);
+        }
+
+        /**
+         * Returns the current row filtered, with the filter type in the first
+         * byte.
+         */
+        private byte[] filter(Filter filter, int bpp, int rowBytes) {
+            if (filter == Filter.ADAPTIVE) {
+                byte[] best = null;
+                long bestSum = Long.MAX_VALUE;
+                for (int type = 0; type < b.filtered.length; type++) {
+                    byte[] f = filter(type, bpp, rowBytes, b.filtered[type]);
+                    long sum = 0;
+                    for (int i = 1; i <= rowBytes && sum < bestSum; i++)
+                        sum += Math.abs(f[i]);
+                    if (sum < bestSum) {
+                        bestSum = sum;
+                        best = f;
+                    }
+                }
+                return best;
+            } else
+                return filter(filter.ordinal(), bpp, rowBytes, b.filtered[filter.ordinal()]);
+        }
+
+        private byte[] filter(int type, int bpp, int rowBytes, byte[] out) {
+            byte[] row = b.row;
+            byte[] up = b.previous;
+            out[0] = (byte) type;
+            for (int i = 1; i <= rowBytes; i++) {
+                int x = row[i] & 0xff;
+                int a = i > bpp ? row[i - bpp] & 0xff : 0;
+                int u = up[i] & 0xff;
+                int c = i > bpp ? up[i - bpp] & 0xff : 0;
+                switch (type) {
+                case 0:
+                    out[i] = (byte) x;
+                    break;
+                case 1:
+                    out[i] = (byte) (x - a);
+                    break;
+                case 2:
+                    out[i] = (byte) (x - u);
+                    break;
+                case 3:
+                    out[i] = (byte) (x - ((a + u) >>> 1));
+                    break;
+                default:
+                    out[i] = (byte) (x - paeth(a, u, c));
+                }
+            }
+            return out;
+        }
+
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc)
+                return a;
+            else if (pb <= pc)
+                return b;
+            else
+                return c;
+        }
+
+        private void deflate(byte[] data, int length) throws IOException {
+            Deflater deflater = b.deflater;
+            deflater.setInput(data, 0, length);
+            // the deflater keeps a reference to data so consume it all now
+            while (!deflater.needsInput())
+                deflateToChunk();
+        }
+
+        private void finish() throws IOException {
+            b.deflater.finish();
+            while (!b.deflater.finished())
+                deflateToChunk();
+            if (compressedLength > 0)
+                writeChunk(IDAT, b.compressed, 0, compressedLength);
+            compressedLength = 0;
+        }
+
+        private void deflateToChunk() throws IOException {
+            compressedLength += b.deflater.deflate(b.compressed, compressedLength,
+                    b.compressed.length - compressedLength);
+            if (compressedLength == b.compressed.length) {
+                writeChunk(IDAT, b.compressed, 0, compressedLength);
+                compressedLength = 0;
+            }
+        }
+
+        private void writeChunk(int type, byte[] data, int offset, int length)
+                throws IOException {
+            byte[] header = b.header;
+            putInt(header, 0, length);
+            putInt(header, 4, type);
+            os.write(header, 0, 8);
+            os.write(data, offset, length);
+            CRC32 crc = b.crc;
+            crc.reset();
+            crc.update(header, 4, 4);
+            crc.update(data, offset, length);
+            putInt(header, 0, (int) crc.getValue());
+            os.write(header, 0, 4);
+        }
+
+        private static void putInt(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) (value >>> 24);
+            bytes[offset + 1] = (byte) (value >>> 16);
+            bytes[offset + 2] = (byte) (value >>> 8);
+            bytes[offset + 3] = (byte) value;
+        }
+    }
+
+    /**
+     * A palette of at most 256 colours for a set of pixels. If there are more
+     * colours than that the low bits of each channel are dropped until there
+     * are not.
+     */
+    private static final class Palette {
+
+        private static final int TABLE_SIZE = 1024;
+
+        private final int mask;
+        private final int shift;
+        // open addressing hash table of masked colour to palette index
+        private final int[] keys = new int[TABLE_SIZE];
+        private final byte[] indexes = new byte[TABLE_SIZE];
+        private final boolean[] used = new boolean[TABLE_SIZE];
+        private final int[] colors = new int[MAX_PALETTE_SIZE];
+        private int size;
+
+        private Palette(int shift) {
+            this.shift = shift;
+            int m = (0xff << shift) & 0xff;
+            this.mask = m << 24 | m << 16 | m << 8 | m;
+        }
+
+        /**
+         * Returns the palette of the image, reading it a row at a time into
+         * <code>pixels</code>.
+         */
+        static Palette create(BufferedImage image, int[] pixels) {
+            // dropping 6 bits leaves 4 values per channel so 256 colours
+            for (int shift = 0;; shift++) {
+                Palette palette = new Palette(shift);
+                if (palette.addAll(image, pixels))
+                    return palette;
+            }
+        }
+
+        private boolean addAll(BufferedImage image, int[] pixels) {
+            int width = image.getWidth();
+            int previous = 0;
+            boolean first = true;
+            for (int y = 0; y < image.getHeight(); y++) {
+                Encoder.getRow(image, y, pixels);
+                for (int x = 0; x < width; x++) {
+                    int p = pixels[x];
+                    if (first || p != previous) {
+                        if (!add(p))
+                            return false;
+                        previous = p;
+                        first = false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean add(int color) {
+            int key = key(color);
+            int slot = slot(key);
+            if (!used[slot]) {
+                if (size == MAX_PALETTE_SIZE)
+                    return false;
+                used[slot] = true;
+                keys[slot] = key;
+                indexes[slot] = (byte) size;
+                colors[size++] = key;
+            }
+            return true;
+        }
+
+        private int key(int color) {
+            // all fully transparent pixels share one entry
+            if (color >>> 24 == 0)
+                return 0;
+            else
+                return color & mask;
+        }
+
+        private int slot(int key) {
+            int slot = (key * 0x9E3779B9 >>> 22) & (TABLE_SIZE - 1);
+            while (used[slot] && keys[slot] != key)
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            return slot;
+        }
+
+        byte index(int color) {
+            return indexes[slot(key(color))];
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] rgb() {
+            byte[] rgb = new byte[size * 3];
+            for (int i = 0; i < size; i++) {
+                int c = colors[i];
+                rgb[3 * i] = channel(c >> 16);
+                rgb[3 * i + 1] = channel(c >> 8);
+                rgb[3 * i + 2] = channel(c);
+            }
+            return rgb;
+        }
+
+        /**
+         * Returns the alpha of each palette entry up to the last entry that
+         * is not opaque.
+         */
+        byte[] alphas() {
+            int n = 0;
+            for (int i = 0; i < size; i++)
+                if (channel(colors[i] >>> 24) != (byte) 0xff)
+                    n = i + 1;
+            byte[] alphas = new byte[n];
+            for (int i = 0; i < n; i++)
+                alphas[i] = channel(colors[i] >>> 24);
+            return alphas;
+        }
+
+        /**
+         * Scales a masked channel value back to the range 0 to 255.
+         */
+        private byte channel(int value) {
+            int top = (value & 0xff) >> shift;
+            int max = 0xff >> shift;
+            return (byte) ((top * 255 + max / 2) / max);
+        }
+    }
+}
@@ -8,14 +8,41 @@ public class LayerFeatures {
     private final List<String> crs;
     private final String name;
     private final boolean queryable;
+    private final LayerVersion version;
+    private final int maxAgeSeconds;
 
-    private LayerFeatures(List<String> styles, List<String> crs, String name, boolean queryable) {
+    private LayerFeatures(List<String> styles, List<String> crs, String name,
+            boolean queryable, LayerVersion version, int maxAgeSeconds) {
         if (name == null)
             throw new NullPointerException("name cannot be null");
         this.styles = styles;
         this.crs = crs;
         this.name = name;
         this.queryable = queryable;
+        this.version = version;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Returns the version of the layer used to validate images that clients
+     * have cached, or null if images of the layer are never cached by
+     * clients.
+     * 
+     * @return version or null
+     */
+    public LayerVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns how long in seconds clients may use an image of the layer
+     * without checking it is still current. Only applies if the layer has a
+     * version.
+     * 
+     * @return max age in seconds
+     */
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
     }
 
     public boolean isQueryable() {
@@ -44,6 +71,8 @@ public class LayerFeatures {
         private List<String> styles = new ArrayList<String>();
         private List<String> crs = new ArrayList<String>();
         private boolean queryable = false;
+        private LayerVersion version;
+        private int maxAgeSeconds;
 
         private Builder() {
         }
@@ -78,8 +107,34 @@ public class LayerFeatures {
             return this;
         }
 
+        /**
+         * Lets clients cache images of the layer and revalidate them with
+         * conditional requests.
+         * 
+         * @param version
+         *            the version of the layer
+         * @return this
+         */
+        public Builder version(LayerVersion version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Sets how long in seconds clients may use an image of the layer
+         * without checking it is still current. Only applies if the layer has
+         * a version.
+         * 
+         * @param maxAgeSeconds
+         * @return this
+         */
+        public Builder maxAgeSeconds(int maxAgeSeconds) {
+            this.maxAgeSeconds = maxAgeSeconds;
+            return this;
+        }
+
         public LayerFeatures build() {
-            return new LayerFeatures(styles, crs, name, queryable);
+            return new LayerFeatures(styles, crs, name, queryable, version, maxAgeSeconds);
         }
 
         public Builder queryable() {
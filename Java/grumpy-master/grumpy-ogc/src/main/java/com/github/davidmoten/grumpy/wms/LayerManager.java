@@ -10,13 +10,19 @@ import java.awt.image.ImageObserver;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,28 +35,90 @@ class LayerManager {
 
     private final ExecutorService executor;
 
+    private final RenderLimits limits;
+
+    /**
+     * The last images rendered for layers keyed by layer name and request in
+     * least recently used order, drawn in place of layers that miss their
+     * deadline. Null if there are no deadlines. Guarded by itself.
+     */
+    private final LinkedHashMap<String, BufferedImage> fallbacks;
+
+    /**
+     * The total size in bytes of the pixels of the fallback images. Guarded by
+     * <code>fallbacks</code>.
+     */
+    private long fallbackBytes;
+
     private static final boolean DRAW_IN_PARALLEL = true;
 
     LayerManager(Layers layers) {
+        this(layers, RenderLimits.none());
+    }
+
+    LayerManager(Layers layers, RenderLimits limits) {
         this.layers = layers;
+        this.limits = limits;
         GraphicsEnvironment gEnv = GraphicsEnvironment.getLocalGraphicsEnvironment();
         for (String name : gEnv.getAvailableFontFamilyNames())
             log.debug(name);
         log.info("constructed");
-        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+        // a burst of requests is rejected rather than queueing without limit
+        executor = new ThreadPoolExecutor(limits.getThreads(), limits.getThreads(), 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        limits.getMaxQueuedLayers()), new ThreadPoolExecutor.AbortPolicy());
+        if (limits.hasDeadlines())
+            fallbacks = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+        else
+            fallbacks = null;
     }
 
-    BufferedImage getImage(WmsRequest request) {
+    /**
+     * Renders the layers of the request. The image is not complete if a layer
+     * missed its deadline or failed, in which case it should not be cached.
+     * 
+     * @param request
+     * @return the image and whether all its layers were drawn
+     */
+    MapImage getImage(WmsRequest request) {
         MyGraphics graphics = createGraphics(request);
         Graphics2D g = graphics.graphics;
 
         log.info("painting image with layers");
         // paint the image
-        paintImage(request, g);
+        boolean complete = paintImage(request, g);
         // release resources
         g.dispose();
         log.info("image finished");
-        return graphics.image;
+        return new MapImage(graphics.image, complete);
+    }
+
+    /**
+     * A rendered image and whether all of its layers were drawn in full.
+     */
+    static final class MapImage {
+
+        private final BufferedImage image;
+        private final boolean complete;
+
+        MapImage(BufferedImage image, boolean complete) {
+            this.image = image;
+            this.complete = complete;
+        }
+
+        BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * Returns false if a layer missed its deadline or failed so was left
+         * out or drawn from an earlier image.
+         * 
+         * @return true if every layer was drawn
+         */
+        boolean isComplete() {
+            return complete;
+        }
     }
 
     Map<String, String> getInfos(Date time, WmsRequest request, Point point, String mimeType) {
@@ -105,39 +173,50 @@ class LayerManager {
         return new MyGraphics(image, g);
     }
 
-    private void paintImage(final WmsRequest request, Graphics2D g) {
+    private boolean paintImage(final WmsRequest request, Graphics2D g) {
 
         log.info("painting layers " + request.getLayers());
 
         if (DRAW_IN_PARALLEL) {
-            paintImageParallel(request, g);
+            return paintImageParallel(request, g);
         } else {
             // using only a single g2d seems to help with IE8 png transparency
             // bug (fixed in IE9).
             for (final String layerName : request.getLayers()) {
                 paintLayer(g, layerName, layers, request);
             }
+            return true;
         }
     }
 
-    private void paintImageParallel(WmsRequest request, Graphics2D g) {
+    private boolean paintImageParallel(WmsRequest request, Graphics2D g) {
         // create future for each worker (layer)
         List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>();
 
-        for (final String layerName : request.getLayers()) {
-            // create a worker for layer
-            Callable<BufferedImage> worker = createWorker(layers, layerName, request);
-            // start the worker
-            Future<BufferedImage> submit = executor.submit(worker);
-            // record the worker in a list so we can paint the images in
-            // order later
-            futures.add(submit);
+        long start = System.currentTimeMillis();
+        try {
+            for (final String layerName : request.getLayers()) {
+                // create a worker for layer
+                Callable<BufferedImage> worker = createWorker(layers, layerName, request);
+                // start the worker
+                Future<BufferedImage> submit = executor.submit(worker);
+                // record the worker in a list so we can paint the images in
+                // order later
+                futures.add(submit);
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("too many layers queued, rejecting request for " + request.getLayers());
+            for (Future<BufferedImage> future : futures)
+                future.cancel(true);
+            throw e;
         }
         // wait for each image to complete in turn then draw it to the
         // everything graphics object
-        for (Future<BufferedImage> future : futures) {
-            drawImage(g, future);
+        boolean complete = true;
+        for (int i = 0; i < futures.size(); i++) {
+            complete &= drawImage(g, request, request.getLayers().get(i), futures.get(i), start);
         }
+        return complete;
     }
 
     private Callable<BufferedImage> createWorker(final Layers layers, final String layerName,
@@ -148,6 +227,11 @@ class LayerManager {
                 try {
                     final MyGraphics graphics = createGraphics(request);
                     paintLayer(graphics.graphics, layerName, layers, request);
+                    graphics.graphics.dispose();
+                    // a render that missed its deadline still completes so
+                    // the next request can use its image
+                    if (fallbacks != null)
+                        putFallback(getFallbackKey(layerName, request), graphics.image);
                     return graphics.image;
                 } catch (Exception e) {
                     log.error(e.getMessage(), e);
@@ -170,17 +254,91 @@ class LayerManager {
             log.warn("no paintImage implementation for layer: " + layerName);
     }
 
-    private void drawImage(Graphics2D g, Future<BufferedImage> future) {
+    /**
+     * Draws the image of the layer once it has rendered and returns true, or
+     * returns false if the layer failed or missed its deadline.
+     */
+    private boolean drawImage(Graphics2D g, WmsRequest request, String layerName,
+            Future<BufferedImage> future, long start) {
         try {
-            BufferedImage image = future.get();
+            long remainingMs = getRemainingMs(layerName, start);
+            final BufferedImage image;
+            if (remainingMs < 0)
+                image = future.get();
+            else
+                image = future.get(remainingMs, TimeUnit.MILLISECONDS);
             g.drawImage(image, 0, 0, noActionImageObserver);
+            return true;
         } catch (InterruptedException e) {
             log.warn(e.getMessage(), e);
+            return false;
         } catch (ExecutionException e) {
             log.error(e.getMessage(), e);
+            return false;
+        } catch (TimeoutException e) {
+            BufferedImage image;
+            synchronized (fallbacks) {
+                image = fallbacks.get(getFallbackKey(layerName, request));
+            }
+            if (image != null) {
+                log.warn("layer " + layerName + " missed its deadline, drawing its last image");
+                g.drawImage(image, 0, 0, noActionImageObserver);
+            } else
+                log.warn("layer " + layerName + " missed its deadline, skipping it");
+            return false;
         }
     }
 
+    /**
+     * Returns the time left in ms until the deadline of the layer or -1 if it
+     * has no deadline.
+     */
+    private long getRemainingMs(String layerName, long start) {
+        long deadline = Long.MAX_VALUE;
+        long layerTimeoutMs = limits.getLayerTimeoutMs(layerName);
+        if (layerTimeoutMs > 0)
+            deadline = start + layerTimeoutMs;
+        if (limits.getRequestTimeoutMs() > 0)
+            deadline = Math.min(deadline, start + limits.getRequestTimeoutMs());
+        if (deadline == Long.MAX_VALUE)
+            return -1;
+        else
+            return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Keeps the image to draw in place of the layer if it misses its deadline,
+     * evicting the least recently used images until both the number of images
+     * and the bytes of their pixels are within the limits.
+     */
+    private void putFallback(String key, BufferedImage image) {
+        long bytes = getBytes(image);
+        synchronized (fallbacks) {
+            BufferedImage previous = fallbacks.remove(key);
+            if (previous != null)
+                fallbackBytes -= getBytes(previous);
+            if (bytes > limits.getFallbackBytes())
+                return;
+            fallbacks.put(key, image);
+            fallbackBytes += bytes;
+            Iterator<BufferedImage> it = fallbacks.values().iterator();
+            while (fallbacks.size() > limits.getFallbackImages()
+                    || fallbackBytes > limits.getFallbackBytes()) {
+                fallbackBytes -= getBytes(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static long getBytes(BufferedImage image) {
+        // the images are TYPE_INT_ARGB
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private static String getFallbackKey(String layerName, WmsRequest request) {
+        return layerName + ":" + ImageCache.getKey(request);
+    }
+
     private void paintBackground(WmsRequest request, Graphics2D g) {
         g.setColor(request.getBackgroundColor());
         g.setBackground(request.getBackgroundColor());
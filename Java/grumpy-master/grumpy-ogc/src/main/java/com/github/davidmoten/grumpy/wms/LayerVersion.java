@@ -0,0 +1,18 @@
+package com.github.davidmoten.grumpy.wms;
+
+/**
+ * Identifies the state of a layer's data so clients can reuse images they
+ * already have. A layer renders the same image for the same request until
+ * its version changes. A layer cached by {@link ImageCache} should also clear
+ * the cache when its version changes.
+ */
+public interface LayerVersion {
+
+    /**
+     * Returns the time in ms since the epoch that the layer last changed.
+     * 
+     * @return last modified time in ms
+     */
+    long getLastModified();
+
+}
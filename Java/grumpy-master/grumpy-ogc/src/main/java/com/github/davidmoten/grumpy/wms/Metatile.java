@@ -0,0 +1,200 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.awt.image.BufferedImage;
+
+import com.github.davidmoten.grumpy.projection.FeatureUtil;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
+/**
+ * A block of n x n grid-aligned tiles containing a requested tile. Tiled WMS
+ * clients request tiles whose bounds are whole multiples of the tile size in
+ * both directions so the grid position of a tile can be recovered from its
+ * bounds. Rendering the metatile once and slicing it into tiles saves
+ * rendering each of the neighbouring tiles separately and avoids seams where
+ * labels and edge effects cross tile boundaries.
+ */
+final class Metatile {
+
+    /**
+     * The maximum width or height in pixels of a metatile image.
+     */
+    private static final int MAX_PIXELS = 4096;
+
+    /**
+     * How close the bounds divided by the tile size must be to a whole number
+     * for the tile to be considered grid aligned.
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    /**
+     * Half the width of the spherical mercator world in metres.
+     */
+    private static final double MERCATOR_EXTENT = 20037508.342789244;
+
+    private final WmsRequest request;
+    private final int n;
+    private final long minColumn;
+    private final long minRow;
+    private final int column;
+    private final int row;
+
+    private Metatile(WmsRequest request, int n, long minColumn, long minRow, int column, int row) {
+        this.request = request;
+        this.n = n;
+        this.minColumn = minColumn;
+        this.minRow = minRow;
+        this.column = column;
+        this.row = row;
+    }
+
+    /**
+     * Returns the n x n metatile containing the tile of the request or null if
+     * the request is not for a grid-aligned tile or the metatile would be too
+     * large. For a CRS with a known extent the block is moved to lie within
+     * the tiles of the extent, and there is no metatile if the extent is less
+     * than n tiles across.
+     *
+     * @param request
+     *            the WMS request for a single tile
+     * @param n
+     *            the number of tiles along each side of the metatile
+     * @return the metatile or null
+     */
+    static Metatile create(WmsRequest request, int n) {
+        ProjectorBounds b = request.getBounds();
+        if (n < 2 || b == null || b.getSizeX() <= 0 || b.getSizeY() <= 0)
+            return null;
+        if ((long) request.getWidth() * n > MAX_PIXELS
+                || (long) request.getHeight() * n > MAX_PIXELS)
+            return null;
+        double x = b.getMinX() / b.getSizeX();
+        double y = b.getMinY() / b.getSizeY();
+        if (!isWhole(x) || !isWhole(y))
+            return null;
+        long tileColumn = Math.round(x);
+        long tileRow = Math.round(y);
+        long minColumn = floorDiv(tileColumn, n) * n;
+        long minRow = floorDiv(tileRow, n) * n;
+        double[] extent = getExtent(b.getSrs());
+        if (extent != null) {
+            minColumn = clamp(minColumn, extent[0], extent[2], b.getSizeX(), n);
+            minRow = clamp(minRow, extent[1], extent[3], b.getSizeY(), n);
+            if (minColumn == Long.MIN_VALUE || minRow == Long.MIN_VALUE)
+                return null;
+        }
+        return new Metatile(request, n, minColumn, minRow, (int) (tileColumn - minColumn),
+                (int) (tileRow - minRow));
+    }
+
+    /**
+     * Returns the minX, minY, maxX, maxY of the CRS or null if not known.
+     */
+    private static double[] getExtent(String srs) {
+        if (FeatureUtil.EPSG_4326.equals(srs))
+            return new double[] { -180, -90, 180, 90 };
+        else if (FeatureUtil.EPSG_3857.equals(srs) || FeatureUtil.EPSG_900913.equals(srs)
+                || FeatureUtil.EPSG_102100.equals(srs))
+            return new double[] { -MERCATOR_EXTENT, -MERCATOR_EXTENT, MERCATOR_EXTENT,
+                    MERCATOR_EXTENT };
+        else
+            return null;
+    }
+
+    /**
+     * Returns the first of n tiles of the given size moved to lie within the
+     * tiles between min and max, or Long.MIN_VALUE if there are fewer than n
+     * of them.
+     */
+    private static long clamp(long first, double min, double max, double size, int n) {
+        // tiles that only partly overlap the extent are still valid
+        long from = (long) Math.floor(min / size + TOLERANCE);
+        long to = (long) Math.ceil(max / size - TOLERANCE);
+        if (to - from < n)
+            return Long.MIN_VALUE;
+        else
+            return Math.max(from, Math.min(first, to - n));
+    }
+
+    private static boolean isWhole(double x) {
+        return Math.abs(x - Math.rint(x)) < TOLERANCE;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if (x % y != 0 && (x < 0) != (y < 0))
+            q--;
+        return q;
+    }
+
+    /**
+     * Returns the number of tiles along each side.
+     *
+     * @return n
+     */
+    int size() {
+        return n;
+    }
+
+    /**
+     * Returns the request for the whole metatile image.
+     *
+     * @return request for the metatile
+     */
+    WmsRequest getRequest() {
+        return request.modifyBounds(bounds(0, 0, n)).modifySize(request.getWidth() * n,
+                request.getHeight() * n);
+    }
+
+    /**
+     * Returns the request for the tile at the given column and row of the
+     * metatile. Column 0 is the west-most and row 0 the south-most.
+     *
+     * @param column
+     * @param row
+     * @return request for the tile
+     */
+    WmsRequest getTileRequest(int column, int row) {
+        if (isRequestedTile(column, row))
+            return request;
+        else
+            return request.modifyBounds(bounds(column, row, 1));
+    }
+
+    /**
+     * Returns true if and only if the tile at the given column and row is the
+     * tile of the original request.
+     *
+     * @param column
+     * @param row
+     * @return true if requested tile
+     */
+    boolean isRequestedTile(int column, int row) {
+        return column == this.column && row == this.row;
+    }
+
+    /**
+     * Returns the tile at the given column and row of the metatile image. The
+     * returned image shares its data with the metatile image.
+     *
+     * @param image
+     *            the rendered metatile image
+     * @param column
+     * @param row
+     * @return the tile image
+     */
+    BufferedImage slice(BufferedImage image, int column, int row) {
+        int w = request.getWidth();
+        int h = request.getHeight();
+        // image rows go down while grid rows go up
+        return image.getSubimage(column * w, (n - 1 - row) * h, w, h);
+    }
+
+    private ProjectorBounds bounds(int column, int row, int tiles) {
+        ProjectorBounds b = request.getBounds();
+        double minX = (minColumn + column) * b.getSizeX();
+        double minY = (minRow + row) * b.getSizeY();
+        return new ProjectorBounds(b.getSrs(), minX, minY, minX + tiles * b.getSizeX(), minY
+                + tiles * b.getSizeY());
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits on the time and work spent rendering the layers of GetMap requests.
+ * A layer that has not finished rendering by its deadline is drawn from the
+ * last image rendered for the same layer and request parameters if there is
+ * one, otherwise it is left out of the image.
+ */
+public class RenderLimits {
+
+    private final long requestTimeoutMs;
+    private final long layerTimeoutMs;
+    private final Map<String, Long> layerTimeoutsMs;
+    private final int threads;
+    private final int maxQueuedLayers;
+    private final int fallbackImages;
+    private final long fallbackBytes;
+
+    private RenderLimits(Builder builder) {
+        this.requestTimeoutMs = builder.requestTimeoutMs;
+        this.layerTimeoutMs = builder.layerTimeoutMs;
+        this.layerTimeoutsMs = new HashMap<String, Long>(builder.layerTimeoutsMs);
+        this.threads = builder.threads;
+        this.maxQueuedLayers = builder.maxQueuedLayers;
+        this.fallbackImages = builder.fallbackImages;
+        this.fallbackBytes = builder.fallbackBytes;
+    }
+
+    /**
+     * Returns limits with no deadlines.
+     *
+     * @return limits
+     */
+    public static RenderLimits none() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the time in ms after the layers of a request are submitted that
+     * the image is returned with whichever layers have finished. 0 if there is
+     * no limit.
+     *
+     * @return timeout in ms
+     */
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    /**
+     * Returns the time in ms the given layer has to render. 0 if there is no
+     * limit.
+     *
+     * @param layerName
+     * @return timeout in ms
+     */
+    public long getLayerTimeoutMs(String layerName) {
+        Long timeout = layerTimeoutsMs.get(layerName);
+        if (timeout == null)
+            return layerTimeoutMs;
+        else
+            return timeout;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxQueuedLayers() {
+        return maxQueuedLayers;
+    }
+
+    public int getFallbackImages() {
+        return fallbackImages;
+    }
+
+    public long getFallbackBytes() {
+        return fallbackBytes;
+    }
+
+    boolean hasDeadlines() {
+        if (requestTimeoutMs > 0 || layerTimeoutMs > 0)
+            return true;
+        for (long timeout : layerTimeoutsMs.values())
+            if (timeout > 0)
+                return true;
+        return false;
+    }
+
+    public static class Builder {
+
+        private long requestTimeoutMs;
+        private long layerTimeoutMs;
+        private final Map<String, Long> layerTimeoutsMs = new HashMap<String, Long>();
+        private int threads = Runtime.getRuntime().availableProcessors() + 1;
+        private int maxQueuedLayers = 1000;
+        private int fallbackImages = 32;
+        private long fallbackBytes = 32L * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the time in ms after the layers of a request are submitted
+         * that the image is returned with whichever layers have finished.
+         *
+         * @param timeoutMs
+         *            0 for no limit
+         * @return this
+         */
+        public Builder requestTimeoutMs(long timeoutMs) {
+            this.requestTimeoutMs = timeoutMs;
+            return this;
+        }
+
+        /**
+         * Sets the time in ms each layer without its own timeout has to
+         * render.
+         *
+         * @param timeoutMs
+         *            0 for no limit
+         * @return this
+         */
+        public Builder layerTimeoutMs(long timeoutMs) {
+            this.layerTimeoutMs = timeoutMs;
+            return this;
+        }
+
+        /**
+         * Sets the time in ms the given layer has to render.
+         *
+         * @param layerName
+         * @param timeoutMs
+         *            0 for no limit
+         * @return this
+         */
+        public Builder layerTimeoutMs(String layerName, long timeoutMs) {
+            this.layerTimeoutsMs.put(layerName, timeoutMs);
+            return this;
+        }
+
+        /**
+         * Sets the number of threads rendering layers.
+         *
+         * @param threads
+         * @return this
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of layer renders that can wait for a thread. A
+         * request with a layer that does not fit is rejected.
+         *
+         * @param maxQueuedLayers
+         * @return this
+         */
+        public Builder maxQueuedLayers(int maxQueuedLayers) {
+            this.maxQueuedLayers = maxQueuedLayers;
+            return this;
+        }
+
+        /**
+         * Sets the number of recently rendered layer images kept to draw in
+         * place of layers that miss their deadline. Images are only kept when
+         * there are deadlines.
+         *
+         * @param fallbackImages
+         * @return this
+         */
+        public Builder fallbackImages(int fallbackImages) {
+            this.fallbackImages = fallbackImages;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size in bytes of the pixels of the images
+         * kept to draw in place of layers that miss their deadline. Each
+         * pixel takes 4 bytes.
+         *
+         * @param fallbackBytes
+         * @return this
+         */
+        public Builder fallbackBytes(long fallbackBytes) {
+            this.fallbackBytes = fallbackBytes;
+            return this;
+        }
+
+        public RenderLimits build() {
+            return new RenderLimits(this);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.davidmoten.grumpy.wms;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent calls with the same key. The first caller for a key
+ * runs its {@link Callable} on its own thread and callers with the same key
+ * that arrive before it finishes wait for and share its result. A successful
+ * result is also shared with callers that arrive up to <code>windowMs</code>
+ * after it finished, which suits images of dynamic layers that are not cached
+ * but can be a little stale. Override {@link #isShareable(Object)} to keep
+ * results such as partly rendered images out of the window.
+ *
+ * @param <T>
+ *            the result type
+ */
+class SingleFlight<T> {
+
+    private static Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final long windowMs;
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * Finished flights still within the window, in the order they finished
+     * which is also the order they expire.
+     */
+    private final ConcurrentLinkedQueue<Flight> finished = new ConcurrentLinkedQueue<Flight>();
+
+    /**
+     * Constructor.
+     *
+     * @param windowMs
+     *            how long in ms a result is shared after it was calculated. 0
+     *            only shares results with callers that arrive while it is
+     *            being calculated.
+     */
+    SingleFlight(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Returns the result of the flight for the key, running
+     * <code>callable</code> on the current thread if there is no such flight.
+     *
+     * @param key
+     *            identifies identical calls
+     * @param callable
+     *            calculates the result
+     * @return the result
+     * @throws IOException
+     *             if the callable threw an {@link IOException}
+     */
+    T get(String key, Callable<T> callable) throws IOException {
+        purge();
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight != null && !flight.isExpired()) {
+                log.debug("joining flight for key=" + key);
+                return flight.await();
+            }
+            Flight created = new Flight(key, callable);
+            boolean started;
+            if (flight == null)
+                started = flights.putIfAbsent(key, created) == null;
+            else
+                started = flights.replace(key, flight, created);
+            if (started) {
+                created.task.run();
+                finished(created);
+                return created.await();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of flights in progress or within their window.
+     *
+     * @return number of flights
+     */
+    int size() {
+        return flights.size();
+    }
+
+    /**
+     * Returns true if the result can be shared with callers that arrive after
+     * it was calculated. Callers that were already waiting for it always get
+     * it.
+     *
+     * @param result
+     * @return true if the result is shared within the window
+     */
+    protected boolean isShareable(T result) {
+        return true;
+    }
+
+    private void finished(Flight flight) {
+        if (windowMs <= 0 || flight.failed() || !isShareable(flight.result()))
+            flights.remove(flight.key, flight);
+        else {
+            flight.finishedAt = System.currentTimeMillis();
+            finished.offer(flight);
+        }
+    }
+
+    private void purge() {
+        while (true) {
+            Flight flight = finished.peek();
+            if (flight == null || !flight.isExpired())
+                return;
+            if (finished.remove(flight))
+                flights.remove(flight.key, flight);
+        }
+    }
+
+    private final class Flight {
+        final String key;
+        final FutureTask<T> task;
+        volatile long finishedAt;
+
+        Flight(String key, Callable<T> callable) {
+            this.key = key;
+            this.task = new FutureTask<T>(callable);
+        }
+
+        boolean isExpired() {
+            return finishedAt != 0 && System.currentTimeMillis() - finishedAt >= windowMs;
+        }
+
+        boolean failed() {
+            try {
+                task.get();
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (ExecutionException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Returns the result of a flight that has finished without failing.
+         */
+        T result() {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        T await() throws IOException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                else if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                else if (cause instanceof Error)
+                    throw (Error) cause;
+                else
+                    throw new RuntimeException(cause);
+            }
+        }
+    }
+
+}
@@ -1,16 +1,18 @@
 package com.github.davidmoten.grumpy.wms;
 
 import java.awt.Point;
-import java.awt.image.BufferedImage;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -35,10 +37,34 @@ public class WmsServletRequestProcessor {
 
     private final ImageCache imageCache;
 
+    private final Layers layers;
+
     private final LayerManager layerManager;
 
     private final ImageWriter imageWriter;
 
+    private final int metatileSize;
+
+    private final boolean streamUncached;
+
+    /**
+     * Renders of images for cached layers in progress.
+     */
+    private final SingleFlight<EncodedImage> renders = new SingleFlight<EncodedImage>(0);
+
+    /**
+     * Renders of metatiles in progress. The result maps the cache key of each
+     * tile encoded to its image.
+     */
+    private final SingleFlight<Map<String, EncodedImage>> metatileRenders = new SingleFlight<Map<String, EncodedImage>>(
+            0);
+
+    /**
+     * Recent renders of images for layers that are not cached. Images missing
+     * a layer are not shared after they are rendered.
+     */
+    private final SingleFlight<EncodedImage> uncachedRenders;
+
     /**
      * Constructor.
      * 
@@ -49,10 +75,26 @@ public class WmsServletRequestProcessor {
      */
     public WmsServletRequestProcessor(CapabilitiesProvider capabilitiesProvider,
             Layers layers, ImageCache imageCache, ImageWriter imageWriter) {
+        this(capabilitiesProvider, layers, imageCache, imageWriter, 1, 0, false, RenderLimits
+                .none());
+    }
+
+    private WmsServletRequestProcessor(CapabilitiesProvider capabilitiesProvider,
+            Layers layers, ImageCache imageCache, ImageWriter imageWriter, int metatileSize,
+            long coalesceWindowMs, boolean streamUncached, RenderLimits renderLimits) {
         this.capabilitiesProvider = capabilitiesProvider;
         this.imageCache = imageCache;
         this.imageWriter = imageWriter;
-        this.layerManager = new LayerManager(layers);
+        this.metatileSize = metatileSize;
+        this.uncachedRenders = new SingleFlight<EncodedImage>(coalesceWindowMs) {
+            @Override
+            protected boolean isShareable(EncodedImage image) {
+                return image.complete;
+            }
+        };
+        this.streamUncached = streamUncached && imageWriter instanceof ImageStreamWriter;
+        this.layers = layers;
+        this.layerManager = new LayerManager(layers, renderLimits);
     }
 
     public static Builder builder() {
@@ -68,6 +110,10 @@ public class WmsServletRequestProcessor {
         private final List<String> layersToCache = new ArrayList<String>();
         private ImageWriter imageWriter = new ImageWriterDefault();
         private Integer imageCacheSize;
+        private int metatileSize = 1;
+        private long coalesceWindowMs;
+        private boolean streamUncached;
+        private RenderLimits renderLimits = RenderLimits.none();
 
         private Builder() {
         }
@@ -93,6 +139,70 @@ public class WmsServletRequestProcessor {
             return this;
         }
 
+        public Builder imageCache(ImageCache imageCache) {
+            this.imageCache = imageCache;
+            this.imageCacheSize = null;
+            return this;
+        }
+
+        /**
+         * Renders requests for grid-aligned tiles of cached layers as blocks
+         * of n x n tiles. All the tiles of the block are cached so the
+         * neighbouring tiles requested by a tiled client are not rendered
+         * again.
+         * 
+         * @param n
+         *            the number of tiles along each side of a metatile
+         * @return this
+         */
+        public Builder metatile(int n) {
+            this.metatileSize = n;
+            return this;
+        }
+
+        /**
+         * Concurrent identical requests are rendered once. This also shares
+         * an image of layers that are not cached with identical requests that
+         * arrive up to the given time after it was rendered.
+         * 
+         * @param windowMs
+         *            time in ms to share an image after it was rendered
+         * @return this
+         */
+        public Builder coalesceWindowMs(long windowMs) {
+            this.coalesceWindowMs = windowMs;
+            return this;
+        }
+
+        /**
+         * Encodes images for layers that are not cached straight to the
+         * response, without copying them into a byte array first. Identical
+         * requests for these layers are then not coalesced. Only has an
+         * effect if the image writer is an {@link ImageStreamWriter} such as
+         * {@link ImageWriterPng}.
+         * 
+         * @param stream
+         *            whether to stream images of layers that are not cached
+         * @return this
+         */
+        public Builder streamUncached(boolean stream) {
+            this.streamUncached = stream;
+            return this;
+        }
+
+        /**
+         * Sets deadlines for rendering layers and the size of the queue of
+         * layers waiting to render. A request that would overflow the queue
+         * gets a 503 response.
+         * 
+         * @param renderLimits
+         * @return this
+         */
+        public Builder renderLimits(RenderLimits renderLimits) {
+            this.renderLimits = renderLimits;
+            return this;
+        }
+
         public Builder addCachedLayer(String name, Layer layer) {
             return addLayer(name, layer, true);
         }
@@ -126,7 +236,8 @@ public class WmsServletRequestProcessor {
             if (layers == null)
                 layers = layersBuilder.build();
             return new WmsServletRequestProcessor(capabilitiesProvider, layers, imageCache,
-                    imageWriter);
+                    imageWriter, metatileSize, coalesceWindowMs, streamUncached,
+                    renderLimits);
         }
     }
 
@@ -137,7 +248,9 @@ public class WmsServletRequestProcessor {
             log.info("httpGetUrl=" + request.getRequestURL() + "?" + request.getQueryString());
             log.info("requestedByIP = ip " + request.getRemoteAddr());
             String req = request.getParameter(PARAMETER_REQUEST);
-            setNoCacheParameters(response);
+            // GetMap responses are cacheable if their layers have versions
+            if (!REQUEST_GET_MAP.equals(req))
+                setNoCacheParameters(response);
             if (REQUEST_GET_CAPABILITIES.equals(req)) {
                 writeCapabilities(request, response);
             } else if (REQUEST_GET_MAP.equals(req)) {
@@ -151,11 +264,18 @@ public class WmsServletRequestProcessor {
             response.getOutputStream().flush();
         } catch (UnknownParameterException e) {
             log.warn(e.getMessage());
+            resetForError(response);
             throw new ServletException(e);
         } catch (MissingMandatoryParameterException e) {
             log.warn(e.getMessage(), e);
+            resetForError(response);
             throw new ServletException(e);
+        } catch (RejectedExecutionException e) {
+            resetForError(response);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "too many layers waiting to render");
         } catch (Exception e) {
+            resetForError(response);
             handleException(e);
         } finally {
             log.info("requestTimeSeconds="
@@ -164,6 +284,17 @@ public class WmsServletRequestProcessor {
         }
     }
 
+    /**
+     * Clears the headers of a response that failed before it was committed so
+     * the error is not cached and has no validators of an image.
+     */
+    private void resetForError(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            response.reset();
+            setNoCacheParameters(response);
+        }
+    }
+
     private void handleException(Exception e) throws ServletException {
         if (e.getClass().getName().contains("ClientAbortException") || e.getMessage() != null
                 && e.getMessage().contains("Broken pipe")
@@ -191,49 +322,176 @@ public class WmsServletRequestProcessor {
             throws MissingMandatoryParameterException, IOException {
         log.info("getting image");
         WmsRequest wmsRequest = new WmsRequest(request);
-        byte[] bytes = null;
+        EncodedImage image = null;
         response.setContentType(wmsRequest.getFormat());
 
+        // only complete images have validators so the client's copy is
+        // complete if it matches
+        HttpCaching caching = HttpCaching.create(wmsRequest, layers);
+        if (caching != null && caching.isNotModified(request)) {
+            log.info("image not modified for layers " + wmsRequest.getLayers());
+            caching.setHeaders(response);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
         // check the cache for the bytes of the image converted to the
         // appropriate format. Note that the critical bottleneck is
         // ImageIO.write rather than the layerManager.getImage call
-        bytes = imageCache.get(wmsRequest);
+        byte[] cached = imageCache.get(wmsRequest);
 
         // if cacheImage=false then don't use cache
-        if ("false".equals(request.getParameter("cacheImage")))
-            bytes = null;
-
-        if (bytes == null) {
+        boolean useCache = !"false".equals(request.getParameter("cacheImage"));
+        if (useCache && cached != null) {
+            log.info("obtained image from cache for layers " + wmsRequest.getLayers());
+            image = new EncodedImage(cached, true);
+        } else if (!useCache)
+            image = renderImage(wmsRequest);
+        else if (imageCache.isCacheable(wmsRequest)) {
             log.info("image cache empty");
-
-            BufferedImage image = null;
-            // dynamic layers should clear the imageCache in a separate thread
-            // (for example, using a quartz job)
-            image = layerManager.getImage(wmsRequest);
-            // Note that we write the image to memory first to avoid this JRE
-            // bug:
-            // http://bugs.sun.com/bugdatabase/view_bug.do;jsessionid=dc84943191e06dffffffffdf200f5210dd319?bug_id=6967419
-            // which is commented on further in JIRA ER-95
-            log.info("writing image to memory for layers " + wmsRequest.getLayers());
-            ByteArrayOutputStream byteOs = new ByteArrayOutputStream();
-            String imageType = wmsRequest.getFormat().substring(
-                    wmsRequest.getFormat().indexOf('/') + 1);
-            // This call is slow!!
-            long t = System.currentTimeMillis();
-            imageWriter.writeImage(image, byteOs, imageType);
-            log.info("ImageIoWriteTimeMs=" + (System.currentTimeMillis() - t));
-            bytes = byteOs.toByteArray();
-            imageCache.put(wmsRequest, bytes);
+            Metatile metatile = null;
+            if (metatileSize > 1)
+                metatile = Metatile.create(wmsRequest, metatileSize);
+            if (metatile != null)
+                image = getTileFromMetatile(metatile, wmsRequest);
+            // identical requests that miss the cache at the same time wait
+            // for the first one to render the image
+            if (image == null)
+                image = renders.get(ImageCache.getKey(wmsRequest), imageRenderer(wmsRequest));
+        } else if (streamUncached) {
+            streamImage(wmsRequest, response, caching);
+            return;
         } else
-            log.info("obtained image from cache for layers " + wmsRequest.getLayers());
+            image = uncachedRenders.get(ImageCache.getKey(wmsRequest), imageRenderer(wmsRequest));
 
+        setCachingHeaders(response, caching, image.complete);
         log.info("writing image to http output stream for layers " + wmsRequest.getLayers());
-        response.getOutputStream().write(bytes);
+        response.getOutputStream().write(image.bytes);
         response.getOutputStream().flush();
-        log.info("imageSizeK=" + new DecimalFormat("0.000").format(bytes.length / 1000.0)
+        log.info("imageSizeK=" + new DecimalFormat("0.000").format(image.bytes.length / 1000.0)
                 + " for layers " + wmsRequest.getLayers());
     }
 
+    /**
+     * Sets the validators and lifetime of an image once it has been produced.
+     * An image missing a layer must not be kept by the client.
+     */
+    private void setCachingHeaders(HttpServletResponse response, HttpCaching caching,
+            boolean complete) {
+        if (caching != null && complete)
+            caching.setHeaders(response);
+        else
+            setNoCacheParameters(response);
+    }
+
+    /**
+     * Renders the image and encodes it straight to the response.
+     */
+    private void streamImage(WmsRequest wmsRequest, HttpServletResponse response,
+            HttpCaching caching) throws IOException {
+        LayerManager.MapImage image = layerManager.getImage(wmsRequest);
+        setCachingHeaders(response, caching, image.isComplete());
+        log.info("streaming image to http output stream for layers " + wmsRequest.getLayers());
+        long t = System.currentTimeMillis();
+        ((ImageStreamWriter) imageWriter).writeImage(image.getImage(), response.getOutputStream(),
+                getImageType(wmsRequest));
+        response.getOutputStream().flush();
+        log.info("ImageIoWriteTimeMs=" + (System.currentTimeMillis() - t));
+    }
+
+    private static String getImageType(WmsRequest wmsRequest) {
+        return wmsRequest.getFormat().substring(wmsRequest.getFormat().indexOf('/') + 1);
+    }
+
+    private Callable<EncodedImage> imageRenderer(final WmsRequest wmsRequest) {
+        return new Callable<EncodedImage>() {
+            @Override
+            public EncodedImage call() throws IOException {
+                return renderImage(wmsRequest);
+            }
+        };
+    }
+
+    private EncodedImage renderImage(WmsRequest wmsRequest) throws IOException {
+        LayerManager.MapImage image = null;
+        // dynamic layers should clear the imageCache in a separate thread
+        // (for example, using a quartz job)
+        image = layerManager.getImage(wmsRequest);
+        // Note that we write the image to memory first to avoid this JRE
+        // bug:
+        // http://bugs.sun.com/bugdatabase/view_bug.do;jsessionid=dc84943191e06dffffffffdf200f5210dd319?bug_id=6967419
+        // which is commented on further in JIRA ER-95
+        log.info("writing image to memory for layers " + wmsRequest.getLayers());
+        ByteArrayOutputStream byteOs = new ByteArrayOutputStream();
+        String imageType = getImageType(wmsRequest);
+        // This call is slow!!
+        long t = System.currentTimeMillis();
+        imageWriter.writeImage(image.getImage(), byteOs, imageType);
+        log.info("ImageIoWriteTimeMs=" + (System.currentTimeMillis() - t));
+        byte[] bytes = byteOs.toByteArray();
+        // an image missing a layer is rendered again next time
+        if (image.isComplete())
+            imageCache.put(wmsRequest, bytes);
+        return new EncodedImage(bytes, image.isComplete());
+    }
+
+    /**
+     * Returns the requested tile of the metatile, rendering the metatile
+     * unless a render of it is already in progress. Returns null if the tile
+     * was not encoded because it was already cached and has been evicted
+     * since.
+     */
+    private EncodedImage getTileFromMetatile(final Metatile metatile, WmsRequest wmsRequest)
+            throws IOException {
+        Map<String, EncodedImage> tiles = metatileRenders.get(
+                ImageCache.getKey(metatile.getRequest()),
+                new Callable<Map<String, EncodedImage>>() {
+                    @Override
+                    public Map<String, EncodedImage> call() throws IOException {
+                        return writeMetatile(metatile);
+                    }
+                });
+        EncodedImage tile = tiles.get(ImageCache.getKey(wmsRequest));
+        if (tile == null) {
+            byte[] bytes = imageCache.get(wmsRequest);
+            if (bytes != null)
+                tile = new EncodedImage(bytes, true);
+        }
+        return tile;
+    }
+
+    /**
+     * Renders the metatile, caches each of its tiles that isn't cached already
+     * and returns the tiles encoded keyed by their cache key. No tiles are
+     * cached if the metatile is missing a layer.
+     */
+    private Map<String, EncodedImage> writeMetatile(Metatile metatile) throws IOException {
+        log.info("rendering metatile");
+        WmsRequest request = metatile.getRequest();
+        LayerManager.MapImage image = layerManager.getImage(request);
+        String imageType = getImageType(request);
+        Map<String, EncodedImage> tiles = new HashMap<String, EncodedImage>();
+        long t = System.currentTimeMillis();
+        for (int column = 0; column < metatile.size(); column++) {
+            for (int row = 0; row < metatile.size(); row++) {
+                WmsRequest tileRequest = metatile.getTileRequest(column, row);
+                if (metatile.isRequestedTile(column, row) || imageCache.get(tileRequest) == null) {
+                    ByteArrayOutputStream byteOs = new ByteArrayOutputStream();
+                    imageWriter.writeImage(metatile.slice(image.getImage(), column, row), byteOs,
+                            imageType);
+                    byte[] bytes = byteOs.toByteArray();
+                    if (image.isComplete())
+                        imageCache.put(tileRequest, bytes);
+                    tiles.put(ImageCache.getKey(tileRequest),
+                            new EncodedImage(bytes, image.isComplete()));
+                }
+            }
+        }
+        log.info("ImageIoWriteTimeMs=" + (System.currentTimeMillis() - t) + " for "
+                + tiles.size() + " tiles");
+        return tiles;
+    }
+
     private void writeFeatureInfo(HttpServletRequest request, HttpServletResponse response)
             throws MissingMandatoryParameterException, IOException {
         log.info("getting feature info");
@@ -285,4 +543,18 @@ public class WmsServletRequestProcessor {
         response.setHeader("Pragma", "no-cache");
     }
 
+    /**
+     * The bytes of an encoded image and whether all of its layers were drawn.
+     */
+    private static final class EncodedImage {
+
+        final byte[] bytes;
+        final boolean complete;
+
+        EncodedImage(byte[] bytes, boolean complete) {
+            this.bytes = bytes;
+            this.complete = complete;
+        }
+    }
+
 }
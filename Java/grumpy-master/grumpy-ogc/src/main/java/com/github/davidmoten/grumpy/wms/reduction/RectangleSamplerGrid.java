@@ -2,8 +2,10 @@ package com.github.davidmoten.grumpy.wms.reduction;
 
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.github.davidmoten.grumpy.core.Position;
 import com.github.davidmoten.grumpy.projection.Projector;
 
 /**
@@ -21,7 +23,34 @@ public class RectangleSamplerGrid implements RectangleSampler {
 
     @Override
     public List<Point> sample(Rectangle region, Projector projector) {
+        if (projector == null)
+            return RectangleUtil.corners(region);
 
-        return RectangleUtil.corners(region);
+        // top left, top right and bottom left corners projected in one call
+        double[] c = { region.x, region.y, region.x + region.width, region.y, region.x,
+                region.y + region.height };
+        projector.toLonLat(c, 0, c, 0, 3);
+        Position topLeft = new Position(c[1], c[0]);
+        double widthKm = topLeft.getDistanceToKm(new Position(c[3], c[2]));
+        double heightKm = topLeft.getDistanceToKm(new Position(c[5], c[4]));
+        int columns = cells(widthKm, region.width);
+        int rows = cells(heightKm, region.height);
+
+        List<Point> list = new ArrayList<Point>((columns + 1) * (rows + 1));
+        for (int i = 0; i <= columns; i++) {
+            int x = region.x + (int) Math.round((double) i * region.width / columns);
+            for (int j = 0; j <= rows; j++) {
+                int y = region.y + (int) Math.round((double) j * region.height / rows);
+                list.add(new Point(x, y));
+            }
+        }
+        return list;
+    }
+
+    private int cells(double sizeKm, int sizePixels) {
+        if (Double.isNaN(sizeKm))
+            return 1;
+        int cells = (int) Math.ceil(sizeKm / maxCellSizeKm);
+        return Math.max(1, Math.min(cells, sizePixels));
     }
 }
@@ -7,7 +7,23 @@ import static com.github.davidmoten.grumpy.wms.reduction.RectangleUtil.splitVert
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.github.davidmoten.grumpy.core.Position;
 import com.github.davidmoten.grumpy.projection.Projector;
@@ -16,15 +32,146 @@ import com.google.common.base.Function;
 
 public class Reducer {
 
+    /**
+     * In parallel mode regions with at most this many pixels are rendered by
+     * a single task.
+     */
+    private static final int MAX_TASK_PIXELS = 128 * 128;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(Runtime
+            .getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "grumpy-reducer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     public static <T> void render(Graphics2D g, Function<Position, T> function,
             Projector projector, RectangleSampler sampler, ValueRenderer<T> regionRenderer) {
         Rectangle region = WmsUtil.toTargetRectangle(projector);
-        renderRegion(g, function, projector, region, sampler, regionRenderer);
+        Values<T> values = new Values<T>(function, projector, new HashMap<Long, Object>());
+        renderRegion(g, values, region, sampler, regionRenderer);
+    }
+
+    /**
+     * Renders like
+     * {@link #render(Graphics2D, Function, Projector, RectangleSampler, ValueRenderer)}
+     * but renders regions of up to 128x128 pixels as parallel tasks on a
+     * shared thread pool. Each task renders into its own image which is then
+     * drawn on <code>g</code> by the calling thread, so the
+     * <code>function</code> and <code>regionRenderer</code> must be safe to
+     * call from several threads at once.
+     *
+     * @param g
+     * @param function
+     * @param projector
+     * @param sampler
+     * @param regionRenderer
+     */
+    public static <T> void renderParallel(Graphics2D g, Function<Position, T> function,
+            Projector projector, RectangleSampler sampler, ValueRenderer<T> regionRenderer) {
+        renderParallel(g, function, projector, sampler, regionRenderer, executor);
+    }
+
+    /**
+     * Renders like
+     * {@link #renderParallel(Graphics2D, Function, Projector, RectangleSampler, ValueRenderer)}
+     * using the given executor. The calling thread also runs tasks so the
+     * render completes even if the executor is busy.
+     *
+     * @param g
+     * @param function
+     * @param projector
+     * @param sampler
+     * @param regionRenderer
+     * @param executor
+     */
+    public static <T> void renderParallel(Graphics2D g, Function<Position, T> function,
+            Projector projector, final RectangleSampler sampler,
+            final ValueRenderer<T> regionRenderer, ExecutorService executor) {
+        final Values<T> values = new Values<T>(function, projector,
+                new ConcurrentHashMap<Long, Object>());
+        // g is only used by this thread
+        final RenderingHints hints = g.getRenderingHints();
+
+        // divide on this thread until regions are small enough for a task
+        List<FutureTask<BufferedImage>> tasks = new ArrayList<FutureTask<BufferedImage>>();
+        final List<Rectangle> taskRegions = new ArrayList<Rectangle>();
+        LinkedList<Rectangle> queue = new LinkedList<Rectangle>();
+        queue.add(WmsUtil.toTargetRectangle(projector));
+        while (!queue.isEmpty()) {
+            final Rectangle region = queue.removeFirst();
+            if (region.isEmpty())
+                continue;
+            else if (region.width * region.height <= MAX_TASK_PIXELS) {
+                FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(
+                        new Callable<BufferedImage>() {
+                            @Override
+                            public BufferedImage call() {
+                                return renderRegionToImage(hints, values, region, sampler,
+                                        regionRenderer);
+                            }
+                        });
+                tasks.add(task);
+                taskRegions.add(region);
+                executor.execute(task);
+            } else {
+                T value = getUniformSampledValue(values, region, sampler);
+                if (value != null)
+                    regionRenderer.render(g, projector, region, value);
+                else
+                    queue.addAll(splitRegion(region));
+            }
+        }
+
+        // help with the tasks not started yet then draw the images in order
+        for (FutureTask<BufferedImage> task : tasks)
+            task.run();
+        for (int i = 0; i < tasks.size(); i++) {
+            Rectangle region = taskRegions.get(i);
+            g.drawImage(getImage(tasks.get(i)), region.x, region.y, null);
+        }
     }
 
-    private static <T> void renderRegion(Graphics2D g, Function<Position, T> function,
-            Projector projector, Rectangle region, RectangleSampler sampler,
-            ValueRenderer<T> regionRenderer) {
+    private static BufferedImage getImage(FutureTask<BufferedImage> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Renders the region into an image the size of the region.
+     */
+    private static <T> BufferedImage renderRegionToImage(RenderingHints hints, Values<T> values,
+            Rectangle region, RectangleSampler sampler, ValueRenderer<T> regionRenderer) {
+        BufferedImage image = new BufferedImage(region.width, region.height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHints(hints);
+            g2.translate(-region.x, -region.y);
+            g2.clip(region);
+            renderRegion(g2, values, region, sampler, regionRenderer);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    private static <T> void renderRegion(Graphics2D g, Values<T> values, Rectangle region,
+            RectangleSampler sampler, ValueRenderer<T> regionRenderer) {
 
         // check if we need to divide the region
         boolean regionDivisible = region.height > 1 || region.width > 1;
@@ -33,35 +180,33 @@ public class Reducer {
         if (!regionDivisible) {
             // region is indivisible, so choose any corner for the
             // representative value
-            regionUniformValue = function.apply(projector.toPosition(region.getMinX(),
-                    region.getMinY()));
+            regionUniformValue = values.get(region.x, region.y);
         } else {
             // get the function value for the region if common to all sample
             // points in the region (if no common value returns null)
-            regionUniformValue = getUniformSampledValue(projector, region, sampler, function);
+            regionUniformValue = getUniformSampledValue(values, region, sampler);
         }
 
         if (regionUniformValue != null) {
             // render the region
-            regionRenderer.render(g, projector, region, regionUniformValue);
+            regionRenderer.render(g, values.projector, region, regionUniformValue);
         } else {
             // region is a mix of values and is divisible
             // so divide into sub regions ... 2 or 4
             // but only if we can
 
-            splitRegionAndRender(g, function, projector, region, sampler, regionRenderer);
+            splitRegionAndRender(g, values, region, sampler, regionRenderer);
         }
     }
 
-    private static <T> void splitRegionAndRender(Graphics2D g, Function<Position, T> function,
-            Projector projector, Rectangle region, RectangleSampler sampler,
-            ValueRenderer<T> regionRenderer) {
+    private static <T> void splitRegionAndRender(Graphics2D g, Values<T> values,
+            Rectangle region, RectangleSampler sampler, ValueRenderer<T> regionRenderer) {
         // split region
         final List<Rectangle> regions = splitRegion(region);
 
         // now render each region
         for (Rectangle subRegion : regions) {
-            renderRegion(g, function, projector, subRegion, sampler, regionRenderer);
+            renderRegion(g, values, subRegion, sampler, regionRenderer);
         }
     }
 
@@ -74,16 +219,16 @@ public class Reducer {
             return splitHorizontally(region);
     }
 
-    private static <T> T getUniformSampledValue(Projector projector, Rectangle region,
-            RectangleSampler sampler, Function<Position, T> function) {
+    private static <T> T getUniformSampledValue(Values<T> values, Rectangle region,
+            RectangleSampler sampler) {
 
         T firstT = null;
 
-        List<Point> points = sampler.sample(region, projector);
+        List<Point> points = sampler.sample(region, values.projector);
+        values.evaluate(points);
 
         for (Point point : points) {
-            Position p = projector.toPosition(point.x, point.y);
-            T t = function.apply(p);
+            T t = values.get(point.x, point.y);
             if (firstT == null) {
                 firstT = t;
             } else if (!firstT.equals(t)) {
@@ -92,4 +237,66 @@ public class Reducer {
         }
         return firstT;
     }
+
+    /**
+     * Memo of the function values at target points for one render. Sibling
+     * regions share corners so most points are sampled more than once.
+     */
+    private static final class Values<T> {
+
+        private static final Object NULL = new Object();
+
+        private final Function<Position, T> function;
+        private final Projector projector;
+        private final Map<Long, Object> values;
+
+        Values(Function<Position, T> function, Projector projector, Map<Long, Object> values) {
+            this.function = function;
+            this.projector = projector;
+            this.values = values;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int x, int y) {
+            Long key = key(x, y);
+            Object value = values.get(key);
+            if (value == null) {
+                T t = function.apply(projector.toPosition(x, y));
+                values.put(key, t == null ? NULL : t);
+                return t;
+            } else if (value == NULL)
+                return null;
+            else
+                return (T) value;
+        }
+
+        /**
+         * Evaluates the function at the points that are not memoised yet,
+         * projecting them all with one transform call.
+         */
+        void evaluate(List<Point> points) {
+            double[] coordinates = new double[2 * points.size()];
+            List<Long> keys = new ArrayList<Long>(points.size());
+            Set<Long> pending = new HashSet<Long>();
+            for (Point point : points) {
+                Long key = key(point.x, point.y);
+                if (!values.containsKey(key) && pending.add(key)) {
+                    coordinates[2 * keys.size()] = point.x;
+                    coordinates[2 * keys.size() + 1] = point.y;
+                    keys.add(key);
+                }
+            }
+            if (keys.isEmpty())
+                return;
+            projector.toLonLat(coordinates, 0, coordinates, 0, keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                T t = function.apply(new Position(coordinates[2 * i + 1], coordinates[2 * i]));
+                values.put(keys.get(i), t == null ? NULL : t);
+            }
+        }
+
+        private static Long key(int x, int y) {
+            return ((long) x << 32) | (y & 0xffffffffL);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
+public class HttpCachingTest {
+
+    @Test
+    public void testLayerWithoutVersionIsNotCacheable() {
+        Layers layers = LayersBuilder.builder().add("a", layer(null, 60)).build();
+        assertNull(HttpCaching.create(request("a"), layers));
+    }
+
+    @Test
+    public void testETagChangesWithVersionAndRequest() {
+        VersionStub version = new VersionStub();
+        Layers layers = LayersBuilder.builder().add("a", layer(version, 60)).build();
+        HttpCaching caching = HttpCaching.create(request("a"), layers);
+        assertNotNull(caching);
+        assertEquals(caching.getETag(), HttpCaching.create(request("a"), layers).getETag());
+        version.lastModified = 2000;
+        assertFalse(caching.getETag().equals(HttpCaching.create(request("a"), layers).getETag()));
+        WmsRequest other = request("a").modifyBounds(new ProjectorBounds("EPSG:4326", 0, 0, 5, 5));
+        assertFalse(caching.getETag().equals(HttpCaching.create(other, layers).getETag()));
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        HttpCaching caching = new HttpCaching("\"abc\"", 1000, 60);
+        assertTrue(caching.isNotModified("\"abc\"", -1));
+        assertTrue(caching.isNotModified("\"x\", W/\"abc\"", -1));
+        assertTrue(caching.isNotModified("*", -1));
+        assertFalse(caching.isNotModified("\"x\"", -1));
+        // If-None-Match takes precedence
+        assertFalse(caching.isNotModified("\"x\"", 5000));
+    }
+
+    @Test
+    public void testIfModifiedSince() {
+        HttpCaching caching = new HttpCaching("\"abc\"", 10500, 60);
+        assertTrue(caching.isNotModified(null, 10000));
+        assertFalse(caching.isNotModified(null, 9999));
+        assertFalse(caching.isNotModified(null, -1));
+    }
+
+    private static class VersionStub implements LayerVersion {
+        volatile long lastModified = 1000;
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private static Layer layer(final LayerVersion version, final int maxAgeSeconds) {
+        return new Layer() {
+            @Override
+            public void render(Graphics2D g, WmsRequest request) {
+            }
+
+            @Override
+            public String getInfo(Date time, WmsRequest request, Point point, String mimeType) {
+                return null;
+            }
+
+            @Override
+            public LayerFeatures getFeatures() {
+                return LayerFeatures.builder().name("a").version(version)
+                        .maxAgeSeconds(maxAgeSeconds).build();
+            }
+        };
+    }
+
+    private static WmsRequest request(String... layers) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("LAYERS", "a");
+        parameters.put("BBOX", "0,0,10,10");
+        return new WmsRequest(Arrays.asList(layers), new ArrayList<String>(),
+                new ArrayList<String>(), new ProjectorBounds("EPSG:4326", 0, 0, 10, 10),
+                "image/png", 256, 256, true, Color.white, "1.3.0", null, parameters, null, null);
+    }
+
+}
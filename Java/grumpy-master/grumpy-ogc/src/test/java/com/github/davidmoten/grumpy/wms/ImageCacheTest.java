@@ -0,0 +1,160 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
+public class ImageCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testGetReturnsImagePutForCachedLayer() {
+        ImageCache cache = new ImageCache().add("a");
+        WmsRequest request = request(1, "a");
+        assertNull(cache.get(request));
+        cache.put(request, new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get(request));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.sizeInBytes());
+    }
+
+    @Test
+    public void testImageForLayerNotCachedIsIgnored() {
+        ImageCache cache = new ImageCache().add("a");
+        WmsRequest request = request(1, "a", "b");
+        cache.put(request, new byte[] { 1 });
+        assertNull(cache.get(request));
+    }
+
+    @Test
+    public void testCacheIsBoundedByBytes() {
+        ImageCache cache = ImageCache.builder().maxSize(100).maxBytes(1000).build().add("a");
+        for (int i = 0; i < 50; i++)
+            cache.put(request(i, "a"), new byte[100]);
+        assertTrue(cache.sizeInBytes() <= 1000);
+        assertEquals(cache.sizeInBytes(), cache.size() * 100);
+        // the most recent image is never the one evicted
+        assertNotNull(cache.get(request(49, "a")));
+    }
+
+    @Test
+    public void testCacheIsBoundedBySize() {
+        ImageCache cache = new ImageCache(10).add("a");
+        for (int i = 0; i < 50; i++)
+            cache.put(request(i, "a"), new byte[100]);
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void testFrequentlyUsedImageSurvivesEviction() {
+        ImageCache cache = new ImageCache(10).add("a");
+        WmsRequest popular = request(0, "a");
+        cache.put(popular, new byte[1]);
+        for (int i = 1; i < 50; i++) {
+            assertNotNull(cache.get(popular));
+            cache.put(request(i, "a"), new byte[1]);
+        }
+        assertNotNull(cache.get(popular));
+    }
+
+    @Test
+    public void testClearLayerOnlyRemovesImagesOfThatLayer() {
+        ImageCache cache = new ImageCache().add("a").add("b");
+        cache.put(request(1, "a"), new byte[1]);
+        cache.put(request(2, "b"), new byte[1]);
+        cache.put(request(3, "a", "b"), new byte[1]);
+        cache.clear("a");
+        assertNull(cache.get(request(1, "a")));
+        assertNotNull(cache.get(request(2, "b")));
+        assertNull(cache.get(request(3, "a", "b")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBoundsThatDifferByRoundingErrorShareImage() {
+        ImageCache cache = new ImageCache().add("a");
+        WmsRequest request = request(1, "a");
+        cache.put(request, new byte[] { 1 });
+        WmsRequest calculated = request.modifyBounds(new ProjectorBounds("EPSG:4326", 0,
+                0.1 + 0.2 - 0.3, 0.1 + 0.2 + 0.7, 1));
+        assertArrayEquals(new byte[] { 1 }, cache.get(calculated));
+        assertNull(cache.get(request.modifyBounds(new ProjectorBounds("EPSG:4326", 0, 0, 2, 1))));
+    }
+
+    @Test
+    public void testDiskTierSurvivesRestart() {
+        File directory = temporaryFolder.getRoot();
+        ImageCache cache = ImageCache.builder().diskDirectory(directory).build().add("a").add("b");
+        cache.put(request(1, "a"), new byte[] { 1, 2, 3 });
+        cache.put(request(2, "b"), new byte[] { 4, 5 });
+
+        ImageCache restarted = ImageCache.builder().diskDirectory(directory).build().add("a")
+                .add("b");
+        assertEquals(0, restarted.size());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, restarted.get(request(1, "a")));
+        assertEquals(1, restarted.size());
+
+        restarted.clear("b");
+        assertNull(ImageCache.builder().diskDirectory(directory).build().add("b")
+                .get(request(2, "b")));
+    }
+
+    @Test
+    public void testDiskTierDeletesOldestImageAfterRewrites() {
+        File directory = temporaryFolder.getRoot();
+        ImageCache cache = ImageCache.builder().diskDirectory(directory).maxDiskBytes(2500)
+                .build().add("a");
+        cache.put(request(1, "a"), new byte[1000]);
+        cache.put(request(2, "a"), new byte[1000]);
+        // the third rewrite leaves more stale entries than images so the
+        // order is compacted
+        for (int i = 0; i < 3; i++)
+            cache.put(request(2, "a"), new byte[1000]);
+        cache.put(request(3, "a"), new byte[1000]);
+
+        ImageCache restarted = ImageCache.builder().diskDirectory(directory).build().add("a");
+        assertNull(restarted.get(request(1, "a")));
+        assertNotNull(restarted.get(request(2, "a")));
+        assertNotNull(restarted.get(request(3, "a")));
+    }
+
+    private static WmsRequest request(int n, String... layers) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("LAYERS", join(layers));
+        parameters.put("BBOX", "0,0," + n + ",1");
+        parameters.put("_OLSALT", String.valueOf(Math.random()));
+        List<String> list = Arrays.asList(layers);
+        return new WmsRequest(list, new ArrayList<String>(), new ArrayList<String>(),
+                new ProjectorBounds("EPSG:4326", 0, 0, n, 1), "image/png", 256, 256, true,
+                Color.white, "1.3.0", null, parameters, null, null);
+    }
+
+    private static String join(String[] items) {
+        StringBuilder s = new StringBuilder();
+        for (String item : items) {
+            if (s.length() > 0)
+                s.append(",");
+            s.append(item);
+        }
+        return s.toString();
+    }
+
+}
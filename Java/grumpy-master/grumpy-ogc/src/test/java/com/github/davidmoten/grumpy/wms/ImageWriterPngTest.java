@@ -0,0 +1,102 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.wms.ImageWriterPng.Filter;
+
+public class ImageWriterPngTest {
+
+    @Test
+    public void testTrueColorImageDecodesToSamePixelsForEachFilter() throws IOException {
+        BufferedImage image = noise(150, 70, BufferedImage.TYPE_INT_ARGB);
+        for (Filter filter : Filter.values()) {
+            ImageWriter writer = ImageWriterPng.builder().filter(filter).build();
+            assertSamePixels(image, read(write(writer, image, "png")));
+        }
+    }
+
+    @Test
+    public void testOpaqueImageAndSubimage() throws IOException {
+        BufferedImage image = noise(300, 200, BufferedImage.TYPE_INT_RGB);
+        ImageWriter writer = new ImageWriterPng();
+        assertSamePixels(image, read(write(writer, image, "png")));
+        BufferedImage sub = image.getSubimage(100, 50, 64, 64);
+        assertSamePixels(sub, read(write(writer, sub, "png")));
+    }
+
+    @Test
+    public void testPng8WithFewColoursIsExact() throws IOException {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(255, 0, 0, 128));
+        g.fillRect(10, 10, 100, 100);
+        g.setColor(Color.blue);
+        g.fillOval(50, 50, 150, 100);
+        g.dispose();
+        BufferedImage decoded = read(write(new ImageWriterPng(), image, "png8"));
+        assertTrue(decoded.getColorModel() instanceof IndexColorModel);
+        assertSamePixels(image, decoded);
+    }
+
+    @Test
+    public void testPng8WithManyColoursIsApproximate() throws IOException {
+        BufferedImage image = noise(100, 100, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage decoded = read(write(new ImageWriterPng(), image, "png; mode=8bit"));
+        IndexColorModel model = (IndexColorModel) decoded.getColorModel();
+        assertTrue(model.getMapSize() <= 256);
+        for (int x = 0; x < image.getWidth(); x++)
+            for (int y = 0; y < image.getHeight(); y++) {
+                Color a = new Color(image.getRGB(x, y), true);
+                Color b = new Color(decoded.getRGB(x, y), true);
+                assertEquals(a.getAlpha(), b.getAlpha(), 64);
+                // the colour of transparent pixels is not kept
+                if (b.getAlpha() > 0)
+                    assertEquals(a.getRed(), b.getRed(), 64);
+            }
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); x++)
+            for (int y = 0; y < expected.getHeight(); y++)
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+    }
+
+    private static BufferedImage noise(int width, int height, int type) {
+        Random random = new Random(width);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                // mix of smooth gradients and noise
+                image.setRGB(x, y, y % 3 == 0 ? random.nextInt() : new Color(x % 256, y % 256,
+                        (x + y) % 256, 255 - y % 256).getRGB());
+        return image;
+    }
+
+    private static byte[] write(ImageWriter writer, BufferedImage image, String imageType)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.writeImage(image, bytes, imageType);
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage read(byte[] bytes) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+}
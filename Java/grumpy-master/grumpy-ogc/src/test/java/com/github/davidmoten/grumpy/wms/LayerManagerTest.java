@@ -0,0 +1,142 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
+public class LayerManagerTest {
+
+    @Test
+    public void testLayerThatMissesDeadlineIsSkipped() {
+        Layers layers = LayersBuilder.builder().add("fast", new FillLayer(0, 0, 10, 0))
+                .add("slow", new FillLayer(10, 0, 10, 2000)).build();
+        LayerManager manager = new LayerManager(layers, RenderLimits.builder()
+                .layerTimeoutMs("slow", 100).build());
+        long t = System.currentTimeMillis();
+        LayerManager.MapImage result = manager.getImage(request("fast", "slow"));
+        assertTrue(System.currentTimeMillis() - t < 1000);
+        assertFalse(result.isComplete());
+        BufferedImage image = result.getImage();
+        assertEquals(Color.red.getRGB(), image.getRGB(5, 5));
+        assertEquals(0, image.getRGB(15, 5));
+    }
+
+    @Test
+    public void testLayerThatMissesDeadlineIsDrawnFromLastImage() throws InterruptedException {
+        FillLayer layer = new FillLayer(0, 0, 10, 0);
+        Layers layers = LayersBuilder.builder().add("a", layer).build();
+        LayerManager manager = new LayerManager(layers, RenderLimits.builder()
+                .requestTimeoutMs(100).build());
+        LayerManager.MapImage image = manager.getImage(request("a"));
+        assertTrue(image.isComplete());
+        assertEquals(Color.red.getRGB(), image.getImage().getRGB(5, 5));
+        layer.delayMs = 2000;
+        image = manager.getImage(request("a"));
+        assertFalse(image.isComplete());
+        assertEquals(Color.red.getRGB(), image.getImage().getRGB(5, 5));
+    }
+
+    @Test
+    public void testFallbackImagesAreLimitedByBytes() {
+        FillLayer layer = new FillLayer(0, 0, 10, 0);
+        Layers layers = LayersBuilder.builder().add("a", layer).build();
+        // room for the pixels of one 20x20 image
+        LayerManager manager = new LayerManager(layers, RenderLimits.builder()
+                .requestTimeoutMs(100).fallbackBytes(4 * 20 * 20).build());
+        // requests are told apart by their BBOX parameter
+        HashMap<String, String> parameters = new HashMap<String, String>();
+        parameters.put("BBOX", "");
+        WmsRequest first = new WmsRequest(Arrays.asList("a"), new ArrayList<String>(),
+                new ArrayList<String>(), new ProjectorBounds("EPSG:4326", 0, 0, 10, 10),
+                "image/png", 20, 20, true, Color.white, "1.3.0", null, parameters, null, null);
+        WmsRequest second = first.modifyBounds(new ProjectorBounds("EPSG:4326", 10, 0, 20, 10));
+        assertTrue(manager.getImage(first).isComplete());
+        assertTrue(manager.getImage(second).isComplete());
+        layer.delayMs = 2000;
+        // the image of the first request was evicted
+        assertEquals(0, manager.getImage(first).getImage().getRGB(5, 5));
+        assertEquals(Color.red.getRGB(), manager.getImage(second).getImage().getRGB(5, 5));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testBurstBeyondQueueIsRejected() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Layer blocked = new FillLayer(0, 0, 10, 0) {
+            @Override
+            public void render(Graphics2D g, WmsRequest request) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    // finish
+                }
+            }
+        };
+        Layers layers = LayersBuilder.builder().add("a", blocked).build();
+        LayerManager manager = new LayerManager(layers, RenderLimits.builder().threads(1)
+                .maxQueuedLayers(1).build());
+        try {
+            manager.getImage(request("a", "a", "a"));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private static WmsRequest request(String... layers) {
+        return new WmsRequest(Arrays.asList(layers), new ArrayList<String>(),
+                new ArrayList<String>(), new ProjectorBounds("EPSG:4326", 0, 0, 10, 10),
+                "image/png", 20, 20, true, Color.white, "1.3.0", null,
+                new HashMap<String, String>(), null, null);
+    }
+
+    private static class FillLayer implements Layer {
+
+        private final int x;
+        private final int y;
+        private final int size;
+        volatile long delayMs;
+
+        FillLayer(int x, int y, int size, long delayMs) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void render(Graphics2D g, WmsRequest request) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            g.setColor(Color.red);
+            g.fillRect(x, y, size, size);
+        }
+
+        @Override
+        public String getInfo(Date time, WmsRequest request, Point point, String mimeType) {
+            return null;
+        }
+
+        @Override
+        public LayerFeatures getFeatures() {
+            return LayerFeatures.builder().name("fill").build();
+        }
+    }
+
+}
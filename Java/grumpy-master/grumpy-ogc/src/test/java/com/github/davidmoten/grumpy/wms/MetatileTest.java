@@ -0,0 +1,101 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+
+public class MetatileTest {
+
+    private static final double PRECISION = 1e-9;
+
+    @Test
+    public void testMetatileContainsRequestedTile() {
+        WmsRequest request = request(new ProjectorBounds("EPSG:4326", 45, -45, 90, 0));
+        Metatile metatile = Metatile.create(request, 4);
+        assertEquals(4, metatile.size());
+        ProjectorBounds b = metatile.getRequest().getBounds();
+        assertEquals(0, b.getMinX(), PRECISION);
+        // moved north to lie within the world
+        assertEquals(-90, b.getMinY(), PRECISION);
+        assertEquals(180, b.getMaxX(), PRECISION);
+        assertEquals(90, b.getMaxY(), PRECISION);
+        assertEquals(1024, metatile.getRequest().getWidth());
+        assertEquals(1024, metatile.getRequest().getHeight());
+        assertTrue(metatile.isRequestedTile(1, 1));
+        assertFalse(metatile.isRequestedTile(1, 3));
+        assertSame(request, metatile.getTileRequest(1, 1));
+    }
+
+    @Test
+    public void testTileRequestsHaveNeighbouringBounds() {
+        WmsRequest request = request(new ProjectorBounds("EPSG:4326", 45, -45, 90, 0));
+        ProjectorBounds b = Metatile.create(request, 4).getTileRequest(2, 0).getBounds();
+        assertEquals(90, b.getMinX(), PRECISION);
+        assertEquals(-90, b.getMinY(), PRECISION);
+        assertEquals(135, b.getMaxX(), PRECISION);
+        assertEquals(-45, b.getMaxY(), PRECISION);
+    }
+
+    @Test
+    public void testMetatileAtMercatorCornerIsWithinWorld() {
+        double size = 2 * 20037508.342789244 / 8;
+        WmsRequest request = request(new ProjectorBounds("EPSG:3857", 3 * size, 3 * size,
+                4 * size, 4 * size));
+        // the aligned 3x3 block would start at the north-east corner tile
+        Metatile metatile = Metatile.create(request, 3);
+        ProjectorBounds b = metatile.getRequest().getBounds();
+        assertEquals(size, b.getMinX(), 1e-6);
+        assertEquals(size, b.getMinY(), 1e-6);
+        assertEquals(4 * size, b.getMaxX(), 1e-6);
+        assertEquals(4 * size, b.getMaxY(), 1e-6);
+        assertTrue(metatile.isRequestedTile(2, 2));
+    }
+
+    @Test
+    public void testWorldNarrowerThanMetatileHasNoMetatile() {
+        // only two rows of 90 degree tiles between the poles
+        assertNull(Metatile.create(request(new ProjectorBounds("EPSG:4326", 0, 0, 90, 90)), 4));
+    }
+
+    @Test
+    public void testSliceFlipsRows() {
+        Metatile metatile = Metatile.create(
+                request(new ProjectorBounds("EPSG:4326", 0, 0, 10, 10)), 2);
+        BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB);
+        // top left pixel of the north-west tile
+        image.setRGB(0, 0, Color.red.getRGB());
+        assertEquals(Color.red.getRGB(), metatile.slice(image, 0, 1).getRGB(0, 0));
+        assertEquals(0, metatile.slice(image, 0, 0).getRGB(0, 0));
+    }
+
+    @Test
+    public void testUnalignedRequestHasNoMetatile() {
+        assertNull(Metatile.create(request(new ProjectorBounds("EPSG:4326", 5, 0, 15, 10)), 2));
+    }
+
+    @Test
+    public void testMetatileTooLargeIsNotCreated() {
+        assertNull(Metatile.create(request(new ProjectorBounds("EPSG:4326", 0, 0, 10, 10)), 32));
+    }
+
+    private static WmsRequest request(ProjectorBounds bounds) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        return new WmsRequest(Arrays.asList("a"), new ArrayList<String>(),
+                new ArrayList<String>(), bounds, "image/png", 256, 256, true, Color.white,
+                "1.3.0", null, parameters, null, null);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsWithSameKeyRunOnce() throws Exception {
+        final SingleFlight<Integer> flight = new SingleFlight<Integer>(0);
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> slow = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                started.countDown();
+                release.await();
+                return calls.incrementAndGet();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            futures.add(executor.submit(get(flight, "a", slow)));
+            started.await();
+            for (int i = 0; i < 7; i++)
+                futures.add(executor.submit(get(flight, "a", slow)));
+            // give the other callers time to join the flight
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Integer> future : futures)
+                assertEquals(1, (int) future.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            assertEquals(0, flight.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResultIsSharedWithinWindowOnly() throws IOException, InterruptedException {
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(50);
+        Callable<Integer> counter = counter();
+        assertEquals(1, (int) flight.get("a", counter));
+        assertEquals(1, (int) flight.get("a", counter));
+        assertEquals(2, (int) flight.get("b", counter));
+        Thread.sleep(100);
+        assertEquals(3, (int) flight.get("a", counter));
+    }
+
+    @Test
+    public void testFailureIsNotShared() throws IOException {
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(10000);
+        try {
+            flight.get("a", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    throw new IOException("boo");
+                }
+            });
+            assertTrue(false);
+        } catch (IOException e) {
+            assertEquals("boo", e.getMessage());
+        }
+        assertEquals(1, (int) flight.get("a", counter()));
+    }
+
+    @Test
+    public void testResultThatIsNotShareableIsNotSharedWithinWindow() throws IOException {
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(10000) {
+            @Override
+            protected boolean isShareable(Integer result) {
+                return result % 2 == 0;
+            }
+        };
+        Callable<Integer> counter = counter();
+        assertEquals(1, (int) flight.get("a", counter));
+        assertEquals(2, (int) flight.get("a", counter));
+        assertEquals(2, (int) flight.get("a", counter));
+        assertEquals(1, flight.size());
+    }
+
+    private static Callable<Integer> counter() {
+        final AtomicInteger count = new AtomicInteger();
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return count.incrementAndGet();
+            }
+        };
+    }
+
+    private static Callable<Integer> get(final SingleFlight<Integer> flight, final String key,
+            final Callable<Integer> callable) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return flight.get(key, callable);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.github.davidmoten.grumpy.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class WmsServletRequestProcessorTest {
+
+    @Test
+    public void testCompleteImageHasValidators() throws Exception {
+        WmsServletRequestProcessor processor = WmsServletRequestProcessor.builder()
+                .addLayer("a", new VersionedLayer(0, null)).build();
+        ResponseStub response = new ResponseStub();
+        processor.doGet(request("a"), response.proxy());
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertNotNull(response.getHeader("ETag"));
+        assertEquals("public, max-age=60", response.getHeader("Cache-Control"));
+        assertTrue(response.bytes.size() > 0);
+    }
+
+    @Test
+    public void testImageMissingLayerHasNoValidators() throws Exception {
+        WmsServletRequestProcessor processor = WmsServletRequestProcessor.builder()
+                .addLayer("a", new VersionedLayer(2000, null))
+                .renderLimits(RenderLimits.builder().requestTimeoutMs(100).build()).build();
+        ResponseStub response = new ResponseStub();
+        processor.doGet(request("a"), response.proxy());
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertNull(response.getHeader("ETag"));
+        assertTrue(response.getHeader("Cache-Control").contains("no-store"));
+        assertTrue(response.bytes.size() > 0);
+    }
+
+    @Test
+    public void testRejectedRequestHasNoValidators() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        WmsServletRequestProcessor processor = WmsServletRequestProcessor.builder()
+                .addLayer("a", new VersionedLayer(0, latch))
+                .renderLimits(RenderLimits.builder().threads(1).maxQueuedLayers(1).build())
+                .build();
+        ResponseStub response = new ResponseStub();
+        try {
+            processor.doGet(request("a,a,a"), response.proxy());
+        } finally {
+            latch.countDown();
+        }
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.status);
+        assertNull(response.getHeader("ETag"));
+        assertTrue(response.getHeader("Cache-Control").contains("no-store"));
+    }
+
+    private static HttpServletRequest request(String layers) {
+        final Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("REQUEST", "GetMap");
+        parameters.put("LAYERS", layers);
+        parameters.put("SRS", "EPSG:4326");
+        parameters.put("BBOX", "0,0,10,10");
+        parameters.put("FORMAT", "image/png");
+        parameters.put("WIDTH", "20");
+        parameters.put("HEIGHT", "20");
+        parameters.put("TRANSPARENT", "true");
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                WmsServletRequestProcessorTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getParameter"))
+                            return parameters.get(args[0]);
+                        else if (name.equals("getParameterNames"))
+                            return Collections.enumeration(parameters.keySet());
+                        else if (name.equals("getRequestURL"))
+                            return new StringBuffer("http://localhost/wms");
+                        else if (name.equals("getDateHeader"))
+                            return -1L;
+                        else
+                            // getQueryString, getRemoteAddr, getHeader
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * Records the status, headers and body written to a response.
+     */
+    private static class ResponseStub {
+
+        int status = HttpServletResponse.SC_OK;
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null ? null : values.get(0);
+        }
+
+        HttpServletResponse proxy() {
+            final ServletOutputStream out = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes.write(b);
+                }
+            };
+            return (HttpServletResponse) Proxy.newProxyInstance(
+                    WmsServletRequestProcessorTest.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            String name = method.getName();
+                            if (name.equals("setHeader") || name.equals("setDateHeader")) {
+                                List<String> values = new ArrayList<String>();
+                                values.add(String.valueOf(args[1]));
+                                headers.put((String) args[0], values);
+                            } else if (name.equals("addHeader")) {
+                                if (!headers.containsKey(args[0]))
+                                    headers.put((String) args[0], new ArrayList<String>());
+                                headers.get(args[0]).add((String) args[1]);
+                            } else if (name.equals("setStatus") || name.equals("sendError"))
+                                status = (Integer) args[0];
+                            else if (name.equals("reset")) {
+                                headers.clear();
+                                bytes.reset();
+                            } else if (name.equals("isCommitted"))
+                                return false;
+                            else if (name.equals("getOutputStream"))
+                                return out;
+                            return null;
+                        }
+                    });
+        }
+    }
+
+    private static class VersionedLayer implements Layer {
+
+        private final long delayMs;
+        private final CountDownLatch latch;
+
+        VersionedLayer(long delayMs, CountDownLatch latch) {
+            this.delayMs = delayMs;
+            this.latch = latch;
+        }
+
+        @Override
+        public void render(Graphics2D g, WmsRequest request) {
+            try {
+                Thread.sleep(delayMs);
+                if (latch != null)
+                    latch.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            g.setColor(Color.red);
+            g.fillRect(0, 0, 10, 10);
+        }
+
+        @Override
+        public String getInfo(Date time, WmsRequest request, Point point, String mimeType) {
+            return null;
+        }
+
+        @Override
+        public LayerFeatures getFeatures() {
+            return LayerFeatures.builder().name("a").version(new LayerVersion() {
+                @Override
+                public long getLastModified() {
+                    return 1000;
+                }
+            }).maxAgeSeconds(60).build();
+        }
+    }
+
+}
@@ -1,9 +1,17 @@
 package com.github.davidmoten.grumpy.wms.reduction;
 
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.github.davidmoten.grumpy.projection.Projector;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+import com.github.davidmoten.grumpy.projection.ProjectorTarget;
+
 public class BoundsSamplerMaxSizeTest {
 
     @Test
@@ -13,4 +21,15 @@ public class BoundsSamplerMaxSizeTest {
         System.out.println(b.sample(r, null));
     }
 
+    @Test
+    public void testSampleIncludesCornersAndInteriorPoints() {
+        RectangleSampler b = new RectangleSamplerGrid(100);
+        Projector projector = new Projector(new ProjectorBounds("EPSG:4326", -30, -30, 30, 30),
+                new ProjectorTarget(600, 600));
+        Rectangle r = new Rectangle(0, 0, 200, 300);
+        List<Point> points = b.sample(r, projector);
+        assertTrue(points.containsAll(RectangleUtil.corners(r)));
+        assertTrue(points.contains(new Point(100, 150)));
+    }
+
 }
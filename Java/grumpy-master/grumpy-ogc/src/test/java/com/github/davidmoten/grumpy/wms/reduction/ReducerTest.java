@@ -0,0 +1,130 @@
+package com.github.davidmoten.grumpy.wms.reduction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.grumpy.projection.Projector;
+import com.github.davidmoten.grumpy.projection.ProjectorBounds;
+import com.github.davidmoten.grumpy.projection.ProjectorTarget;
+import com.google.common.base.Function;
+
+public class ReducerTest {
+
+    private static final int SIZE = 600;
+
+    @Test
+    public void testParallelRenderMatchesSerialRender() {
+        Projector projector = projector();
+        BufferedImage serial = image();
+        Graphics2D g = serial.createGraphics();
+        Reducer.render(g, function(null), projector, new RectangleSamplerCorners(), renderer());
+        g.dispose();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BufferedImage parallel = image();
+            g = parallel.createGraphics();
+            Reducer.renderParallel(g, function(null), projector, new RectangleSamplerCorners(),
+                    renderer(), executor);
+            g.dispose();
+            for (int x = 0; x < SIZE; x++)
+                for (int y = 0; y < SIZE; y++)
+                    assertEquals(serial.getRGB(x, y), parallel.getRGB(x, y));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEachPointIsEvaluatedOnce() {
+        Set<Position> positions = Collections.synchronizedSet(new HashSet<Position>());
+        AtomicInteger calls = new AtomicInteger();
+        Function<Position, Boolean> function = counting(function(positions), calls);
+        BufferedImage image = image();
+        Graphics2D g = image.createGraphics();
+        Reducer.renderParallel(g, function, projector(), new RectangleSamplerCorners(),
+                renderer());
+        g.dispose();
+        assertEquals(positions.size(), calls.get());
+    }
+
+    @Test
+    public void testGridSamplerRender() {
+        Projector projector = projector();
+        Set<Position> positions = new HashSet<Position>();
+        AtomicInteger calls = new AtomicInteger();
+        BufferedImage image = image();
+        Graphics2D g = image.createGraphics();
+        // cells of about 100km so large regions are sampled at many points
+        Reducer.render(g, counting(function(positions), calls), projector,
+                new RectangleSamplerGrid(100), renderer());
+        g.dispose();
+        assertEquals(positions.size(), calls.get());
+        for (int x = 0; x < SIZE; x++)
+            for (int y = 0; y < SIZE; y++) {
+                Position p = projector.toPosition(x, y);
+                double r = Math.sqrt(p.getLat() * p.getLat() + p.getLon() * p.getLon());
+                // pixels are a tenth of a degree so skip the edge of the circle
+                if (Math.abs(r - 20) > 0.3)
+                    assertEquals((r < 20 ? Color.red : Color.blue).getRGB(), image.getRGB(x, y));
+            }
+    }
+
+    private static BufferedImage image() {
+        return new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static Projector projector() {
+        return new Projector(new ProjectorBounds("EPSG:4326", -30, -30, 30, 30),
+                new ProjectorTarget(SIZE, SIZE));
+    }
+
+    /**
+     * Returns true inside a circle of radius 20 degrees around 0,0.
+     */
+    private static Function<Position, Boolean> function(final Set<Position> positions) {
+        return new Function<Position, Boolean>() {
+            @Override
+            public Boolean apply(Position p) {
+                if (positions != null)
+                    positions.add(p);
+                return p.getLat() * p.getLat() + p.getLon() * p.getLon() < 400;
+            }
+        };
+    }
+
+    private static Function<Position, Boolean> counting(final Function<Position, Boolean> f,
+            final AtomicInteger calls) {
+        return new Function<Position, Boolean>() {
+            @Override
+            public Boolean apply(Position p) {
+                calls.incrementAndGet();
+                return f.apply(p);
+            }
+        };
+    }
+
+    private static ValueRenderer<Boolean> renderer() {
+        return new ValueRenderer<Boolean>() {
+            @Override
+            public void render(Graphics2D g, Projector projector, Rectangle region, Boolean t) {
+                g.setColor(t ? Color.red : Color.blue);
+                g.fill(region);
+            }
+        };
+    }
+
+}
@@ -5,11 +5,8 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
-import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
-import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.NoSuchAuthorityCodeException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
@@ -30,6 +27,8 @@ public class FeatureUtil {
 
     private static Map<String, CoordinateReferenceSystem> crs = new ConcurrentHashMap<String, CoordinateReferenceSystem>();
 
+    private static Map<String, MathTransform> transforms = new ConcurrentHashMap<String, MathTransform>();
+
     public static synchronized CoordinateReferenceSystem getCrs(String epsg) {
         try {
             if (crs.get(epsg) != null)
@@ -53,49 +52,81 @@ public class FeatureUtil {
         }
     }
 
-    public static Point createPoint(double lat, double lon, String srsName) {
-        GeometryFactory geometryFactory = new GeometryFactory();
-        Coordinate coordinate = new Coordinate(lon, lat);
-        Point point = geometryFactory.createPoint(coordinate);
-
-        try {
-            if (!srsName.equals(EPSG_4326)) {
-                MathTransform transform = CRS.findMathTransform(getCrs(EPSG_4326), getCrs(srsName));
-                point = (Point) JTS.transform(point, transform);
+    /**
+     * Returns the transform from EPSG:4326 to the given srs. Transforms are
+     * cached because finding one is much slower than using it.
+     * 
+     * @param srsName
+     * @return transform from lon, lat to x, y in the srs
+     */
+    public static MathTransform getTransform(String srsName) {
+        MathTransform transform = transforms.get(srsName);
+        if (transform == null) {
+            try {
+                transform = CRS.findMathTransform(getCrs(EPSG_4326), getCrs(srsName));
+            } catch (FactoryException e) {
+                throw new RuntimeException(e);
             }
-            return point;
+            transforms.put(srsName, transform);
+        }
+        return transform;
+    }
 
-        } catch (NoSuchAuthorityCodeException e) {
-            throw new RuntimeException(e);
-        } catch (FactoryException e) {
-            throw new RuntimeException(e);
-        } catch (MismatchedDimensionException e) {
-            throw new RuntimeException(e);
+    /**
+     * Transforms <code>numPoints</code> lon, lat pairs to x, y pairs in the
+     * srs with one transform call. The arrays may be the same array to
+     * transform in place.
+     * 
+     * @param lonLats
+     * @param srcOffset
+     * @param xys
+     * @param dstOffset
+     * @param numPoints
+     * @param srsName
+     */
+    public static void toSrs(double[] lonLats, int srcOffset, double[] xys, int dstOffset,
+            int numPoints, String srsName) {
+        try {
+            getTransform(srsName).transform(lonLats, srcOffset, xys, dstOffset, numPoints);
         } catch (TransformException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static Position convertToLatLon(double x, double y, String srsName) {
-        GeometryFactory geometryFactory = new GeometryFactory();
-        Coordinate coordinate = new Coordinate(x, y);
-        Point point = geometryFactory.createPoint(coordinate);
-
+    /**
+     * Transforms <code>numPoints</code> x, y pairs in the srs to lon, lat
+     * pairs with one transform call. The arrays may be the same array to
+     * transform in place.
+     * 
+     * @param xys
+     * @param srcOffset
+     * @param lonLats
+     * @param dstOffset
+     * @param numPoints
+     * @param srsName
+     */
+    public static void toLonLat(double[] xys, int srcOffset, double[] lonLats, int dstOffset,
+            int numPoints, String srsName) {
         try {
-            if (!srsName.equals(EPSG_4326)) {
-                MathTransform transform = CRS.findMathTransform(getCrs(EPSG_4326), getCrs(srsName));
-                point = (Point) JTS.transform(point, transform.inverse());
-            }
-            return new Position(point.getY(), point.getX());
-        } catch (NoSuchAuthorityCodeException e) {
-            throw new RuntimeException(e);
-        } catch (FactoryException e) {
-            throw new RuntimeException(e);
-        } catch (MismatchedDimensionException e) {
-            throw new RuntimeException(e);
+            getTransform(srsName).inverse().transform(xys, srcOffset, lonLats, dstOffset,
+                    numPoints);
         } catch (TransformException e) {
             throw new RuntimeException(e);
         }
     }
 
+    public static Point createPoint(double lat, double lon, String srsName) {
+        double[] xy = { lon, lat };
+        if (!srsName.equals(EPSG_4326))
+            toSrs(xy, 0, xy, 0, 1, srsName);
+        return new GeometryFactory().createPoint(new Coordinate(xy[0], xy[1]));
+    }
+
+    public static Position convertToLatLon(double x, double y, String srsName) {
+        double[] lonLat = { x, y };
+        if (!srsName.equals(EPSG_4326))
+            toLonLat(lonLat, 0, lonLat, 0, 1, srsName);
+        return new Position(lonLat[1], lonLat[0]);
+    }
+
 }
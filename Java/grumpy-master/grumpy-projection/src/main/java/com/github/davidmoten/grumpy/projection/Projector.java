@@ -4,10 +4,6 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
-import org.opengis.geometry.MismatchedDimensionException;
-import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
@@ -39,6 +35,17 @@ public class Projector {
 	private final MathTransform transform;
 	private final GeometryFactory geometryFactory;
 
+	/**
+	 * Lazily calculated inverse of {@code transform}.
+	 */
+	private volatile MathTransform inverse;
+
+	/**
+	 * Lazily calculated x coordinate in the srs of longitude 180, NaN if not
+	 * calculated yet.
+	 */
+	private volatile double maximumX = Double.NaN;
+
 	public Projector(ProjectorBounds bounds, ProjectorTarget target) {
 		// perform one time initialization in a thread safe way
 		if (initialized.compareAndSet(false, true)) {
@@ -47,13 +54,7 @@ public class Projector {
 		}
 		this.target = target;
 		this.bounds = bounds;
-		try {
-			transform = CRS.findMathTransform(FeatureUtil.getCrs(FeatureUtil.EPSG_4326),
-			        FeatureUtil.getCrs(bounds.getSrs()));
-
-		} catch (FactoryException e) {
-			throw new RuntimeException(e);
-		}
+		transform = FeatureUtil.getTransform(bounds.getSrs());
 		geometryFactory = new GeometryFactory();
 	}
 
@@ -66,17 +67,130 @@ public class Projector {
 	}
 
 	public com.vividsolutions.jts.geom.Point getGeometryPointInSrs(double lat, double lon) {
-		Coordinate coordinate = new Coordinate(lon, lat);
-		com.vividsolutions.jts.geom.Point point = geometryFactory.createPoint(coordinate);
+		double[] xy = { lon, lat };
+		toSrs(xy, 0, xy, 0, 1);
+		return createPoint(xy[0], xy[1]);
+	}
+
+	/**
+	 * Transforms <code>numPoints</code> lon, lat pairs from
+	 * <code>lonLats</code> to x, y pairs in the srs of the bounds using one
+	 * transform call. The arrays may be the same array to transform in place.
+	 * 
+	 * @param lonLats
+	 *            longitude and latitude of each point
+	 * @param srcOffset
+	 *            index of the first longitude in <code>lonLats</code>
+	 * @param xys
+	 *            receives the srs x and y of each point
+	 * @param dstOffset
+	 *            index of the first x in <code>xys</code>
+	 * @param numPoints
+	 *            number of points
+	 */
+	public void toSrs(double[] lonLats, int srcOffset, double[] xys, int dstOffset, int numPoints) {
 		try {
-			return (com.vividsolutions.jts.geom.Point) JTS.transform(point, transform);
-		} catch (MismatchedDimensionException e) {
+			transform.transform(lonLats, srcOffset, xys, dstOffset, numPoints);
+		} catch (TransformException e) {
 			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Transforms <code>numPoints</code> lon, lat pairs from
+	 * <code>lonLats</code> to x, y pairs in target (pixel) coordinates using
+	 * one transform call. The arrays may be the same array to transform in
+	 * place. Points are wrapped across the antimeridian like
+	 * {@link #toPoint2D(double, double)}.
+	 * 
+	 * @param lonLats
+	 *            longitude and latitude of each point
+	 * @param srcOffset
+	 *            index of the first longitude in <code>lonLats</code>
+	 * @param xys
+	 *            receives the target x and y of each point
+	 * @param dstOffset
+	 *            index of the first x in <code>xys</code>
+	 * @param numPoints
+	 *            number of points
+	 */
+	public void toTarget(double[] lonLats, int srcOffset, double[] xys, int dstOffset,
+	        int numPoints) {
+		toSrs(lonLats, srcOffset, xys, dstOffset, numPoints);
+		double width = bounds.getMaxX() - bounds.getMinX();
+		double height = bounds.getMaxY() - bounds.getMinY();
+		for (int i = dstOffset; i < dstOffset + 2 * numPoints; i += 2) {
+			double x = xys[i];
+			if (x > bounds.getMaxX())
+				// assume the maxX occurs at longitude 180 (true for EPSG 3857
+				// spherical mercator) but maybe not true for other projections?
+				x -= 2 * getMaximumX();
+			else if (x < bounds.getMinX())
+				x += 2 * getMaximumX();
+			xys[i] = (x - bounds.getMinX()) / width * target.getWidth();
+			xys[i + 1] = (bounds.getMaxY() - xys[i + 1]) / height * target.getHeight();
+		}
+	}
+
+	/**
+	 * Transforms lon, lat pairs to target x, y pairs in place.
+	 * 
+	 * @param lonLats
+	 *            longitude and latitude of each point, replaced by the target
+	 *            x and y
+	 */
+	public void toTarget(double[] lonLats) {
+		toTarget(lonLats, 0, lonLats, 0, lonLats.length / 2);
+	}
+
+	/**
+	 * Transforms <code>numPoints</code> x, y pairs in target (pixel)
+	 * coordinates from <code>xys</code> to lon, lat pairs using one transform
+	 * call. The arrays may be the same array to transform in place.
+	 * 
+	 * @param xys
+	 *            target x and y of each point
+	 * @param srcOffset
+	 *            index of the first x in <code>xys</code>
+	 * @param lonLats
+	 *            receives the longitude and latitude of each point
+	 * @param dstOffset
+	 *            index of the first longitude in <code>lonLats</code>
+	 * @param numPoints
+	 *            number of points
+	 */
+	public void toLonLat(double[] xys, int srcOffset, double[] lonLats, int dstOffset,
+	        int numPoints) {
+		double width = bounds.getMaxX() - bounds.getMinX();
+		double height = bounds.getMaxY() - bounds.getMinY();
+		for (int i = 0; i < 2 * numPoints; i += 2) {
+			lonLats[dstOffset + i] = xys[srcOffset + i] / target.getWidth() * width
+			        + bounds.getMinX();
+			lonLats[dstOffset + i + 1] = bounds.getMaxY() - xys[srcOffset + i + 1]
+			        / target.getHeight() * height;
+		}
+		try {
+			getInverse().transform(lonLats, dstOffset, lonLats, dstOffset, numPoints);
 		} catch (TransformException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private MathTransform getInverse() throws TransformException {
+		if (inverse == null)
+			inverse = transform.inverse();
+		return inverse;
+	}
+
+	private double getMaximumX() {
+		if (Double.isNaN(maximumX)) {
+			double[] xy = { 180, 0 };
+			toSrs(xy, 0, xy, 0, 1);
+			maximumX = xy[0];
+		}
+		return maximumX;
+	}
+
 	public com.vividsolutions.jts.geom.Point getGeometryPointInSrsRelativeTo(double lat,
 	        double lon, double relativeLat, double relativeLon, double relativeX, double relativeY) {
 
@@ -151,56 +265,15 @@ public class Projector {
 	}
 
 	public Point2D.Double toPoint2D(double lat, double lon) {
-		Coordinate coordinate = new Coordinate(lon, lat);
-		com.vividsolutions.jts.geom.Point point = geometryFactory.createPoint(coordinate);
-		try {
-			point = (com.vividsolutions.jts.geom.Point) JTS.transform(point, transform);
-
-			double proportionX;
-			if (point.getX() > bounds.getMaxX() || point.getX() < bounds.getMinX()) {
-				// assume the maxX occurs at longitude 180 (true for EPSG 3857
-				// spherical mercator) but maybe not true for other projections?
-				Coordinate c = new Coordinate(180, 0);
-				com.vividsolutions.jts.geom.Point pt = (com.vividsolutions.jts.geom.Point) JTS
-				        .transform(geometryFactory.createPoint(c), transform);
-				double maximumX = pt.getX();
-				if (point.getX() > bounds.getMaxX())
-					proportionX = (point.getX() - 2 * maximumX - bounds.getMinX())
-					        / (bounds.getMaxX() - bounds.getMinX());
-				else
-					proportionX = (point.getX() + 2 * maximumX - bounds.getMinX())
-					        / (bounds.getMaxX() - bounds.getMinX());
-			} else {
-				proportionX = (point.getX() - bounds.getMinX())
-				        / (bounds.getMaxX() - bounds.getMinX());
-			}
-			double proportionY = (bounds.getMaxY() - point.getY())
-			        / (bounds.getMaxY() - bounds.getMinY());
-			Point2D.Double point2D = new Point2D.Double(proportionX * target.getWidth(),
-			        proportionY * target.getHeight());
-			return point2D;
-		} catch (MismatchedDimensionException e) {
-			throw new RuntimeException(e);
-		} catch (TransformException e) {
-			throw new RuntimeException(e);
-		}
+		double[] xy = { lon, lat };
+		toTarget(xy);
+		return new Point2D.Double(xy[0], xy[1]);
 	}
 
 	public Position toPosition(double targetX, double targetY) {
-		double proportionX = targetX / target.getWidth();
-		double proportionY = targetY / target.getHeight();
-		double x = proportionX * (bounds.getMaxX() - bounds.getMinX()) + bounds.getMinX();
-		double y = bounds.getMaxY() - proportionY * (bounds.getMaxY() - bounds.getMinY());
-		Coordinate coordinate = new Coordinate(x, y);
-		com.vividsolutions.jts.geom.Point point = geometryFactory.createPoint(coordinate);
-		try {
-			point = (com.vividsolutions.jts.geom.Point) JTS.transform(point, transform.inverse());
-		} catch (MismatchedDimensionException e) {
-			throw new RuntimeException(e);
-		} catch (TransformException e) {
-			throw new RuntimeException(e);
-		}
-		return new Position(point.getY(), point.getX());
+		double[] lonLat = { targetX, targetY };
+		toLonLat(lonLat, 0, lonLat, 0, 1);
+		return new Position(lonLat[1], lonLat[0]);
 	}
 
 	public Position toPositionFromSrs(double x, double y) {
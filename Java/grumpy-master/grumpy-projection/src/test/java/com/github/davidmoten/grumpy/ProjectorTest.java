@@ -38,4 +38,23 @@ public class ProjectorTest {
         System.out.println("x4=" + x4 + " point=" + point4);
     }
 
+    @Test
+    public void testBatchTransformsMatchSinglePointTransforms() {
+        ProjectorTarget target = new ProjectorTarget(300, 200);
+        ProjectorBounds bounds = new ProjectorBounds("EPSG:3857", -20000000, -10000000,
+                20000000, 10000000);
+        Projector projector = new Projector(bounds, target);
+        double[] lonLats = { 140, -35, -70, 10, 0, 0 };
+        double[] xys = new double[lonLats.length];
+        projector.toTarget(lonLats, 0, xys, 0, 3);
+        for (int i = 0; i < lonLats.length; i += 2) {
+            Double point = projector.toPoint2D(lonLats[i + 1], lonLats[i]);
+            assertEquals(point.getX(), xys[i], PRECISION);
+            assertEquals(point.getY(), xys[i + 1], PRECISION);
+        }
+        projector.toLonLat(xys, 0, xys, 0, 3);
+        for (int i = 0; i < lonLats.length; i++)
+            assertEquals(lonLats[i], xys[i], PRECISION);
+    }
+
 }
@@ -21,6 +21,7 @@ import com.github.davidmoten.grumpy.core.Position;
 import com.github.davidmoten.grumpy.projection.Projector;
 import com.github.davidmoten.grumpy.wms.Layer;
 import com.github.davidmoten.grumpy.wms.LayerFeatures;
+import com.github.davidmoten.grumpy.wms.LayerVersion;
 import com.github.davidmoten.grumpy.wms.RendererUtil;
 import com.github.davidmoten.grumpy.wms.WmsRequest;
 import com.github.davidmoten.grumpy.wms.WmsUtil;
@@ -46,8 +47,17 @@ public class CustomLayer implements Layer {
 		box.add(position(PLACE_LAT - 2, PLACE_LON + 4));
 		box.add(position(PLACE_LAT - 2, PLACE_LON - 4));
 
+		// the layer never changes so clients can cache its images
+		final long created = System.currentTimeMillis();
+		LayerVersion version = new LayerVersion() {
+			@Override
+			public long getLastModified() {
+				return created;
+			}
+		};
 		features = LayerFeatures.builder().name("Custom").crs("EPSG:4326")
-				.crs("EPSG:3857").queryable().build();
+				.crs("EPSG:3857").queryable().version(version)
+				.maxAgeSeconds(3600).build();
 	}
 
 	@Override
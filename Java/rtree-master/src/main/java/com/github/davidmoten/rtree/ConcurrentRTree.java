@@ -0,0 +1,479 @@
+package com.github.davidmoten.rtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import rx.functions.Action1;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.HasGeometry;
+import com.github.davidmoten.rtree.geometry.ListPair;
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+import com.google.common.base.Optional;
+
+/**
+ * <p>
+ * Mutable, thread-safe companion to {@link RTree} for high rates of
+ * additions and deletions. Nodes are updated in place so an addition or
+ * deletion allocates very little, unlike {@link RTree} which copies the path
+ * from the root to the changed leaf for every change.
+ * </p>
+ *
+ * <p>
+ * Searches run concurrently with each other under a shared read lock and
+ * changes take an exclusive write lock. When a consistent immutable view is
+ * needed (for example to run Observable searches, nearest neighbour
+ * searches or joins) call {@link #snapshot()}. Snapshots reuse the immutable
+ * nodes of the previous snapshot for subtrees that have not changed since, so
+ * regular snapshots of a tree with localized changes are cheap.
+ * </p>
+ *
+ * <p>
+ * Additions use the minimal area increase heuristic to choose a leaf and the
+ * {@link Splitter} of the {@link Context} to split overflowing nodes.
+ * Deletions reinsert the entries of nodes that fall below
+ * <code>minChildren</code>.
+ * </p>
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class ConcurrentRTree<T, S extends Geometry> {
+
+    private final Context context;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // guards MutableNode.frozen while a read lock is held
+    private final Object snapshotLock = new Object();
+
+    // null when the tree is empty, guarded by lock
+    private MutableNode<T, S> root;
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            options for the R-tree
+     */
+    ConcurrentRTree(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns a new empty {@link ConcurrentRTree} with the default
+     * {@link RTree.Builder} options. Use
+     * {@link RTree.Builder#createConcurrent()} to specify options.
+     *
+     * @param <T>
+     *            the value type of the entries in the tree
+     * @param <S>
+     *            the geometry type of the entries in the tree
+     * @return a new empty tree
+     */
+    public static <T, S extends Geometry> ConcurrentRTree<T, S> create() {
+        return RTree.maxChildren(RTree.MAX_CHILDREN_DEFAULT_GUTTMAN).<T, S> createConcurrent();
+    }
+
+    /**
+     * Adds an entry to the tree.
+     *
+     * @param entry
+     *            entry to add
+     */
+    public void add(Entry<? extends T, ? extends S> entry) {
+        lock.writeLock().lock();
+        try {
+            insert(cast(entry));
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an entry comprised of the given value and geometry to the tree.
+     *
+     * @param value
+     *            the value of the entry to add
+     * @param geometry
+     *            the geometry of the entry to add
+     */
+    public void add(T value, S geometry) {
+        add(Entry.entry(value, geometry));
+    }
+
+    /**
+     * Deletes one entry equal to the given entry from the tree if present.
+     *
+     * @param entry
+     *            entry to delete
+     * @return true if an entry was deleted
+     */
+    public boolean delete(Entry<? extends T, ? extends S> entry) {
+        lock.writeLock().lock();
+        try {
+            if (root == null)
+                return false;
+            MutableNode<T, S> leaf = findLeaf(root, entry, entry.geometry().mbr());
+            if (leaf == null)
+                return false;
+            leaf.entries.remove(entry);
+            size--;
+            condense(leaf);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes one entry comprised of the given value and geometry from the
+     * tree if present.
+     *
+     * @param value
+     *            the value of the entry to delete
+     * @param geometry
+     *            the geometry of the entry to delete
+     * @return true if an entry was deleted
+     */
+    public boolean delete(T value, S geometry) {
+        return delete(Entry.entry(value, geometry));
+    }
+
+    /**
+     * <p>
+     * Calls <code>action</code> for every {@link Entry} in the tree whose
+     * geometry intersects with the given rectangle. The action is called
+     * while a read lock is held so other searches proceed concurrently but
+     * changes wait until the search has finished.
+     * </p>
+     *
+     * <p>
+     * <code>action</code> must not change this tree (the read lock cannot be
+     * upgraded to the write lock so the thread would deadlock).
+     * </p>
+     *
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param action
+     *            called synchronously with each matching entry
+     */
+    public void search(Rectangle r, Action1<? super Entry<T, S>> action) {
+        lock.readLock().lock();
+        try {
+            if (root != null && root.mbr.intersects(r))
+                search(root, r, action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the {@link Entry}s in the tree whose geometry intersects with
+     * the given rectangle.
+     *
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @return a new list of the entries that intersect with r
+     */
+    public List<Entry<T, S>> search(Rectangle r) {
+        final List<Entry<T, S>> list = new ArrayList<Entry<T, S>>();
+        search(r, new Action1<Entry<T, S>>() {
+            @Override
+            public void call(Entry<T, S> entry) {
+                list.add(entry);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Returns the {@link Entry}s in the tree whose geometry intersects with
+     * the given point.
+     *
+     * @param p
+     *            point to check intersection with the entry geometry
+     * @return a new list of the entries that intersect with p
+     */
+    public List<Entry<T, S>> search(Point p) {
+        return search(p.mbr());
+    }
+
+    /**
+     * <p>
+     * Returns an immutable {@link RTree} containing the entries of this tree at
+     * the time of the call. Immutable nodes are cached against the subtrees of
+     * this tree and discarded when a subtree changes, so only the subtrees
+     * changed since the last snapshot are copied.
+     * </p>
+     *
+     * @return immutable copy of this tree
+     */
+    public RTree<T, S> snapshot() {
+        lock.readLock().lock();
+        try {
+            synchronized (snapshotLock) {
+                if (root == null)
+                    return new RTree<T, S>(Optional.<Node<T, S>> absent(), 0, context);
+                else
+                    return new RTree<T, S>(Optional.of(freeze(root)), size, context);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the tree.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if and only if the tree has no entries.
+     *
+     * @return is tree empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the {@link Context} containing the configuration of the tree.
+     *
+     * @return the configuration of the tree
+     */
+    public Context context() {
+        return context;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, S extends Geometry> Entry<T, S> cast(Entry<? extends T, ? extends S> entry) {
+        // safe because Entry is immutable
+        return (Entry<T, S>) entry;
+    }
+
+    private void insert(Entry<T, S> entry) {
+        Rectangle r = entry.geometry().mbr();
+        if (root == null)
+            root = new MutableNode<T, S>(true, null);
+        MutableNode<T, S> node = root;
+        node.include(r);
+        while (!node.leaf) {
+            node = chooseChild(node.children, r);
+            node.include(r);
+        }
+        node.entries.add(entry);
+        while (node != null && node.count() > context.maxChildren())
+            node = split(node);
+    }
+
+    /**
+     * Returns the child needing the least area increase to include
+     * <code>r</code>, preferring the smaller child on ties.
+     */
+    private static <T, S extends Geometry> MutableNode<T, S> chooseChild(
+            List<MutableNode<T, S>> children, Rectangle r) {
+        MutableNode<T, S> best = null;
+        float bestIncrease = Float.MAX_VALUE;
+        float bestArea = Float.MAX_VALUE;
+        for (int i = 0; i < children.size(); i++) {
+            MutableNode<T, S> child = children.get(i);
+            Rectangle mbr = child.mbr;
+            float area = mbr.area();
+            float increase = (Math.max(mbr.x2(), r.x2()) - Math.min(mbr.x1(), r.x1()))
+                    * (Math.max(mbr.y2(), r.y2()) - Math.min(mbr.y1(), r.y1())) - area;
+            if (increase < bestIncrease || (increase == bestIncrease && area < bestArea)) {
+                best = child;
+                bestIncrease = increase;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Splits an overflowing node in two and returns the parent that received
+     * the new sibling (which may now overflow) or null if a new root was
+     * created.
+     */
+    private MutableNode<T, S> split(MutableNode<T, S> node) {
+        MutableNode<T, S> sibling = new MutableNode<T, S>(node.leaf, node.parent);
+        if (node.leaf) {
+            ListPair<Entry<T, S>> pair = context.splitter().split(node.entries,
+                    context.minChildren());
+            node.entries = new ArrayList<Entry<T, S>>(pair.group1().list());
+            sibling.entries = new ArrayList<Entry<T, S>>(pair.group2().list());
+        } else {
+            ListPair<MutableNode<T, S>> pair = context.splitter().split(node.children,
+                    context.minChildren());
+            node.children = new ArrayList<MutableNode<T, S>>(pair.group1().list());
+            sibling.children = new ArrayList<MutableNode<T, S>>(pair.group2().list());
+            for (MutableNode<T, S> child : sibling.children)
+                child.parent = sibling;
+        }
+        node.recalculateMbr();
+        sibling.recalculateMbr();
+        if (node.parent == null) {
+            MutableNode<T, S> newRoot = new MutableNode<T, S>(false, null);
+            newRoot.children.add(node);
+            newRoot.children.add(sibling);
+            node.parent = newRoot;
+            sibling.parent = newRoot;
+            newRoot.recalculateMbr();
+            root = newRoot;
+            return null;
+        } else {
+            node.parent.children.add(sibling);
+            node.parent.frozen = null;
+            return node.parent;
+        }
+    }
+
+    private static <T, S extends Geometry> MutableNode<T, S> findLeaf(MutableNode<T, S> node,
+            Entry<?, ?> entry, Rectangle r) {
+        if (node.leaf)
+            return node.entries.contains(entry) ? node : null;
+        for (int i = 0; i < node.children.size(); i++) {
+            MutableNode<T, S> child = node.children.get(i);
+            if (child.mbr.intersects(r)) {
+                MutableNode<T, S> leaf = findLeaf(child, entry, r);
+                if (leaf != null)
+                    return leaf;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walks from a leaf that has lost an entry to the root removing nodes that
+     * have fewer than minChildren children, shrinking bounding rectangles and
+     * finally reinserting the entries of removed nodes.
+     */
+    private void condense(MutableNode<T, S> leaf) {
+        List<Entry<T, S>> orphans = new ArrayList<Entry<T, S>>();
+        MutableNode<T, S> node = leaf;
+        while (node.parent != null) {
+            MutableNode<T, S> parent = node.parent;
+            if (node.count() < context.minChildren()) {
+                parent.children.remove(node);
+                addEntries(node, orphans);
+            } else
+                node.recalculateMbr();
+            parent.frozen = null;
+            node = parent;
+        }
+        root.recalculateMbr();
+        while (!root.leaf && root.children.size() == 1) {
+            root = root.children.get(0);
+            root.parent = null;
+        }
+        if (root.count() == 0)
+            root = null;
+        for (Entry<T, S> entry : orphans)
+            insert(entry);
+    }
+
+    private static <T, S extends Geometry> void addEntries(MutableNode<T, S> node,
+            List<Entry<T, S>> list) {
+        if (node.leaf)
+            list.addAll(node.entries);
+        else
+            for (MutableNode<T, S> child : node.children)
+                addEntries(child, list);
+    }
+
+    private static <T, S extends Geometry> void search(MutableNode<T, S> node, Rectangle r,
+            Action1<? super Entry<T, S>> action) {
+        if (node.leaf) {
+            for (int i = 0; i < node.entries.size(); i++) {
+                Entry<T, S> entry = node.entries.get(i);
+                if (entry.geometry().intersects(r))
+                    action.call(entry);
+            }
+        } else {
+            for (int i = 0; i < node.children.size(); i++) {
+                MutableNode<T, S> child = node.children.get(i);
+                if (child.mbr.intersects(r))
+                    search(child, r, action);
+            }
+        }
+    }
+
+    private Node<T, S> freeze(MutableNode<T, S> node) {
+        if (node.frozen == null) {
+            if (node.leaf)
+                node.frozen = new Leaf<T, S>(new ArrayList<Entry<T, S>>(node.entries), context);
+            else {
+                List<Node<T, S>> children = new ArrayList<Node<T, S>>(node.children.size());
+                for (MutableNode<T, S> child : node.children)
+                    children.add(freeze(child));
+                node.frozen = new NonLeaf<T, S>(children, context);
+            }
+        }
+        return node.frozen;
+    }
+
+    private static final class MutableNode<T, S extends Geometry> implements HasGeometry {
+
+        final boolean leaf;
+        MutableNode<T, S> parent;
+        List<Entry<T, S>> entries;
+        List<MutableNode<T, S>> children;
+        // null when the tree is empty
+        Rectangle mbr;
+        // immutable copy of this subtree as at the last snapshot, cleared when
+        // the subtree changes
+        Node<T, S> frozen;
+
+        MutableNode(boolean leaf, MutableNode<T, S> parent) {
+            this.leaf = leaf;
+            this.parent = parent;
+            if (leaf)
+                entries = new ArrayList<Entry<T, S>>();
+            else
+                children = new ArrayList<MutableNode<T, S>>();
+        }
+
+        int count() {
+            return leaf ? entries.size() : children.size();
+        }
+
+        void include(Rectangle r) {
+            frozen = null;
+            if (mbr == null)
+                mbr = r;
+            else if (r.x1() < mbr.x1() || r.y1() < mbr.y1() || r.x2() > mbr.x2()
+                    || r.y2() > mbr.y2())
+                mbr = mbr.add(r);
+        }
+
+        void recalculateMbr() {
+            frozen = null;
+            if (count() == 0)
+                mbr = null;
+            else if (leaf)
+                mbr = Util.mbr(entries);
+            else
+                mbr = Util.mbr(children);
+        }
+
+        @Override
+        public Geometry geometry() {
+            return mbr;
+        }
+    }
+
+}
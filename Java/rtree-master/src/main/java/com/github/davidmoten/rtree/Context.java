@@ -11,6 +11,7 @@ public final class Context {
     private final int minChildren;
     private final Splitter splitter;
     private final Selector selector;
+    private final boolean packedLeaves;
 
     /**
      * Constructor.
@@ -25,6 +26,26 @@ public final class Context {
      *            algorithm to split the children across two new nodes
      */
     public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter) {
+        this(minChildren, maxChildren, selector, splitter, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param minChildren
+     *            minimum number of children per node (at least 1)
+     * @param maxChildren
+     *            max number of children per node (minimum is 3)
+     * @param selector
+     *            algorithm to select search path
+     * @param splitter
+     *            algorithm to split the children across two new nodes
+     * @param packedLeaves
+     *            if true leaves whose entries are all points or all
+     *            rectangles store their coordinates in primitive arrays
+     */
+    public Context(int minChildren, int maxChildren, Selector selector, Splitter splitter,
+            boolean packedLeaves) {
         Preconditions.checkNotNull(splitter);
         Preconditions.checkNotNull(selector);
         Preconditions.checkArgument(maxChildren > 2);
@@ -34,6 +55,7 @@ public final class Context {
         this.maxChildren = maxChildren;
         this.minChildren = minChildren;
         this.splitter = splitter;
+        this.packedLeaves = packedLeaves;
     }
 
     public int maxChildren() {
@@ -52,4 +74,8 @@ public final class Context {
         return selector;
     }
 
+    public boolean packedLeaves() {
+        return packedLeaves;
+    }
+
 }
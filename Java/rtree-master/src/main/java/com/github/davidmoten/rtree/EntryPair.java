@@ -0,0 +1,86 @@
+package com.github.davidmoten.rtree;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.util.ObjectsHelper;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * A pair of entries from two R-trees, as returned by a join of the R-trees.
+ *
+ * @param <T>
+ *            the value type of the left entry
+ * @param <S>
+ *            the geometry type of the left entry
+ * @param <T2>
+ *            the value type of the right entry
+ * @param <S2>
+ *            the geometry type of the right entry
+ */
+public final class EntryPair<T, S extends Geometry, T2, S2 extends Geometry> {
+
+    private final Entry<T, S> left;
+    private final Entry<T2, S2> right;
+
+    /**
+     * Constructor.
+     *
+     * @param left
+     *            entry from the R-tree the join was called on
+     * @param right
+     *            entry from the other R-tree
+     */
+    public EntryPair(Entry<T, S> left, Entry<T2, S2> right) {
+        Preconditions.checkNotNull(left);
+        Preconditions.checkNotNull(right);
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Returns the entry from the R-tree the join was called on.
+     *
+     * @return the left entry
+     */
+    public Entry<T, S> left() {
+        return left;
+    }
+
+    /**
+     * Returns the entry from the other R-tree.
+     *
+     * @return the right entry
+     */
+    public Entry<T2, S2> right() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("EntryPair [left=");
+        builder.append(left);
+        builder.append(", right=");
+        builder.append(right);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(left, right);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        @SuppressWarnings("rawtypes")
+        Optional<EntryPair> other = ObjectsHelper.asClass(obj, EntryPair.class);
+        if (other.isPresent()) {
+            return Objects.equal(left, other.get().left)
+                    && Objects.equal(right, other.get().right);
+        } else
+            return false;
+    }
+
+}
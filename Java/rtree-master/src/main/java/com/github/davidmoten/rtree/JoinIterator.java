@@ -0,0 +1,176 @@
+package com.github.davidmoten.rtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import rx.functions.Func2;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+
+/**
+ * Iterates the pairs of entries from two R-trees whose geometries intersect by
+ * descending both trees at once (a synchronized traversal). Pairs of nodes
+ * whose minimum bounding rectangles don't intersect are pruned along with
+ * everything beneath them. Candidate entry pairs are first checked for
+ * intersecting minimum bounding rectangles and then with the given
+ * intersection function.
+ *
+ * Not thread safe.
+ *
+ * @param <T>
+ *            the value type of the left R-tree
+ * @param <S>
+ *            the geometry type of the left R-tree
+ * @param <T2>
+ *            the value type of the right R-tree
+ * @param <S2>
+ *            the geometry type of the right R-tree
+ */
+final class JoinIterator<T, S extends Geometry, T2, S2 extends Geometry> implements
+        Iterator<EntryPair<T, S, T2, S2>> {
+
+    private final Func2<? super S, ? super S2, Boolean> intersects;
+    private final Deque<NodePair<T, S, T2, S2>> stack = new ArrayDeque<NodePair<T, S, T2, S2>>();
+
+    // the pair of leaves currently being compared (null if none)
+    private List<Entry<T, S>> leftEntries;
+    private List<Entry<T2, S2>> rightEntries;
+    private int i;
+    private int j;
+
+    private EntryPair<T, S, T2, S2> next;
+
+    /**
+     * Constructor. The caller is responsible for checking that the geometries
+     * of the two nodes intersect.
+     *
+     * @param left
+     *            node from the left R-tree
+     * @param right
+     *            node from the right R-tree
+     * @param intersects
+     *            function to check intersection of entry geometries
+     */
+    JoinIterator(Node<T, S> left, Node<T2, S2> right,
+            Func2<? super S, ? super S2, Boolean> intersects) {
+        this.intersects = intersects;
+        stack.push(new NodePair<T, S, T2, S2>(left, right));
+        next = findNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public EntryPair<T, S, T2, S2> next() {
+        if (next == null)
+            throw new NoSuchElementException();
+        EntryPair<T, S, T2, S2> result = next;
+        next = findNext();
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("R-tree is immutable");
+    }
+
+    private EntryPair<T, S, T2, S2> findNext() {
+        while (true) {
+            if (leftEntries != null) {
+                while (i < leftEntries.size()) {
+                    Entry<T, S> left = leftEntries.get(i);
+                    Rectangle mbr = left.geometry().mbr();
+                    while (j < rightEntries.size()) {
+                        Entry<T2, S2> right = rightEntries.get(j);
+                        j++;
+                        if (right.geometry().mbr().intersects(mbr)
+                                && intersects.call(left.geometry(), right.geometry()))
+                            return new EntryPair<T, S, T2, S2>(left, right);
+                    }
+                    i++;
+                    j = 0;
+                }
+                leftEntries = null;
+                rightEntries = null;
+            }
+            if (stack.isEmpty())
+                return null;
+            expand(stack.pop());
+        }
+    }
+
+    private void expand(NodePair<T, S, T2, S2> pair) {
+        Node<T, S> a = pair.left;
+        Node<T2, S2> b = pair.right;
+        boolean aIsLeaf = a instanceof Leaf;
+        boolean bIsLeaf = b instanceof Leaf;
+        if (aIsLeaf && bIsLeaf) {
+            // only entries inside the other leaf's mbr can match
+            leftEntries = entriesIntersecting((Leaf<T, S>) a, b.geometry().mbr());
+            rightEntries = entriesIntersecting((Leaf<T2, S2>) b, a.geometry().mbr());
+            i = 0;
+            j = 0;
+        } else if (aIsLeaf) {
+            for (Node<T2, S2> child : childrenIntersecting((NonLeaf<T2, S2>) b, a.geometry()
+                    .mbr()))
+                stack.push(new NodePair<T, S, T2, S2>(a, child));
+        } else if (bIsLeaf) {
+            for (Node<T, S> child : childrenIntersecting((NonLeaf<T, S>) a, b.geometry().mbr()))
+                stack.push(new NodePair<T, S, T2, S2>(child, b));
+        } else {
+            List<Node<T2, S2>> bChildren = childrenIntersecting((NonLeaf<T2, S2>) b, a.geometry()
+                    .mbr());
+            for (Node<T, S> aChild : childrenIntersecting((NonLeaf<T, S>) a, b.geometry().mbr())) {
+                Rectangle mbr = aChild.geometry().mbr();
+                for (int k = 0; k < bChildren.size(); k++) {
+                    Node<T2, S2> bChild = bChildren.get(k);
+                    if (bChild.geometry().intersects(mbr))
+                        stack.push(new NodePair<T, S, T2, S2>(aChild, bChild));
+                }
+            }
+        }
+    }
+
+    private static <T, S extends Geometry> List<Entry<T, S>> entriesIntersecting(Leaf<T, S> leaf,
+            Rectangle r) {
+        List<Entry<T, S>> entries = leaf.entries();
+        List<Entry<T, S>> list = new ArrayList<Entry<T, S>>(entries.size());
+        for (int k = 0; k < entries.size(); k++) {
+            Entry<T, S> entry = entries.get(k);
+            if (entry.geometry().mbr().intersects(r))
+                list.add(entry);
+        }
+        return list;
+    }
+
+    private static <T, S extends Geometry> List<Node<T, S>> childrenIntersecting(
+            NonLeaf<T, S> node, Rectangle r) {
+        List<? extends Node<T, S>> children = node.children();
+        List<Node<T, S>> list = new ArrayList<Node<T, S>>(children.size());
+        for (int k = 0; k < children.size(); k++) {
+            Node<T, S> child = children.get(k);
+            if (child.geometry().intersects(r))
+                list.add(child);
+        }
+        return list;
+    }
+
+    private static final class NodePair<T, S extends Geometry, T2, S2 extends Geometry> {
+        final Node<T, S> left;
+        final Node<T2, S2> right;
+
+        NodePair(Node<T, S> left, Node<T2, S2> right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.List;
 
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func1;
 
 import com.github.davidmoten.rtree.geometry.Geometry;
@@ -21,9 +22,15 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
     private final Context context;
 
     Leaf(List<Entry<T, S>> entries, Context context) {
-        this.entries = entries;
         this.context = context;
-        this.mbr = Util.mbr(entries);
+        if (context.packedLeaves())
+            this.entries = PackedEntries.pack(entries);
+        else
+            this.entries = entries;
+        if (this.entries instanceof PackedEntries)
+            this.mbr = ((PackedEntries<T, S>) this.entries).mbr();
+        else
+            this.mbr = Util.mbr(entries);
     }
 
     @Override
@@ -52,6 +59,25 @@ final class Leaf<T, S extends Geometry> implements Node<T, S> {
         }
     }
 
+    @Override
+    public void search(Rectangle r, Action1<? super Entry<T, S>> action) {
+        if (entries instanceof PackedEntries) {
+            // test intersection against the primitive coordinates and only
+            // create entries for matches
+            PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+            for (int i = 0; i < packed.size(); i++)
+                if (packed.intersects(i, r))
+                    action.call(packed.get(i));
+            return;
+        }
+        // indexed loop so that no iterator is allocated per visited node
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry<T, S> entry = entries.get(i);
+            if (entry.geometry().intersects(r))
+                action.call(entry);
+        }
+    }
+
     @Override
     public int count() {
         return entries.size();
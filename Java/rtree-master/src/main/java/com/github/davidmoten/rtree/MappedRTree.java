@@ -0,0 +1,479 @@
+package com.github.davidmoten.rtree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import rx.Observable;
+import rx.functions.Action1;
+
+import com.github.davidmoten.rtree.geometry.Circle;
+import com.github.davidmoten.rtree.geometry.Geometries;
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Line;
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Read-only R-tree that is searched directly from a {@link ByteBuffer}
+ * (typically a {@link java.nio.MappedByteBuffer} of a file written by
+ * {@link #write(RTree, Serializer, File)}) without creating node objects.
+ * Opening a file is near instant regardless of the size of the tree and
+ * processes that open the same file share the operating system page cache.
+ * </p>
+ *
+ * <p>
+ * The file layout (big-endian) is nodes written in post-order with the value
+ * bytes of each leaf written just before the leaf, followed by a fixed size
+ * footer:
+ * </p>
+ *
+ * <pre>
+ * leaf     := byte 0, int count, count * (byte geometryType, float a, float b, float c, float d,
+ *                                         int valueOffset, int valueLength)
+ * non-leaf := byte 1, int count, count * (float x1, float y1, float x2, float y2, int childOffset)
+ * footer   := int rootOffset (-1 if empty), int size, int version, int magic
+ * </pre>
+ *
+ * <p>
+ * The geometry floats are <code>x,y,x,y</code> for a {@link Point},
+ * <code>x1,y1,x2,y2</code> for a {@link Rectangle} or {@link Line} and
+ * <code>x,y,radius,0</code> for a {@link Circle}. Other geometry types are not
+ * supported. Offsets are ints so files are limited to 2GB.
+ * </p>
+ *
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+public final class MappedRTree<T, S extends Geometry> {
+
+    private static final int MAGIC = 0x52545245; // "RTRE"
+    private static final int VERSION = 1;
+    private static final int FOOTER_BYTES = 16;
+
+    private static final byte LEAF = 0;
+    private static final byte NON_LEAF = 1;
+
+    private static final byte POINT = 0;
+    private static final byte RECTANGLE = 1;
+    private static final byte CIRCLE = 2;
+    private static final byte LINE = 3;
+
+    private static final int HEADER_BYTES = 5;
+    private static final int ENTRY_BYTES = 25;
+    private static final int CHILD_BYTES = 20;
+
+    private final ByteBuffer bb;
+    private final Serializer<? extends T> serializer;
+    private final int rootOffset;
+    private final int size;
+
+    private MappedRTree(ByteBuffer bb, Serializer<? extends T> serializer) {
+        Preconditions.checkArgument(bb.limit() >= FOOTER_BYTES, "not an R-tree file");
+        int footer = bb.limit() - FOOTER_BYTES;
+        Preconditions.checkArgument(bb.getInt(footer + 12) == MAGIC, "not an R-tree file");
+        Preconditions.checkArgument(bb.getInt(footer + 8) == VERSION,
+                "unsupported R-tree file version");
+        this.bb = bb;
+        this.serializer = serializer;
+        this.rootOffset = bb.getInt(footer);
+        this.size = bb.getInt(footer + 4);
+    }
+
+    /**
+     * Writes the R-tree to the given file in the format described in the class
+     * javadoc, using <code>serializer</code> to convert the entry values to
+     * bytes.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param tree
+     *            R-tree to write
+     * @param serializer
+     *            converts entry values to bytes
+     * @param file
+     *            file to write to (overwritten if it exists)
+     */
+    public static <T, S extends Geometry> void write(RTree<T, S> tree,
+            Serializer<? super T> serializer, File file) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            try {
+                write(tree, serializer, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T, S extends Geometry> void write(RTree<T, S> tree,
+            Serializer<? super T> serializer, DataOutputStream out) throws IOException {
+        final int root;
+        if (tree.root().isPresent())
+            root = write(tree.root().get(), serializer, out);
+        else
+            root = -1;
+        out.writeInt(root);
+        out.writeInt(tree.size());
+        out.writeInt(VERSION);
+        out.writeInt(MAGIC);
+        // DataOutputStream.size() wraps to Integer.MAX_VALUE on overflow
+        if (out.size() == Integer.MAX_VALUE)
+            throw new IOException("R-tree too large to write (2GB limit)");
+    }
+
+    private static <T, S extends Geometry> int write(Node<T, S> node,
+            Serializer<? super T> serializer, DataOutputStream out) throws IOException {
+        if (node instanceof Leaf) {
+            List<Entry<T, S>> entries = ((Leaf<T, S>) node).entries();
+            int n = entries.size();
+            int[] valueOffsets = new int[n];
+            int[] valueLengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                byte[] bytes = serializer.serialize(entries.get(i).value());
+                valueOffsets[i] = out.size();
+                valueLengths[i] = bytes.length;
+                out.write(bytes);
+            }
+            int offset = out.size();
+            out.writeByte(LEAF);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                writeGeometry(entries.get(i).geometry(), out);
+                out.writeInt(valueOffsets[i]);
+                out.writeInt(valueLengths[i]);
+            }
+            return offset;
+        } else {
+            List<? extends Node<T, S>> children = ((NonLeaf<T, S>) node).children();
+            int n = children.size();
+            int[] childOffsets = new int[n];
+            for (int i = 0; i < n; i++)
+                childOffsets[i] = write(children.get(i), serializer, out);
+            int offset = out.size();
+            out.writeByte(NON_LEAF);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                Rectangle r = children.get(i).geometry().mbr();
+                out.writeFloat(r.x1());
+                out.writeFloat(r.y1());
+                out.writeFloat(r.x2());
+                out.writeFloat(r.y2());
+                out.writeInt(childOffsets[i]);
+            }
+            return offset;
+        }
+    }
+
+    private static void writeGeometry(Geometry g, DataOutputStream out) throws IOException {
+        if (g instanceof Point) {
+            Point p = (Point) g;
+            writeGeometry(POINT, p.x(), p.y(), p.x(), p.y(), out);
+        } else if (g instanceof Rectangle) {
+            Rectangle r = (Rectangle) g;
+            writeGeometry(RECTANGLE, r.x1(), r.y1(), r.x2(), r.y2(), out);
+        } else if (g instanceof Circle) {
+            Circle c = (Circle) g;
+            writeGeometry(CIRCLE, c.x(), c.y(), c.radius(), 0, out);
+        } else if (g instanceof Line) {
+            Line line = (Line) g;
+            writeGeometry(LINE, line.x1(), line.y1(), line.x2(), line.y2(), out);
+        } else
+            throw new IllegalArgumentException("geometry type not supported: " + g.getClass());
+    }
+
+    private static void writeGeometry(byte type, float a, float b, float c, float d,
+            DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeFloat(a);
+        out.writeFloat(b);
+        out.writeFloat(c);
+        out.writeFloat(d);
+    }
+
+    /**
+     * Opens a file written by {@link #write(RTree, Serializer, File)} by
+     * mapping it read-only into memory.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param file
+     *            file to open
+     * @param serializer
+     *            converts bytes back to entry values
+     * @return R-tree that searches the mapped file
+     */
+    public static <T, S extends Geometry> MappedRTree<T, S> open(File file,
+            Serializer<? extends T> serializer) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                // the mapping remains valid after the channel is closed
+                return open(channel.map(MapMode.READ_ONLY, 0, channel.size()), serializer);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns an R-tree that searches the given buffer which must contain the
+     * bytes of a file written by {@link #write(RTree, Serializer, File)}. The
+     * buffer position is ignored and the buffer is not modified.
+     *
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param bb
+     *            buffer containing the serialized R-tree
+     * @param serializer
+     *            converts bytes back to entry values
+     * @return R-tree that searches the buffer
+     */
+    public static <T, S extends Geometry> MappedRTree<T, S> open(ByteBuffer bb,
+            Serializer<? extends T> serializer) {
+        return new MappedRTree<T, S>(bb, serializer);
+    }
+
+    /**
+     * Returns the number of entries in the R-tree.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if and only if the R-tree is empty of entries.
+     *
+     * @return is R-tree empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose geometry intersects with the given rectangle. Supports
+     * backpressure.
+     *
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @return entries that intersect with the rectangle r
+     */
+    public Observable<Entry<T, S>> search(final Rectangle r) {
+        return Observable.from(new Iterable<Entry<T, S>>() {
+            @Override
+            public Iterator<Entry<T, S>> iterator() {
+                return searchIterator(r);
+            }
+        });
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose geometry intersects with the given point.
+     *
+     * @param p
+     *            point to check intersection with the entry geometry
+     * @return entries that intersect with the point p
+     */
+    public Observable<Entry<T, S>> search(Point p) {
+        return search(p.mbr());
+    }
+
+    /**
+     * Calls <code>action</code> synchronously for every {@link Entry} in the
+     * R-tree whose geometry intersects with the given rectangle.
+     *
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param action
+     *            called synchronously with each matching entry
+     */
+    public void search(Rectangle r, Action1<? super Entry<T, S>> action) {
+        Iterator<Entry<T, S>> it = searchIterator(r);
+        while (it.hasNext())
+            action.call(it.next());
+    }
+
+    /**
+     * Returns an {@link Iterator} over all {@link Entry}s in the R-tree whose
+     * geometry intersects with the given rectangle.
+     *
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @return iterator over the entries that intersect with r
+     */
+    public Iterator<Entry<T, S>> searchIterator(Rectangle r) {
+        return new BufferSearchIterator(Optional.of(r));
+    }
+
+    /**
+     * Returns all entries in the tree as an {@link Observable} sequence.
+     *
+     * @return all entries in the R-tree
+     */
+    public Observable<Entry<T, S>> entries() {
+        return Observable.from(new Iterable<Entry<T, S>>() {
+            @Override
+            public Iterator<Entry<T, S>> iterator() {
+                return new BufferSearchIterator(Optional.<Rectangle> absent());
+            }
+        });
+    }
+
+    private static boolean intersects(float x1, float y1, float x2, float y2, Rectangle r) {
+        return x1 <= r.x2() && x2 >= r.x1() && y1 <= r.y2() && y2 >= r.y1();
+    }
+
+    /**
+     * Depth first traversal of the buffer using a stack of node offsets and
+     * positions. Not thread safe.
+     */
+    private final class BufferSearchIterator implements Iterator<Entry<T, S>> {
+
+        private final Optional<Rectangle> r;
+        private int[] offsets = new int[8];
+        private int[] positions = new int[8];
+        // index of the top of the stack, -1 when the search is finished
+        private int top;
+        private Entry<T, S> next;
+
+        BufferSearchIterator(Optional<Rectangle> r) {
+            this.r = r;
+            if (rootOffset == -1)
+                top = -1;
+            else {
+                offsets[0] = rootOffset;
+                top = 0;
+            }
+            next = findNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<T, S> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Entry<T, S> result = next;
+            next = findNext();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("R-tree is read only");
+        }
+
+        private Entry<T, S> findNext() {
+            while (top >= 0) {
+                final int offset = offsets[top];
+                final int position = positions[top];
+                if (position == bb.getInt(offset + 1)) {
+                    // finished with this node so pop it
+                    top--;
+                } else {
+                    positions[top] = position + 1;
+                    if (bb.get(offset) == LEAF) {
+                        int entryOffset = offset + HEADER_BYTES + position * ENTRY_BYTES;
+                        Optional<Entry<T, S>> entry = entryIfMatches(entryOffset);
+                        if (entry.isPresent())
+                            return entry.get();
+                    } else {
+                        int childOffset = offset + HEADER_BYTES + position * CHILD_BYTES;
+                        if (!r.isPresent()
+                                || intersects(bb.getFloat(childOffset),
+                                        bb.getFloat(childOffset + 4),
+                                        bb.getFloat(childOffset + 8),
+                                        bb.getFloat(childOffset + 12), r.get()))
+                            push(bb.getInt(childOffset + 16));
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void push(int offset) {
+            top++;
+            if (top == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            offsets[top] = offset;
+            positions[top] = 0;
+        }
+
+        private Optional<Entry<T, S>> entryIfMatches(int offset) {
+            byte type = bb.get(offset);
+            float a = bb.getFloat(offset + 1);
+            float b = bb.getFloat(offset + 5);
+            float c = bb.getFloat(offset + 9);
+            float d = bb.getFloat(offset + 13);
+            final Geometry g;
+            if (type == POINT || type == RECTANGLE) {
+                // the stored floats are the mbr so no need to create the
+                // geometry unless it matches
+                if (r.isPresent() && !intersects(a, b, c, d, r.get()))
+                    return Optional.absent();
+                else if (type == POINT)
+                    g = Geometries.point(a, b);
+                else
+                    g = Geometries.rectangle(a, b, c, d);
+            } else {
+                if (type == CIRCLE)
+                    g = Geometries.circle(a, b, c);
+                else
+                    g = Geometries.line(a, b, c, d);
+                if (r.isPresent() && !g.intersects(r.get()))
+                    return Optional.absent();
+            }
+            return Optional.of(createEntry(g, bb.getInt(offset + 17), bb.getInt(offset + 21)));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Entry<T, S> createEntry(Geometry g, int valueOffset, int valueLength) {
+            byte[] bytes = new byte[valueLength];
+            ByteBuffer values = bb.duplicate();
+            values.position(valueOffset);
+            values.get(bytes);
+            return Entry.entry((T) serializer.deserialize(bytes), (S) g);
+        }
+    }
+
+}
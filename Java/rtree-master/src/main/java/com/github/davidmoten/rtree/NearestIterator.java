@@ -0,0 +1,120 @@
+package com.github.davidmoten.rtree;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import rx.functions.Func1;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.google.common.base.Optional;
+
+/**
+ * Iterates the entries of an R-tree in ascending order of distance using the
+ * best-first traversal of Hjaltason and Samet. Nodes and entries share one
+ * priority queue keyed by distance so a node is only expanded when it is
+ * closer than every entry not yet returned. The cost of returning the first k
+ * entries depends on k and the local density of the tree rather than on the
+ * size of the tree or any maximum distance.
+ *
+ * <p>
+ * The distance function is applied to the geometry of nodes (their minimum
+ * bounding rectangles) as well as entries so it must never return a distance
+ * for a node greater than the distance for any entry within it.
+ * </p>
+ *
+ * Not thread safe.
+ *
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+final class NearestIterator<T, S extends Geometry> implements Iterator<Entry<T, S>> {
+
+    private final Func1<? super Geometry, Double> distance;
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(16,
+            CANDIDATE_COMPARATOR);
+
+    NearestIterator(Optional<? extends Node<T, S>> root, Func1<? super Geometry, Double> distance) {
+        this.distance = distance;
+        if (root.isPresent())
+            queue.add(new Candidate(distance(root.get().geometry()), root.get(), false));
+    }
+
+    @Override
+    public boolean hasNext() {
+        expandUntilEntryAtHead();
+        return !queue.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Entry<T, S> next() {
+        expandUntilEntryAtHead();
+        if (queue.isEmpty())
+            throw new NoSuchElementException();
+        return (Entry<T, S>) queue.poll().item;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("R-tree is immutable");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expandUntilEntryAtHead() {
+        while (!queue.isEmpty() && !queue.peek().isEntry) {
+            Node<T, S> node = (Node<T, S>) queue.poll().item;
+            if (node instanceof Leaf) {
+                List<Entry<T, S>> entries = ((Leaf<T, S>) node).entries();
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry<T, S> entry = entries.get(i);
+                    queue.add(new Candidate(distance(entry.geometry()), entry, true));
+                }
+            } else {
+                List<? extends Node<T, S>> children = ((NonLeaf<T, S>) node).children();
+                for (int i = 0; i < children.size(); i++) {
+                    Node<T, S> child = children.get(i);
+                    queue.add(new Candidate(distance(child.geometry()), child, false));
+                }
+            }
+        }
+    }
+
+    private double distance(Geometry g) {
+        return distance.call(g);
+    }
+
+    private static final class Candidate {
+        final double distance;
+        final Object item;
+        final boolean isEntry;
+
+        Candidate(double distance, Object item, boolean isEntry) {
+            this.distance = distance;
+            this.item = item;
+            this.isEntry = isEntry;
+        }
+    }
+
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = new Comparator<Candidate>() {
+
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            int result = Double.compare(a.distance, b.distance);
+            if (result != 0)
+                return result;
+            // at equal distance return entries before expanding nodes
+            else if (a.isEntry == b.isEntry)
+                return 0;
+            else if (a.isEntry)
+                return -1;
+            else
+                return 1;
+        }
+    };
+
+}
@@ -3,10 +3,12 @@ package com.github.davidmoten.rtree;
 import java.util.List;
 
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func1;
 
 import com.github.davidmoten.rtree.geometry.Geometry;
 import com.github.davidmoten.rtree.geometry.HasGeometry;
+import com.github.davidmoten.rtree.geometry.Rectangle;
 
 interface Node<T, S extends Geometry> extends HasGeometry {
 
@@ -17,6 +19,18 @@ interface Node<T, S extends Geometry> extends HasGeometry {
     void search(Func1<? super Geometry, Boolean> condition,
             Subscriber<? super Entry<T, S>> subscriber);
 
+    /**
+     * Calls the action for every entry under this node that intersects the
+     * rectangle. The caller is responsible for checking that this node
+     * intersects the rectangle.
+     * 
+     * @param r
+     *            rectangle to check intersection with
+     * @param action
+     *            called with each matching entry
+     */
+    void search(Rectangle r, Action1<? super Entry<T, S>> action);
+
     int count();
 
 }
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.List;
 
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func1;
 
 import com.github.davidmoten.rtree.geometry.Geometry;
@@ -48,6 +49,16 @@ final class NonLeaf<T, S extends Geometry> implements Node<T, S> {
         }
     }
 
+    @Override
+    public void search(Rectangle r, Action1<? super Entry<T, S>> action) {
+        // indexed loop so that no iterator is allocated per visited node
+        for (int i = 0; i < children.size(); i++) {
+            final Node<T, S> child = children.get(i);
+            if (child.geometry().intersects(r))
+                child.search(r, action);
+        }
+    }
+
     @Override
     public int count() {
         return children.size();
@@ -0,0 +1,175 @@
+package com.github.davidmoten.rtree;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+
+/**
+ * <p>
+ * An immutable list of entries stored as a struct of arrays: the coordinates
+ * of all entries are held contiguously in a single <code>float[]</code> (two
+ * floats per {@link Point}, four per {@link Rectangle}) alongside an array of
+ * values. For a {@link Point} entry this takes 12 bytes of storage instead of
+ * the roughly 80 bytes used by an {@link Entry}, its {@link Point} and the
+ * {@link Rectangle} that the point holds.
+ * </p>
+ * 
+ * <p>
+ * Entries are created on demand by {@link #get(int)} so callers that only need
+ * to test intersection should use {@link #intersects(int, Rectangle)} which
+ * runs against the primitive coordinates.
+ * </p>
+ * 
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+final class PackedEntries<T, S extends Geometry> extends AbstractList<Entry<T, S>> implements
+        RandomAccess {
+
+    private static final int POINT_STRIDE = 2;
+    private static final int RECTANGLE_STRIDE = 4;
+
+    private final float[] coordinates;
+    private final Object[] values;
+    private final boolean points;
+
+    private PackedEntries(float[] coordinates, Object[] values, boolean points) {
+        this.coordinates = coordinates;
+        this.values = values;
+        this.points = points;
+    }
+
+    /**
+     * Returns a packed copy of the given entries if every geometry is a
+     * {@link Point} or every geometry is a {@link Rectangle}, otherwise returns
+     * the entries unchanged.
+     * 
+     * @param <T>
+     *            the entry value type
+     * @param <S>
+     *            the entry geometry type
+     * @param entries
+     *            entries to pack
+     * @return packed entries or the original list if cannot be packed
+     */
+    static <T, S extends Geometry> List<Entry<T, S>> pack(List<Entry<T, S>> entries) {
+        if (entries instanceof PackedEntries || entries.isEmpty())
+            return entries;
+        else if (allInstancesOf(entries, Point.class))
+            return packPoints(entries);
+        else if (allInstancesOf(entries, Rectangle.class))
+            return packRectangles(entries);
+        else
+            return entries;
+    }
+
+    private static boolean allInstancesOf(List<? extends Entry<?, ?>> entries, Class<?> cls) {
+        for (int i = 0; i < entries.size(); i++)
+            if (entries.get(i).geometry().getClass() != cls)
+                return false;
+        return true;
+    }
+
+    private static <T, S extends Geometry> PackedEntries<T, S> packPoints(List<Entry<T, S>> entries) {
+        int n = entries.size();
+        float[] coordinates = new float[n * POINT_STRIDE];
+        Object[] values = new Object[n];
+        for (int i = 0; i < n; i++) {
+            Entry<T, S> entry = entries.get(i);
+            Point p = (Point) entry.geometry();
+            coordinates[i * POINT_STRIDE] = p.x();
+            coordinates[i * POINT_STRIDE + 1] = p.y();
+            values[i] = entry.value();
+        }
+        return new PackedEntries<T, S>(coordinates, values, true);
+    }
+
+    private static <T, S extends Geometry> PackedEntries<T, S> packRectangles(
+            List<Entry<T, S>> entries) {
+        int n = entries.size();
+        float[] coordinates = new float[n * RECTANGLE_STRIDE];
+        Object[] values = new Object[n];
+        for (int i = 0; i < n; i++) {
+            Entry<T, S> entry = entries.get(i);
+            Rectangle r = (Rectangle) entry.geometry();
+            int j = i * RECTANGLE_STRIDE;
+            coordinates[j] = r.x1();
+            coordinates[j + 1] = r.y1();
+            coordinates[j + 2] = r.x2();
+            coordinates[j + 3] = r.y2();
+            values[i] = entry.value();
+        }
+        return new PackedEntries<T, S>(coordinates, values, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Entry<T, S> get(int index) {
+        final Geometry g;
+        if (points)
+            g = Point.create(coordinates[index * POINT_STRIDE],
+                    coordinates[index * POINT_STRIDE + 1]);
+        else {
+            int j = index * RECTANGLE_STRIDE;
+            g = Rectangle.create(coordinates[j], coordinates[j + 1], coordinates[j + 2],
+                    coordinates[j + 3]);
+        }
+        return Entry.entry((T) values[index], (S) g);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns true if and only if the geometry of the entry at the given index
+     * intersects the rectangle. Does not allocate.
+     * 
+     * @param index
+     *            index of the entry
+     * @param r
+     *            rectangle to check intersection with
+     * @return true if the entry intersects r
+     */
+    boolean intersects(int index, Rectangle r) {
+        if (points) {
+            float x = coordinates[index * POINT_STRIDE];
+            float y = coordinates[index * POINT_STRIDE + 1];
+            return x >= r.x1() && x <= r.x2() && y >= r.y1() && y <= r.y2();
+        } else {
+            int j = index * RECTANGLE_STRIDE;
+            return coordinates[j] <= r.x2() && coordinates[j + 2] >= r.x1()
+                    && coordinates[j + 1] <= r.y2() && coordinates[j + 3] >= r.y1();
+        }
+    }
+
+    /**
+     * Returns the minimum bounding rectangle of all the entries.
+     * 
+     * @return minimum bounding rectangle
+     */
+    Rectangle mbr() {
+        final int stride = points ? POINT_STRIDE : RECTANGLE_STRIDE;
+        // for points x2,y2 are the same as x1,y1
+        final int offset = points ? 0 : 2;
+        float minX1 = Float.MAX_VALUE;
+        float minY1 = Float.MAX_VALUE;
+        float maxX2 = -Float.MAX_VALUE;
+        float maxY2 = -Float.MAX_VALUE;
+        for (int j = 0; j < coordinates.length; j += stride) {
+            minX1 = Math.min(minX1, coordinates[j]);
+            minY1 = Math.min(minY1, coordinates[j + 1]);
+            maxX2 = Math.max(maxX2, coordinates[j + offset]);
+            maxY2 = Math.max(maxY2, coordinates[j + offset + 1]);
+        }
+        return Rectangle.create(minX1, minY1, maxX2, maxY2);
+    }
+
+}
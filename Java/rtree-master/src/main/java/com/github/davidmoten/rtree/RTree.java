@@ -4,22 +4,37 @@ import static com.github.davidmoten.rtree.geometry.Geometries.rectangle;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.davidmoten.rtree.geometry.Circle;
+import com.github.davidmoten.rtree.geometry.Geographic;
 import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.HasGeometry;
 import com.github.davidmoten.rtree.geometry.Intersects;
 import com.github.davidmoten.rtree.geometry.Line;
 import com.github.davidmoten.rtree.geometry.Point;
 import com.github.davidmoten.rtree.geometry.Rectangle;
-import com.github.davidmoten.rx.operators.OperatorBoundedPriorityQueue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.observers.Subscribers;
 
 /**
  * Immutable in-memory 2D R-Tree with configurable splitter heuristic.
@@ -46,6 +61,12 @@ public final class RTree<T, S extends Geometry> {
      */
     public static final int MAX_CHILDREN_DEFAULT_STAR = 4;
 
+    /**
+     * Estimated number of entries in a subtree below which a parallel search
+     * searches the subtree as a single task.
+     */
+    public static final int PARALLEL_SEARCH_SUBTREE_SIZE_DEFAULT = 4096;
+
     /**
      * Current size in Entries of the RTree.
      */
@@ -59,7 +80,7 @@ public final class RTree<T, S extends Geometry> {
      * @param context
      *            options for the R-tree
      */
-    private RTree(Optional<? extends Node<T, S>> root, int size, Context context) {
+    RTree(Optional<? extends Node<T, S>> root, int size, Context context) {
         this.root = root;
         this.size = size;
         this.context = context;
@@ -101,6 +122,23 @@ public final class RTree<T, S extends Geometry> {
         return new Builder().create();
     }
 
+    /**
+     * Returns a new R-tree containing the given entries built using the
+     * Sort-Tile-Recursive (STR) bulk loading algorithm and the default
+     * {@link Builder} options. See {@link Builder#create(List)}.
+     * 
+     * @param <T>
+     *            the value type of the entries in the tree
+     * @param <S>
+     *            the geometry type of the entries in the tree
+     * @param entries
+     *            entries to be loaded into the tree
+     * @return a new RTree instance containing the entries
+     */
+    public static <T, S extends Geometry> RTree<T, S> create(List<Entry<T, S>> entries) {
+        return new Builder().create(entries);
+    }
+
     /**
      * The tree is scanned for depth and the depth returned. This involves
      * recursing down to the leaf level of the tree to get the current depth.
@@ -150,6 +188,18 @@ public final class RTree<T, S extends Geometry> {
         return new Builder().maxChildren(maxChildren);
     }
 
+    /**
+     * Sets the proportion of maxChildren that nodes are filled to when the tree
+     * is bulk loaded using {@link Builder#create(List)}.
+     * 
+     * @param loadingFactor
+     *            proportion of maxChildren to fill nodes to, must be in (0,1]
+     * @return builder
+     */
+    public static Builder loadingFactor(double loadingFactor) {
+        return new Builder().loadingFactor(loadingFactor);
+    }
+
     /**
      * Sets the {@link Splitter} to use when maxChildren is reached.
      * 
@@ -184,6 +234,17 @@ public final class RTree<T, S extends Geometry> {
         return new Builder().star();
     }
 
+    /**
+     * Stores the entries of leaf nodes in primitive arrays when all the
+     * geometries in a leaf are {@link Point}s or all are {@link Rectangle}s.
+     * See {@link Builder#packedLeaves()}.
+     * 
+     * @return builder
+     */
+    public static Builder packedLeaves() {
+        return new Builder().packedLeaves();
+    }
+
     /**
      * RTree Builder.
      */
@@ -196,11 +257,19 @@ public final class RTree<T, S extends Geometry> {
          * quadratic split and R*-tree split.
          */
         private static final double DEFAULT_FILLING_FACTOR = 0.4;
+
+        /**
+         * Leaves some room in bulk loaded nodes so that subsequent additions
+         * don't immediately force node splits.
+         */
+        private static final double DEFAULT_LOADING_FACTOR = 0.7;
         private Optional<Integer> maxChildren = absent();
         private Optional<Integer> minChildren = absent();
         private Splitter splitter = new SplitterQuadratic();
         private Selector selector = new SelectorMinimalAreaIncrease();
         private boolean star = false;
+        private double loadingFactor = DEFAULT_LOADING_FACTOR;
+        private boolean packedLeaves = false;
 
         private Builder() {
         }
@@ -232,6 +301,23 @@ public final class RTree<T, S extends Geometry> {
             return this;
         }
 
+        /**
+         * Sets the proportion of maxChildren that nodes are filled to when the
+         * tree is bulk loaded using {@link #create(List)}. A lower value leaves
+         * more room for subsequent additions before nodes split.
+         * 
+         * @param loadingFactor
+         *            proportion of maxChildren to fill nodes to, must be in
+         *            (0,1]
+         * @return builder
+         */
+        public Builder loadingFactor(double loadingFactor) {
+            Preconditions.checkArgument(loadingFactor > 0 && loadingFactor <= 1,
+                    "loadingFactor must be in (0,1]");
+            this.loadingFactor = loadingFactor;
+            return this;
+        }
+
         /**
          * Sets the {@link Splitter} to use when maxChildren is reached.
          * 
@@ -270,6 +356,32 @@ public final class RTree<T, S extends Geometry> {
             return this;
         }
 
+        /**
+         * <p>
+         * Stores the entries of leaf nodes as a struct of arrays (coordinates
+         * in a contiguous <code>float[]</code> next to an array of values)
+         * when all the geometries in a leaf are {@link Point}s or all are
+         * {@link Rectangle}s. This reduces memory use for a {@link Point} tree
+         * by more than half and intersection tests in
+         * {@link RTree#search(Rectangle, Action1)} and
+         * {@link RTree#searchIterator(Rectangle)} run over the primitive
+         * coordinates.
+         * </p>
+         * 
+         * <p>
+         * The trade-off is that entries are recreated whenever they are read
+         * from a leaf, so {@link Observable} searches and modifications of the
+         * tree allocate more. Entries emitted from the tree are equal to (but
+         * not the same instance as) the entries that were added.
+         * </p>
+         * 
+         * @return builder
+         */
+        public Builder packedLeaves() {
+            this.packedLeaves = true;
+            return this;
+        }
+
         /**
          * Builds the {@link RTree}.
          * 
@@ -280,6 +392,60 @@ public final class RTree<T, S extends Geometry> {
          * @return RTree
          */
         public <T, S extends Geometry> RTree<T, S> create() {
+            return new RTree<T, S>(createContext());
+        }
+
+        /**
+         * <p>
+         * Builds an {@link RTree} containing the given entries using the
+         * Sort-Tile-Recursive (STR) packing algorithm. This is much faster than
+         * adding the entries one at a time and produces nodes with less overlap
+         * than the incremental {@link Splitter} heuristics, so that subsequent
+         * searches visit fewer nodes.
+         * </p>
+         * 
+         * <p>
+         * Nodes are filled to <code>loadingFactor * maxChildren</code> and
+         * entries are distributed evenly so that every node except the root has
+         * at least <code>minChildren</code> children. The list passed in is
+         * not modified.
+         * </p>
+         * 
+         * @param <T>
+         *            value type
+         * @param <S>
+         *            geometry type
+         * @param entries
+         *            entries to be loaded into the tree
+         * @return RTree
+         */
+        public <T, S extends Geometry> RTree<T, S> create(List<Entry<T, S>> entries) {
+            Context context = createContext();
+            if (entries.isEmpty())
+                return new RTree<T, S>(context);
+            int capacity = Math.max(2, (int) Math.round(maxChildren.get() * loadingFactor));
+            List<Node<T, S>> nodes = packLeaves(entries, capacity, context);
+            while (nodes.size() > 1)
+                nodes = packNonLeaves(nodes, capacity, context);
+            return new RTree<T, S>(nodes.get(0), entries.size(), context);
+        }
+
+        /**
+         * Builds an empty {@link ConcurrentRTree}, a mutable thread-safe R-tree
+         * that can be exported to an {@link RTree} with
+         * {@link ConcurrentRTree#snapshot()}.
+         * 
+         * @param <T>
+         *            value type
+         * @param <S>
+         *            geometry type
+         * @return ConcurrentRTree
+         */
+        public <T, S extends Geometry> ConcurrentRTree<T, S> createConcurrent() {
+            return new ConcurrentRTree<T, S>(createContext());
+        }
+
+        private Context createContext() {
             if (!maxChildren.isPresent())
                 if (star)
                     maxChildren = of(MAX_CHILDREN_DEFAULT_STAR);
@@ -287,12 +453,106 @@ public final class RTree<T, S extends Geometry> {
                     maxChildren = of(MAX_CHILDREN_DEFAULT_GUTTMAN);
             if (!minChildren.isPresent())
                 minChildren = of((int) Math.round(maxChildren.get() * DEFAULT_FILLING_FACTOR));
-            return new RTree<T, S>(
-                    new Context(minChildren.get(), maxChildren.get(), selector, splitter));
+            return new Context(minChildren.get(), maxChildren.get(), selector, splitter,
+                    packedLeaves);
+        }
+
+        private static <T, S extends Geometry> List<Node<T, S>> packLeaves(
+                List<Entry<T, S>> entries, int capacity, Context context) {
+            List<List<Entry<T, S>>> groups = sortTileRecursive(entries, capacity, context);
+            List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(groups.size());
+            for (List<Entry<T, S>> group : groups)
+                nodes.add(new Leaf<T, S>(group, context));
+            return nodes;
+        }
+
+        private static <T, S extends Geometry> List<Node<T, S>> packNonLeaves(
+                List<Node<T, S>> children, int capacity, Context context) {
+            List<List<Node<T, S>>> groups = sortTileRecursive(children, capacity, context);
+            List<Node<T, S>> nodes = new ArrayList<Node<T, S>>(groups.size());
+            for (List<Node<T, S>> group : groups)
+                nodes.add(new NonLeaf<T, S>(group, context));
+            return nodes;
+        }
+
+        /**
+         * Partitions the items into groups that will become the nodes of one
+         * level of the tree. Items are sorted by the x ordinate of their mbr
+         * centre and cut into <code>ceil(sqrt(groupCount))</code> vertical
+         * slices, then each slice is sorted by the y ordinate and cut into
+         * groups. Group sizes differ by at most one so that minChildren and
+         * maxChildren are honoured.
+         */
+        @VisibleForTesting
+        static <R extends HasGeometry> List<List<R>> sortTileRecursive(List<R> items,
+                int capacity, Context context) {
+            int n = items.size();
+            int groupCount = groupCount(n, capacity, context);
+            List<List<R>> groups = new ArrayList<List<R>>(groupCount);
+            if (groupCount == 1) {
+                groups.add(new ArrayList<R>(items));
+                return groups;
+            }
+            List<R> sorted = new ArrayList<R>(items);
+            Collections.sort(sorted, CENTRE_X_COMPARATOR);
+            int sliceCount = (int) Math.ceil(Math.sqrt(groupCount));
+            int group = 0;
+            int start = 0;
+            for (int slice = 0; slice < sliceCount; slice++) {
+                // the groups of this slice
+                int groupsInSlice = groupCount / sliceCount
+                        + (slice < groupCount % sliceCount ? 1 : 0);
+                int sliceSize = 0;
+                for (int i = 0; i < groupsInSlice; i++)
+                    sliceSize += groupSize(n, groupCount, group + i);
+                List<R> sliceItems = new ArrayList<R>(sorted.subList(start, start + sliceSize));
+                Collections.sort(sliceItems, CENTRE_Y_COMPARATOR);
+                int sliceStart = 0;
+                for (int i = 0; i < groupsInSlice; i++) {
+                    int size = groupSize(n, groupCount, group);
+                    groups.add(new ArrayList<R>(sliceItems.subList(sliceStart, sliceStart
+                            + size)));
+                    sliceStart += size;
+                    group++;
+                }
+                start += sliceSize;
+            }
+            return groups;
+        }
+
+        private static int groupCount(int n, int capacity, Context context) {
+            int count = (n + capacity - 1) / capacity;
+            // don't let the groups get too small
+            count = Math.min(count, n / context.minChildren());
+            // or too large
+            count = Math.max(count, (n + context.maxChildren() - 1) / context.maxChildren());
+            return Math.max(1, count);
+        }
+
+        private static int groupSize(int n, int groupCount, int group) {
+            return n / groupCount + (group < n % groupCount ? 1 : 0);
         }
 
     }
 
+    private static final Comparator<HasGeometry> CENTRE_X_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry g1, HasGeometry g2) {
+            Rectangle r1 = g1.geometry().mbr();
+            Rectangle r2 = g2.geometry().mbr();
+            return Float.compare(r1.x1() + r1.x2(), r2.x1() + r2.x2());
+        }
+    };
+
+    private static final Comparator<HasGeometry> CENTRE_Y_COMPARATOR = new Comparator<HasGeometry>() {
+        @Override
+        public int compare(HasGeometry g1, HasGeometry g2) {
+            Rectangle r1 = g1.geometry().mbr();
+            Rectangle r2 = g2.geometry().mbr();
+            return Float.compare(r1.y1() + r1.y2(), r2.y1() + r2.y2());
+        }
+    };
+
     /**
      * Returns an immutable copy of the RTree with the addition of given entry.
      * 
@@ -548,6 +808,13 @@ public final class RTree<T, S extends Geometry> {
         }
     };
 
+    private static final Func2<Object, Object, Boolean> ALWAYS_TRUE_PAIR = new Func2<Object, Object, Boolean>() {
+        @Override
+        public Boolean call(Object a, Object b) {
+            return true;
+        }
+    };
+
     /**
      * Returns an {@link Observable} sequence of all {@link Entry}s in the
      * R-tree whose minimum bounding rectangle intersects with the given
@@ -573,6 +840,246 @@ public final class RTree<T, S extends Geometry> {
         return search(p.mbr());
     }
 
+    /**
+     * <p>
+     * Calls <code>action</code> for every {@link Entry} in the R-tree whose
+     * geometry intersects with the given rectangle. The search happens
+     * synchronously on the calling thread and does not allocate per visited
+     * node so is suited to very high rate lookups where the overhead of
+     * {@link Observable} plumbing in {@link #search(Rectangle)} is
+     * significant.
+     * </p>
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param action
+     *            called synchronously with each matching entry
+     */
+    public void search(Rectangle r, Action1<? super Entry<T, S>> action) {
+        if (root.isPresent() && root.get().geometry().intersects(r))
+            root.get().search(r, action);
+    }
+
+    /**
+     * Calls <code>action</code> synchronously for every {@link Entry} in the
+     * R-tree whose geometry intersects with the given point. See
+     * {@link #search(Rectangle, Action1)}.
+     * 
+     * @param p
+     *            point to check intersection with the entry geometry
+     * @param action
+     *            called synchronously with each matching entry
+     */
+    public void search(Point p, Action1<? super Entry<T, S>> action) {
+        search(p.mbr(), action);
+    }
+
+    /**
+     * Returns an {@link Iterator} over all {@link Entry}s in the R-tree whose
+     * geometry intersects with the given rectangle. Entries are found lazily
+     * as the iterator is advanced using a stack that is allocated once per
+     * call. The iterator does not support {@link Iterator#remove()}.
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @return iterator over the entries that intersect with r
+     */
+    public Iterator<Entry<T, S>> searchIterator(Rectangle r) {
+        return new SearchIterator<T, S>(root, calculateDepth(), r);
+    }
+
+    /**
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose geometry intersects with the given rectangle, searching
+     * subtrees concurrently on the given scheduler. See
+     * {@link #search(Rectangle, Scheduler, int)}.
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param scheduler
+     *            scheduler to search subtrees on
+     * @return entries that intersect with the rectangle r in no particular
+     *         order
+     */
+    public Observable<Entry<T, S>> search(Rectangle r, Scheduler scheduler) {
+        return search(r, scheduler, PARALLEL_SEARCH_SUBTREE_SIZE_DEFAULT);
+    }
+
+    /**
+     * <p>
+     * Returns an {@link Observable} sequence of all {@link Entry}s in the
+     * R-tree whose geometry intersects with the given rectangle, searching
+     * subtrees concurrently on the given scheduler (for example
+     * <code>Schedulers.computation()</code>). The tree is descended from the
+     * root until the intersecting subtrees have an estimated size of at most
+     * <code>subtreeSize</code> entries and each of those subtrees is searched
+     * as a separate task. The results of the tasks are merged as they arrive
+     * so the order of the entries is not defined.
+     * </p>
+     * 
+     * <p>
+     * This is worth doing for queries that cover a large part of a large
+     * tree. Small queries are faster with {@link #search(Rectangle)} because
+     * they only touch one or two subtrees anyway.
+     * </p>
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param scheduler
+     *            scheduler to search subtrees on
+     * @param subtreeSize
+     *            estimated number of entries in a subtree at or below which
+     *            the subtree is searched as one task
+     * @return entries that intersect with the rectangle r in no particular
+     *         order
+     */
+    public Observable<Entry<T, S>> search(Rectangle r, final Scheduler scheduler, int subtreeSize) {
+        final Func1<Geometry, Boolean> condition = intersects(r);
+        return Observable.from(subtrees(r, subtreeSize)).flatMap(
+                new Func1<Node<T, S>, Observable<Entry<T, S>>>() {
+                    @Override
+                    public Observable<Entry<T, S>> call(Node<T, S> node) {
+                        return Observable.create(new OnSubscribeSearch<T, S>(node, condition))
+                                .subscribeOn(scheduler);
+                    }
+                });
+    }
+
+    /**
+     * <p>
+     * As {@link #search(Rectangle, Scheduler, int)} but the entries are
+     * emitted in the same order as {@link #search(Rectangle)}. All subtree
+     * tasks are started on subscription and the results of each task are
+     * buffered until the results of the tasks before it have been emitted.
+     * Unsubscribing does not stop tasks that have already started.
+     * </p>
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param scheduler
+     *            scheduler to search subtrees on
+     * @param subtreeSize
+     *            estimated number of entries in a subtree at or below which
+     *            the subtree is searched as one task
+     * @return entries that intersect with the rectangle r in tree order
+     */
+    public Observable<Entry<T, S>> searchInOrder(final Rectangle r, final Scheduler scheduler,
+            final int subtreeSize) {
+        return Observable.defer(new Func0<Observable<Entry<T, S>>>() {
+            @Override
+            public Observable<Entry<T, S>> call() {
+                Func1<Geometry, Boolean> condition = intersects(r);
+                List<Observable<List<Entry<T, S>>>> tasks = new ArrayList<Observable<List<Entry<T, S>>>>();
+                for (Node<T, S> node : subtrees(r, subtreeSize)) {
+                    Observable<List<Entry<T, S>>> task = Observable
+                            .create(new OnSubscribeSearch<T, S>(node, condition)).toList()
+                            .subscribeOn(scheduler).cache();
+                    // start the task now, errors are replayed to the
+                    // subscriber by cache()
+                    task.subscribe(Subscribers.empty());
+                    tasks.add(task);
+                }
+                return Observable.concat(Observable.from(tasks)).concatMap(
+                        new Func1<List<Entry<T, S>>, Observable<Entry<T, S>>>() {
+                            @Override
+                            public Observable<Entry<T, S>> call(List<Entry<T, S>> list) {
+                                return Observable.from(list);
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Calls <code>action</code> for every {@link Entry} in the R-tree whose
+     * geometry intersects with the given rectangle, searching subtrees
+     * concurrently on the given scheduler as for
+     * {@link #search(Rectangle, Scheduler, int)}. Each subtree is searched
+     * with {@link #search(Rectangle, Action1)} so no objects are allocated
+     * per entry.
+     * </p>
+     * 
+     * <p>
+     * <code>action</code> is called concurrently from the scheduler threads
+     * so must be thread-safe. This method blocks until all subtrees have been
+     * searched and rethrows the first error thrown by <code>action</code>.
+     * </p>
+     * 
+     * @param r
+     *            rectangle to check intersection with the entry geometry
+     * @param action
+     *            thread-safe action called with each matching entry
+     * @param scheduler
+     *            scheduler to search subtrees on
+     * @param subtreeSize
+     *            estimated number of entries in a subtree at or below which
+     *            the subtree is searched as one task
+     */
+    public void search(final Rectangle r, final Action1<? super Entry<T, S>> action,
+            final Scheduler scheduler, int subtreeSize) {
+        List<Node<T, S>> nodes = subtrees(r, subtreeSize);
+        final CountDownLatch latch = new CountDownLatch(nodes.size());
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        for (final Node<T, S> node : nodes) {
+            final Worker worker = scheduler.createWorker();
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    try {
+                        // don't bother searching once a task has failed
+                        if (error.get() == null)
+                            node.search(r, action);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        worker.unsubscribe();
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (error.get() != null)
+            throw Exceptions.propagate(error.get());
+    }
+
+    /**
+     * Returns the subtrees intersecting <code>r</code> with an estimated size
+     * of at most <code>subtreeSize</code> entries (or leaves) in tree order.
+     * 
+     * @param r
+     *            rectangle the subtrees must intersect
+     * @param subtreeSize
+     *            maximum estimated size of a subtree
+     * @return subtrees to search
+     */
+    private List<Node<T, S>> subtrees(Rectangle r, int subtreeSize) {
+        Preconditions.checkArgument(subtreeSize > 0, "subtreeSize must be positive");
+        List<Node<T, S>> list = new ArrayList<Node<T, S>>();
+        if (root.isPresent() && root.get().geometry().intersects(r))
+            addSubtrees(root.get(), size, r, subtreeSize, list);
+        return list;
+    }
+
+    private static <T, S extends Geometry> void addSubtrees(Node<T, S> node, double estimatedSize,
+            Rectangle r, int subtreeSize, List<Node<T, S>> list) {
+        if (node instanceof Leaf || estimatedSize <= subtreeSize)
+            list.add(node);
+        else {
+            // assume entries are spread evenly over the children
+            double childEstimatedSize = estimatedSize / node.count();
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                if (child.geometry().intersects(r))
+                    addSubtrees(child, childEstimatedSize, r, subtreeSize, list);
+        }
+    }
+
     public Observable<Entry<T, S>> search(Circle circle) {
         return search(circle, Intersects.geometryIntersectsCircle);
     }
@@ -688,8 +1195,12 @@ public final class RTree<T, S extends Geometry> {
      */
     public Observable<Entry<T, S>> nearest(final Rectangle r, final double maxDistance,
             int maxCount) {
-        return search(r, maxDistance).lift(new OperatorBoundedPriorityQueue<Entry<T, S>>(maxCount,
-                Comparators.<T, S> ascendingDistance(r)));
+        return nearest(r).takeWhile(new Func1<Entry<T, S>, Boolean>() {
+            @Override
+            public Boolean call(Entry<T, S> entry) {
+                return entry.geometry().distance(r) < maxDistance;
+            }
+        }).take(maxCount);
     }
 
     /**
@@ -708,6 +1219,272 @@ public final class RTree<T, S extends Geometry> {
         return nearest(p.mbr(), maxDistance, maxCount);
     }
 
+    /**
+     * <p>
+     * Returns all entries in the R-tree in ascending order of distance from
+     * the given rectangle. The sequence is lazy: nodes are only visited when
+     * they could contain an entry closer than every entry not yet emitted, so
+     * taking the first k entries is cheap whatever the size of the tree and no
+     * maximum distance is required. For example the closest five entries are
+     * given by <code>tree.nearest(r).take(5)</code>.
+     * </p>
+     * 
+     * <p>
+     * The order of entries at equal distance is not defined. Supports
+     * backpressure.
+     * </p>
+     * 
+     * @param r
+     *            rectangle to measure distance from
+     * @return all entries in ascending order of distance from r
+     */
+    public Observable<Entry<T, S>> nearest(final Rectangle r) {
+        return nearest(new Func1<Geometry, Double>() {
+            @Override
+            public Double call(Geometry g) {
+                return g.distance(r);
+            }
+        });
+    }
+
+    /**
+     * Returns all entries in the R-tree in ascending order of distance from
+     * the given point. See {@link #nearest(Rectangle)}.
+     * 
+     * @param p
+     *            point to measure distance from
+     * @return all entries in ascending order of distance from p
+     */
+    public Observable<Entry<T, S>> nearest(Point p) {
+        return nearest(p.mbr());
+    }
+
+    /**
+     * <p>
+     * Returns all entries whose minimum bounding rectangle is strictly less
+     * than <code>maxDistanceKm</code> kilometres from the given point along
+     * the surface of the earth. The R-tree geometries and the point must have
+     * longitude as x and latitude as y in degrees (see
+     * {@link com.github.davidmoten.rtree.geometry.Geometries#pointGeographic(double, double)}
+     * ).
+     * </p>
+     * 
+     * <p>
+     * Nodes are pruned first by the bounding rectangles of the search region
+     * (split at the antimeridian, see
+     * {@link Geographic#boundingRectangles(Point, double)}) and then by the
+     * great circle distance to their bounding rectangle (see
+     * {@link Geographic#distanceKm(Point, Rectangle)}), so the results are
+     * exact for point entries and no further filtering is needed. This works
+     * at high latitudes and across the antimeridian where a search using
+     * euclidean distance in degrees does not.
+     * </p>
+     * 
+     * @param lonLat
+     *            point to measure distance from
+     * @param maxDistanceKm
+     *            strict maximum distance in km of returned entries
+     * @return entries within maxDistanceKm of the point
+     */
+    public Observable<Entry<T, S>> searchGeographic(final Point lonLat, final double maxDistanceKm) {
+        final List<Rectangle> bounds = Geographic.boundingRectangles(lonLat, maxDistanceKm);
+        return search(new Func1<Geometry, Boolean>() {
+            @Override
+            public Boolean call(Geometry g) {
+                Rectangle mbr = g.mbr();
+                for (int i = 0; i < bounds.size(); i++)
+                    if (bounds.get(i).intersects(mbr))
+                        return Geographic.distanceKm(lonLat, mbr) < maxDistanceKm;
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Returns all entries in ascending order of the great circle distance
+     * from the given point to their minimum bounding rectangle. Geometries
+     * must have longitude as x and latitude as y in degrees. The sequence is
+     * lazy in the same way as {@link #nearest(Rectangle)}.
+     * 
+     * @param lonLat
+     *            point to measure distance from
+     * @return all entries in ascending order of distance from the point
+     */
+    public Observable<Entry<T, S>> nearestGeographic(final Point lonLat) {
+        return nearest(geographicDistanceFrom(lonLat));
+    }
+
+    /**
+     * Returns the nearest k entries (k=maxCount) to the given point using great
+     * circle distance, where the entries are strictly less than
+     * <code>maxDistanceKm</code> from the point. See
+     * {@link #nearestGeographic(Point)}.
+     * 
+     * @param lonLat
+     *            point to measure distance from
+     * @param maxDistanceKm
+     *            strict maximum distance in km of returned entries
+     * @param maxCount
+     *            max number of entries to return
+     * @return nearest entries to maxCount, in ascending order of distance
+     */
+    public Observable<Entry<T, S>> nearestGeographic(final Point lonLat,
+            final double maxDistanceKm, int maxCount) {
+        final Func1<Geometry, Double> distance = geographicDistanceFrom(lonLat);
+        return nearest(distance).takeWhile(new Func1<Entry<T, S>, Boolean>() {
+            @Override
+            public Boolean call(Entry<T, S> entry) {
+                return distance.call(entry.geometry()) < maxDistanceKm;
+            }
+        }).take(maxCount);
+    }
+
+    private static Func1<Geometry, Double> geographicDistanceFrom(final Point lonLat) {
+        return new Func1<Geometry, Double>() {
+            @Override
+            public Double call(Geometry g) {
+                return Geographic.distanceKm(lonLat, g.mbr());
+            }
+        };
+    }
+
+    /**
+     * Returns all entries in ascending order of the given distance function
+     * which is applied to the minimum bounding rectangles of nodes as well as
+     * to entry geometries. The distance to a node must be a lower bound for
+     * the distance to any entry within it.
+     * 
+     * @param distance
+     *            distance to a geometry
+     * @return all entries in ascending order of distance
+     */
+    Observable<Entry<T, S>> nearest(final Func1<? super Geometry, Double> distance) {
+        return Observable.from(new Iterable<Entry<T, S>>() {
+            @Override
+            public Iterator<Entry<T, S>> iterator() {
+                return new NearestIterator<T, S>(root, distance);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Returns the pairs of entries from this R-tree and <code>other</code>
+     * whose geometries intersect according to the given function. Both trees
+     * are descended at once and pairs of nodes whose minimum bounding
+     * rectangles don't intersect are skipped along with everything beneath
+     * them, so a join is a single pass over both trees rather than one search
+     * per entry.
+     * </p>
+     * 
+     * <p>
+     * <code>intersects</code> is only called for pairs of entries whose
+     * minimum bounding rectangles intersect. Supports backpressure.
+     * </p>
+     * 
+     * @param <T2>
+     *            the value type of the other R-tree
+     * @param <S2>
+     *            the geometry type of the other R-tree
+     * @param other
+     *            R-tree to join with
+     * @param intersects
+     *            function to determine if the geometries of two entries
+     *            intersect
+     * @return pairs of intersecting entries, this R-tree's entry on the left
+     */
+    public <T2, S2 extends Geometry> Observable<EntryPair<T, S, T2, S2>> join(
+            final RTree<T2, S2> other, final Func2<? super S, ? super S2, Boolean> intersects) {
+        if (!root.isPresent() || !other.root().isPresent()
+                || !root.get().geometry().intersects(other.root().get().geometry().mbr()))
+            return Observable.empty();
+        else
+            return join(root.get(), other.root().get(), intersects);
+    }
+
+    /**
+     * Returns the pairs of entries from this R-tree and <code>other</code>
+     * whose minimum bounding rectangles intersect. See
+     * {@link #join(RTree, Func2)}.
+     * 
+     * @param <T2>
+     *            the value type of the other R-tree
+     * @param <S2>
+     *            the geometry type of the other R-tree
+     * @param other
+     *            R-tree to join with
+     * @return pairs of entries with intersecting minimum bounding rectangles
+     */
+    public <T2, S2 extends Geometry> Observable<EntryPair<T, S, T2, S2>> join(RTree<T2, S2> other) {
+        return join(other, ALWAYS_TRUE_PAIR);
+    }
+
+    /**
+     * <p>
+     * As {@link #join(RTree, Func2)} but the pairs of child nodes at the top of
+     * both trees are joined concurrently, each subscribed on the given
+     * scheduler (for example <code>Schedulers.computation()</code>). The order
+     * of the returned pairs is not defined.
+     * </p>
+     * 
+     * @param <T2>
+     *            the value type of the other R-tree
+     * @param <S2>
+     *            the geometry type of the other R-tree
+     * @param other
+     *            R-tree to join with
+     * @param intersects
+     *            function to determine if the geometries of two entries
+     *            intersect
+     * @param scheduler
+     *            scheduler to run the partial joins on
+     * @return pairs of intersecting entries, this R-tree's entry on the left
+     */
+    public <T2, S2 extends Geometry> Observable<EntryPair<T, S, T2, S2>> join(
+            RTree<T2, S2> other, final Func2<? super S, ? super S2, Boolean> intersects,
+            final Scheduler scheduler) {
+        if (!root.isPresent() || !other.root().isPresent()
+                || !root.get().geometry().intersects(other.root().get().geometry().mbr()))
+            return Observable.empty();
+        List<Node<T, S>> lefts = topLevelNodes(root.get(), other.root().get().geometry().mbr());
+        final List<? extends Node<T2, S2>> rights = topLevelNodes(other.root().get(), root.get()
+                .geometry().mbr());
+        return Observable.from(lefts).flatMap(
+                new Func1<Node<T, S>, Observable<EntryPair<T, S, T2, S2>>>() {
+                    @Override
+                    public Observable<EntryPair<T, S, T2, S2>> call(Node<T, S> left) {
+                        List<Observable<EntryPair<T, S, T2, S2>>> joins = new ArrayList<Observable<EntryPair<T, S, T2, S2>>>();
+                        for (Node<T2, S2> right : rights)
+                            if (left.geometry().intersects(right.geometry().mbr()))
+                                joins.add(join(left, right, intersects).subscribeOn(scheduler));
+                        return Observable.merge(joins);
+                    }
+                });
+    }
+
+    private static <T, S extends Geometry> List<Node<T, S>> topLevelNodes(Node<T, S> node,
+            Rectangle r) {
+        List<Node<T, S>> list = new ArrayList<Node<T, S>>();
+        if (node instanceof Leaf)
+            list.add(node);
+        else
+            for (Node<T, S> child : ((NonLeaf<T, S>) node).children())
+                if (child.geometry().intersects(r))
+                    list.add(child);
+        return list;
+    }
+
+    private static <T, S extends Geometry, T2, S2 extends Geometry> Observable<EntryPair<T, S, T2, S2>> join(
+            final Node<T, S> left, final Node<T2, S2> right,
+            final Func2<? super S, ? super S2, Boolean> intersects) {
+        return Observable.from(new Iterable<EntryPair<T, S, T2, S2>>() {
+            @Override
+            public Iterator<EntryPair<T, S, T2, S2>> iterator() {
+                return new JoinIterator<T, S, T2, S2>(left, right, intersects);
+            }
+        });
+    }
+
     /**
      * Returns all entries in the tree as an {@link Observable} sequence.
      * 
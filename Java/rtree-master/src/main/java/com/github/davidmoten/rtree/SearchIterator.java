@@ -0,0 +1,98 @@
+package com.github.davidmoten.rtree;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+import com.google.common.base.Optional;
+
+/**
+ * Iterates the entries of an R-tree that intersect a rectangle. The traversal
+ * uses an explicit stack of nodes and positions sized to the depth of the tree
+ * so that no allocation happens per visited node.
+ * 
+ * Not thread safe.
+ * 
+ * @param <T>
+ *            the entry value type
+ * @param <S>
+ *            the entry geometry type
+ */
+final class SearchIterator<T, S extends Geometry> implements Iterator<Entry<T, S>> {
+
+    private final Rectangle r;
+    private final Node<T, S>[] nodes;
+    private final int[] positions;
+    // index of the top of the stack, -1 when the search is finished
+    private int top;
+    private Entry<T, S> next;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    SearchIterator(Optional<? extends Node<T, S>> root, int depth, Rectangle r) {
+        this.r = r;
+        this.nodes = new Node[Math.max(1, depth)];
+        this.positions = new int[nodes.length];
+        if (root.isPresent() && root.get().geometry().intersects(r)) {
+            nodes[0] = root.get();
+            top = 0;
+        } else
+            top = -1;
+        next = findNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Entry<T, S> next() {
+        if (next == null)
+            throw new NoSuchElementException();
+        Entry<T, S> result = next;
+        next = findNext();
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("R-tree is immutable");
+    }
+
+    private Entry<T, S> findNext() {
+        while (top >= 0) {
+            final Node<T, S> node = nodes[top];
+            final int position = positions[top];
+            if (position == node.count()) {
+                // finished with this node so pop it
+                nodes[top] = null;
+                top--;
+            } else {
+                positions[top] = position + 1;
+                if (node instanceof Leaf) {
+                    List<Entry<T, S>> entries = ((Leaf<T, S>) node).entries();
+                    if (entries instanceof PackedEntries) {
+                        PackedEntries<T, S> packed = (PackedEntries<T, S>) entries;
+                        if (packed.intersects(position, r))
+                            return packed.get(position);
+                    } else {
+                        Entry<T, S> entry = entries.get(position);
+                        if (entry.geometry().intersects(r))
+                            return entry;
+                    }
+                } else {
+                    Node<T, S> child = ((NonLeaf<T, S>) node).children().get(position);
+                    if (child.geometry().intersects(r)) {
+                        top++;
+                        nodes[top] = child;
+                        positions[top] = 0;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+}
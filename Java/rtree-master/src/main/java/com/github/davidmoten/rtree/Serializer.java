@@ -0,0 +1,30 @@
+package com.github.davidmoten.rtree;
+
+/**
+ * Converts entry values to and from bytes so that an {@link RTree} can be
+ * written to disk and read back by {@link MappedRTree}.
+ * 
+ * @param <T>
+ *            the entry value type
+ */
+public interface Serializer<T> {
+
+    /**
+     * Returns the byte representation of the value.
+     * 
+     * @param value
+     *            entry value, may be null
+     * @return bytes representing the value
+     */
+    byte[] serialize(T value);
+
+    /**
+     * Returns the value represented by the given bytes.
+     * 
+     * @param bytes
+     *            bytes produced by {@link #serialize(Object)}
+     * @return the entry value
+     */
+    T deserialize(byte[] bytes);
+
+}
@@ -0,0 +1,90 @@
+package com.github.davidmoten.rtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+/**
+ * Standard {@link Serializer}s for entry values.
+ */
+public final class Serializers {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Serializers() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a {@link Serializer} that encodes strings as UTF-8. Null values
+     * are not supported.
+     * 
+     * @return UTF-8 string serializer
+     */
+    public static Serializer<String> utf8() {
+        return UTF8;
+    }
+
+    /**
+     * Returns a {@link Serializer} that uses java.io serialization. This is
+     * convenient but slow and verbose compared to a custom {@link Serializer}.
+     * 
+     * @param <T>
+     *            the entry value type
+     * @return java.io serializer
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> Serializer<T> javaIo() {
+        return (Serializer<T>) JAVA_IO;
+    }
+
+    private static final Serializer<String> UTF8 = new Serializer<String>() {
+
+        @Override
+        public byte[] serialize(String value) {
+            return value.getBytes(UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    private static final Serializer<Serializable> JAVA_IO = new Serializer<Serializable>() {
+
+        @Override
+        public byte[] serialize(Serializable value) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeObject(value);
+                oos.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Serializable deserialize(byte[] bytes) {
+            try {
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return (Serializable) ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+}
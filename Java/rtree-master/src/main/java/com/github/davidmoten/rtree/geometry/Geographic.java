@@ -0,0 +1,159 @@
+package com.github.davidmoten.rtree.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Great circle distances for geometries whose x coordinate is longitude and y
+ * coordinate is latitude in degrees (as created by
+ * {@link Geometries#pointGeographic(double, double)} and
+ * {@link Geometries#rectangleGeographic(double, double, double, double)}).
+ * Distances use the haversine formula on a sphere of radius
+ * {@link #EARTH_RADIUS_KM} so are within about 0.5% of the WGS84 ellipsoid
+ * distance.
+ * </p>
+ *
+ * <p>
+ * Rectangles are treated as the region between two meridians and two
+ * parallels. A rectangle may cross the antimeridian by having
+ * <code>x2 &gt; 180</code>.
+ * </p>
+ */
+public final class Geographic {
+
+    /**
+     * Mean radius of the earth in kilometres.
+     */
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private Geographic() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the great circle distance in kilometres between two lon/lat
+     * points.
+     *
+     * @param a
+     *            point (lon, lat)
+     * @param b
+     *            point (lon, lat)
+     * @return distance in km
+     */
+    public static double distanceKm(Point a, Point b) {
+        return distanceKm(Math.toRadians(a.y()), Math.toRadians(a.x()), Math.toRadians(b.y()),
+                Math.toRadians(b.x()));
+    }
+
+    /**
+     * Returns the minimum great circle distance in kilometres between a
+     * lon/lat point and any point of a lon/lat rectangle (0 if the point is
+     * inside the rectangle). When the rectangle is a single point this is the
+     * distance between the points. Because every geometry lies within its
+     * minimum bounding rectangle this is a lower bound on the distance to any
+     * geometry in an R-tree node.
+     *
+     * @param p
+     *            point (lon, lat)
+     * @param r
+     *            rectangle (lon1, lat1, lon2, lat2)
+     * @return minimum distance in km
+     */
+    public static double distanceKm(Point p, Rectangle r) {
+        double lat = Math.toRadians(p.y());
+        double lon = p.x();
+        double lat1 = Math.toRadians(r.y1());
+        double lat2 = Math.toRadians(r.y2());
+        if (longitudeWithin(lon, r.x1(), r.x2())) {
+            // the nearest point is on the same meridian
+            if (lat < lat1)
+                return EARTH_RADIUS_KM * (lat1 - lat);
+            else if (lat > lat2)
+                return EARTH_RADIUS_KM * (lat - lat2);
+            else
+                return 0;
+        } else {
+            // the nearest point of a parallel to a point outside the
+            // longitude range is at one of its ends so the nearest point is
+            // on the western or eastern meridian edge
+            return Math.min(distanceToMeridianKm(lat, lon, r.x1(), lat1, lat2),
+                    distanceToMeridianKm(lat, lon, r.x2(), lat1, lat2));
+        }
+    }
+
+    /**
+     * Returns the rectangles (at most three) that together contain every
+     * point within <code>distanceKm</code> of the given lon/lat point. The
+     * region is split where it crosses the antimeridian and covers all
+     * longitudes where it contains a pole. Copies shifted by 360 degrees are
+     * included so that stored rectangles with <code>x2 &gt; 180</code> are
+     * matched too.
+     *
+     * @param p
+     *            point (lon, lat)
+     * @param distanceKm
+     *            distance in km
+     * @return rectangles covering the region within distanceKm of p
+     */
+    public static List<Rectangle> boundingRectangles(Point p, double distanceKm) {
+        double delta = Math.toDegrees(distanceKm / EARTH_RADIUS_KM);
+        double lat = p.y();
+        double latMin = lat - delta;
+        double latMax = lat + delta;
+        double lonMin;
+        double lonMax;
+        if (latMin <= -90 || latMax >= 90 || delta >= 180) {
+            // contains a pole so every longitude
+            latMin = Math.max(-90, latMin);
+            latMax = Math.min(90, latMax);
+            lonMin = -180;
+            lonMax = 180;
+        } else {
+            double dLon = Math.toDegrees(Math.asin(Math.min(1,
+                    Math.sin(Math.toRadians(delta)) / Math.cos(Math.toRadians(lat)))));
+            lonMin = Geometries.normalizeLongitude(p.x() - dLon);
+            lonMax = lonMin + 2 * dLon;
+        }
+        List<Rectangle> list = new ArrayList<Rectangle>(3);
+        for (int shift = -360; shift <= 360; shift += 360)
+            list.add(Geometries.rectangle(lonMin + shift, latMin, lonMax + shift, latMax));
+        return list;
+    }
+
+    private static boolean longitudeWithin(double lon, double lon1, double lon2) {
+        double width = lon2 - lon1;
+        if (width >= 360)
+            return true;
+        double d = (lon - lon1) % 360;
+        if (d < 0)
+            d += 360;
+        return d <= width;
+    }
+
+    private static double distanceToMeridianKm(double lat, double lon, double meridianLon,
+            double lat1, double lat2) {
+        double dLon = Math.toRadians(meridianLon - lon);
+        double cosDLon = Math.cos(dLon);
+        if (cosDLon > 0) {
+            // the closest latitude on the whole meridian, distance increases
+            // away from it so clamping gives the closest on the edge
+            double nearest = Math.atan(Math.tan(lat) / cosDLon);
+            nearest = Math.max(lat1, Math.min(lat2, nearest));
+            return distanceKm(lat, 0, nearest, dLon);
+        } else {
+            // the meridian is more than 90 degrees away so the distance along
+            // it has a maximum rather than a minimum and the closest point
+            // is at one end
+            return Math.min(distanceKm(lat, 0, lat1, dLon), distanceKm(lat, 0, lat2, dLon));
+        }
+    }
+
+    private static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double sinDLat = Math.sin((lat2 - lat1) / 2);
+        double sinDLon = Math.sin((lon2 - lon1) / 2);
+        double a = sinDLat * sinDLat + Math.cos(lat1) * Math.cos(lat2) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+}
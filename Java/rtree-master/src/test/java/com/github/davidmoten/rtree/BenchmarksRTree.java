@@ -1,295 +1,289 @@
 package com.github.davidmoten.rtree;
 
-import static com.github.davidmoten.rtree.Utilities.entries1000;
-
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
 
 import rx.Subscriber;
+import rx.functions.Action1;
 
+import com.github.davidmoten.rtree.geometry.Circle;
 import com.github.davidmoten.rtree.geometry.Geometries;
 import com.github.davidmoten.rtree.geometry.Point;
 import com.github.davidmoten.rtree.geometry.Rectangle;
 
+/**
+ * <p>
+ * JMH benchmarks of the main R-tree operations over a matrix of data sets,
+ * <code>maxChildren</code> values and tree construction variants. Run with
+ * <code>mvn clean install -Pbenchmark</code> which also reports allocation
+ * rates using the gc profiler and writes the results to
+ * <code>target/jmh-result.json</code>. To run a subset of the benchmarks pass
+ * a regex, for example:
+ * </p>
+ *
+ * <pre>
+ * mvn clean install -Pbenchmark -Djmh.include=BenchmarksRTree.search
+ * </pre>
+ *
+ * <p>
+ * To restrict the parameters run JMH directly with options like
+ * <code>-p data=GREEK -p maxChildren=10</code>.
+ * </p>
+ *
+ * <p>
+ * Every benchmark returns its result or passes it to a {@link Blackhole} so
+ * that the JIT cannot eliminate the work being measured.
+ * </p>
+ */
 @State(Scope.Benchmark)
 public class BenchmarksRTree {
 
-    private final List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
-
-    private final List<Entry<Object, Rectangle>> some = entries1000();
-
-    private final RTree<Object, Point> defaultTreeM4 = RTree.maxChildren(4)
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> defaultTreeM10 = RTree.maxChildren(10)
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> starTreeM4 = RTree.maxChildren(4).star()
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> starTreeM10 = RTree.maxChildren(10).star()
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> defaultTreeM32 = RTree.maxChildren(32)
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> starTreeM32 = RTree.maxChildren(32).star()
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> defaultTreeM128 = RTree.maxChildren(128)
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Point> starTreeM128 = RTree.maxChildren(128).star()
-            .<Object, Point> create().add(entries);
-
-    private final RTree<Object, Rectangle> smallDefaultTreeM4 = RTree.maxChildren(4)
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallDefaultTreeM10 = RTree.maxChildren(10)
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallStarTreeM4 = RTree.maxChildren(4).star()
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallStarTreeM10 = RTree.maxChildren(10).star()
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallDefaultTreeM32 = RTree.maxChildren(32)
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallStarTreeM32 = RTree.maxChildren(32).star()
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallDefaultTreeM128 = RTree.maxChildren(128)
-            .<Object, Rectangle> create().add(some);
-
-    private final RTree<Object, Rectangle> smallStarTreeM128 = RTree.maxChildren(128).star()
-            .<Object, Rectangle> create().add(some);
-
-    @Benchmark
-    public void defaultRTreeInsertOneEntryIntoGreekDataEntriesMaxChildren004() {
-        insertPoint(defaultTreeM4);
-    }
-
-    @Benchmark
-    public void defaultRTreeSearchOfGreekDataPointsMaxChildren004() {
-        searchGreek(defaultTreeM4);
-    }
-
-    @Benchmark
-    public void defaultRTreeInsertOneEntryIntoGreekDataEntriesMaxChildren010() {
-        insertPoint(defaultTreeM10);
-    }
-
-    @Benchmark
-    public void defaultRTreeSearchOfGreekDataPointsMaxChildren010() {
-        searchGreek(defaultTreeM10);
-    }
-
-    @Benchmark
-    public void rStarTreeInsertOneEntryIntoGreekDataEntriesMaxChildren004() {
-        insertPoint(starTreeM4);
-    }
-
-    @Benchmark
-    public void rStarTreeInsertOneEntryIntoGreekDataEntriesMaxChildren010() {
-        insertPoint(starTreeM10);
-    }
-
-    @Benchmark
-    public void rStarTreeSearchOfGreekDataPointsMaxChildren004() {
-        searchGreek(starTreeM4);
-    }
-
-    @Benchmark
-    public void rStarTreeSearchOfGreekDataPointsMaxChildren010() {
-        searchGreek(starTreeM10);
-    }
-
-    @Benchmark
-    public void rStarTreeSearchOfGreekDataPointsMaxChildren010WithBackpressure() {
-        searchGreekWithBackpressure(starTreeM10);
-    }
-
-    @Benchmark
-    public void defaultRTreeInsertOneEntryIntoGreekDataEntriesMaxChildren032() {
-        insertPoint(defaultTreeM32);
-    }
-
-    @Benchmark
-    public void defaultRTreeSearchOfGreekDataPointsMaxChildren032() {
-        searchGreek(defaultTreeM32);
-    }
-
-    @Benchmark
-    public void rStarTreeInsertOneEntryIntoGreekDataEntriesMaxChildren032() {
-        insertPoint(starTreeM32);
-    }
-
-    @Benchmark
-    public void rStarTreeSearchOfGreekDataPointsMaxChildren032() {
-        searchGreek(starTreeM32);
-    }
-
-    @Benchmark
-    public void defaultRTreeInsertOneEntryIntoGreekDataEntriesMaxChildren128() {
-        insertPoint(defaultTreeM128);
-    }
-
-    @Benchmark
-    public void defaultRTreeSearchOfGreekDataPointsMaxChildren128() {
-        searchGreek(defaultTreeM128);
-    }
-
-    @Benchmark
-    public void rStarTreeInsertOneEntryIntoGreekDataEntriesMaxChildren128() {
-        insertPoint(starTreeM128);
-    }
-
-    @Benchmark
-    public void rStarTreeSearchOfGreekDataPointsMaxChildren128() {
-        searchGreek(starTreeM128);
+    /**
+     * The data sets. Each synthetic set has the same number of points as the
+     * Greek earthquakes set.
+     */
+    public enum Data {
+        /**
+         * Epicentres of earthquakes in Greece 1964-2000 (38,377 points).
+         */
+        GREEK,
+        /**
+         * Points distributed uniformly over 1000x1000.
+         */
+        UNIFORM,
+        /**
+         * Points in 50 gaussian clusters over 1000x1000.
+         */
+        CLUSTERED;
+    }
+
+    /**
+     * How the tree is built.
+     */
+    public enum Variant {
+        /**
+         * Added one at a time using the quadratic splitter and the minimal
+         * area increase selector (Guttman).
+         */
+        QUADRATIC,
+        /**
+         * Added one at a time using the R* splitter and selector.
+         */
+        STAR,
+        /**
+         * Bulk loaded using Sort-Tile-Recursive with the quadratic options
+         * for later changes.
+         */
+        STR;
+    }
+
+    private static final int CLUSTERS = 50;
+    private static final int EXTRA_ENTRIES = 1024;
+
+    @Param({ "GREEK", "UNIFORM", "CLUSTERED" })
+    public Data data;
+
+    @Param({ "4", "10", "32", "128" })
+    public int maxChildren;
+
+    @Param({ "QUADRATIC", "STAR", "STR" })
+    public Variant variant;
+
+    private List<Entry<Object, Point>> entries;
+    // entries not in the tree for add benchmarks
+    private List<Entry<Object, Point>> extra;
+    private RTree<Object, Point> tree;
+    private Rectangle searchRectangle;
+    private Point searchPoint;
+    private Circle searchCircle;
+    private Point nearestPoint;
+    private double nearestMaxDistance;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(12345);
+        if (data == Data.GREEK) {
+            entries = GreekEarthquakes.entriesList();
+            // returns 22 entries
+            searchRectangle = Geometries.rectangle(40, 27.0, 40.5, 27.5);
+            nearestMaxDistance = 5;
+        } else {
+            entries = syntheticEntries(random, GreekEarthquakes.entriesList().size());
+            if (data == Data.UNIFORM)
+                // returns about 22 entries
+                searchRectangle = Geometries.rectangle(500, 500, 524, 524);
+            else {
+                // about 20 entries near the centre of the first cluster
+                Point centre = clusterCentre(new Random(12345));
+                searchRectangle = Geometries.rectangle(centre.x() - 2, centre.y() - 2,
+                        centre.x() + 2, centre.y() + 2);
+            }
+            nearestMaxDistance = 100;
+        }
+        extra = syntheticEntries(random, EXTRA_ENTRIES);
+        searchPoint = entries.get(entries.size() / 2).geometry();
+        Rectangle r = searchRectangle;
+        nearestPoint = Geometries.point((r.x1() + r.x2()) / 2, (r.y1() + r.y2()) / 2);
+        searchCircle = Geometries.circle(nearestPoint.x(), nearestPoint.y(),
+                (r.x2() - r.x1()) / 2);
+        if (variant == Variant.STR)
+            tree = builder().create(entries);
+        else
+            tree = builder().<Object, Point> create().add(entries);
     }
 
-    @Benchmark
-    public void defaultRTreeInsertOneEntryInto1000EntriesMaxChildren004() {
-        insertRectangle(smallDefaultTreeM4);
+    private RTree.Builder builder() {
+        if (variant == Variant.STAR)
+            return RTree.maxChildren(maxChildren).star();
+        else
+            return RTree.maxChildren(maxChildren);
     }
 
-    @Benchmark
-    public void defaultRTreeSearchOf1000PointsMaxChildren004() {
-        search(smallDefaultTreeM4);
+    private List<Entry<Object, Point>> syntheticEntries(Random random, int n) {
+        List<Entry<Object, Point>> list = new ArrayList<Entry<Object, Point>>(n);
+        Random centres = new Random(12345);
+        List<Point> clusterCentres = new ArrayList<Point>();
+        for (int i = 0; i < CLUSTERS; i++)
+            clusterCentres.add(clusterCentre(centres));
+        for (int i = 0; i < n; i++) {
+            final Point p;
+            if (data == Data.CLUSTERED) {
+                Point c = clusterCentres.get(random.nextInt(CLUSTERS));
+                p = Geometries.point(c.x() + random.nextGaussian() * 10,
+                        c.y() + random.nextGaussian() * 10);
+            } else
+                p = Geometries.point(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            list.add(Entry.<Object, Point> entry(i, p));
+        }
+        return list;
     }
 
-    @Benchmark
-    public void defaultRTreeInsertOneEntryInto1000EntriesMaxChildren010() {
-        insertRectangle(smallDefaultTreeM10);
+    private static Point clusterCentre(Random random) {
+        return Geometries.point(50 + random.nextDouble() * 900, 50 + random.nextDouble() * 900);
     }
 
-    @Benchmark
-    public void defaultRTreeSearchOf1000PointsMaxChildren010() {
-        search(smallDefaultTreeM10);
+    private int nextIndex() {
+        index = (index + 1) % EXTRA_ENTRIES;
+        return index;
     }
 
     @Benchmark
-    public void rStarTreeInsertOneEntryInto1000EntriesMaxChildren004() {
-        insertRectangle(smallStarTreeM4);
+    public RTree<Object, Point> add() {
+        return tree.add(extra.get(nextIndex()));
     }
 
     @Benchmark
-    public void rStarTreeInsertOneEntryInto1000EntriesMaxChildren010() {
-        insertRectangle(smallStarTreeM10);
+    public RTree<Object, Point> delete() {
+        return tree.delete(entries.get(nextIndex()));
     }
 
     @Benchmark
-    public void rStarTreeSearchOf1000PointsMaxChildren004() {
-        search(smallStarTreeM4);
+    public RTree<Object, Point> bulkLoad() {
+        return builder().create(entries);
     }
 
     @Benchmark
-    public void rStarTreeSearchOf1000PointsMaxChildren010() {
-        search(smallStarTreeM10);
-    }
-
-    @Benchmark
-    public void defaultRTreeInsertOneEntryInto1000EntriesMaxChildren032() {
-        insertRectangle(smallDefaultTreeM32);
+    public void searchRectangle(final Blackhole bh) {
+        tree.search(searchRectangle).subscribe(new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                bh.consume(entry);
+            }
+        });
     }
 
     @Benchmark
-    public void defaultRTreeSearchOf1000PointsMaxChildren032() {
-        search(smallDefaultTreeM32);
-    }
+    public void searchRectangleWithBackpressure(final Blackhole bh) {
+        tree.search(searchRectangle).subscribe(new Subscriber<Entry<Object, Point>>() {
 
-    @Benchmark
-    public void rStarTreeInsertOneEntryInto1000EntriesMaxChildren032() {
-        insertRectangle(smallStarTreeM32);
-    }
+            @Override
+            public void onStart() {
+                request(1);
+            }
 
-    @Benchmark
-    public void rStarTreeSearchOf1000PointsMaxChildren032() {
-        search(smallStarTreeM32);
-    }
+            @Override
+            public void onCompleted() {
+            }
 
-    @Benchmark
-    public void defaultRTreeInsertOneEntryInto1000EntriesMaxChildren128() {
-        insertRectangle(smallDefaultTreeM128);
-    }
+            @Override
+            public void onError(Throwable e) {
+                bh.consume(e);
+            }
 
-    @Benchmark
-    public void defaultRTreeSearchOf1000PointsMaxChildren128() {
-        search(smallDefaultTreeM128);
+            @Override
+            public void onNext(Entry<Object, Point> entry) {
+                bh.consume(entry);
+                request(1);
+            }
+        });
     }
 
     @Benchmark
-    public void rStarTreeInsertOneEntryInto1000EntriesMaxChildren128() {
-        insertRectangle(smallStarTreeM128);
+    public void searchRectangleVisitor(final Blackhole bh) {
+        tree.search(searchRectangle, new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                bh.consume(entry);
+            }
+        });
     }
 
     @Benchmark
-    public void rStarTreeSearchOf1000PointsMaxChildren128() {
-        search(smallStarTreeM128);
+    public void searchRectangleIterator(Blackhole bh) {
+        Iterator<Entry<Object, Point>> it = tree.searchIterator(searchRectangle);
+        while (it.hasNext())
+            bh.consume(it.next());
     }
 
     @Benchmark
-    public void rStarTreeDeleteOneEveryOccurrenceFromGreekDataChildren010() {
-        deleteAll(starTreeM10);
-    }
-
-    private void deleteAll(RTree<Object, Point> tree) {
-        tree.delete(entries.get(1000), true);
-    }
-
-    private void search(RTree<Object, Rectangle> tree) {
-        // returns 10 results
-        tree.search(Geometries.rectangle(500, 500, 630, 630)).subscribe();
-    }
-
-    private void searchGreek(RTree<Object, Point> tree) {
-        // should return 22 results
-        tree.search(Geometries.rectangle(40, 27.0, 40.5, 27.5)).subscribe();
-    }
-
-    private void searchGreekWithBackpressure(RTree<Object, Point> tree) {
-        // should return 22 results
-        tree.search(Geometries.rectangle(40, 27.0, 40.5, 27.5)).subscribe(new Subscriber<Object>() {
-
-            @Override
-            public void onStart() {
-                request(1);
-            }
-
+    public void searchPoint(final Blackhole bh) {
+        tree.search(searchPoint, new Action1<Entry<Object, Point>>() {
             @Override
-            public void onCompleted() {
-
+            public void call(Entry<Object, Point> entry) {
+                bh.consume(entry);
             }
+        });
+    }
 
+    @Benchmark
+    public void searchCircle(final Blackhole bh) {
+        tree.search(searchCircle).subscribe(new Action1<Entry<Object, Point>>() {
             @Override
-            public void onError(Throwable arg0) {
-
+            public void call(Entry<Object, Point> entry) {
+                bh.consume(entry);
             }
+        });
+    }
 
+    @Benchmark
+    public void nearestTen(final Blackhole bh) {
+        tree.nearest(nearestPoint).take(10).subscribe(new Action1<Entry<Object, Point>>() {
             @Override
-            public void onNext(Object arg0) {
-                request(1);
+            public void call(Entry<Object, Point> entry) {
+                bh.consume(entry);
             }
         });
     }
 
-    private void insertRectangle(RTree<Object, Rectangle> tree) {
-        tree.add(new Object(), RTreeTest.random());
-    }
-
-    private void insertPoint(RTree<Object, Point> tree) {
-        tree.add(new Object(), Geometries.point(Math.random() * 1000, Math.random() * 1000));
+    @Benchmark
+    public void nearestTenWithinMaxDistance(final Blackhole bh) {
+        tree.nearest(nearestPoint, nearestMaxDistance, 10).subscribe(
+                new Action1<Entry<Object, Point>>() {
+                    @Override
+                    public void call(Entry<Object, Point> entry) {
+                        bh.consume(entry);
+                    }
+                });
     }
 
-    public static void main(String[] args) {
-        BenchmarksRTree b = new BenchmarksRTree();
-        while (true)
-            b.searchGreek(b.starTreeM10);
-    }
 }
@@ -0,0 +1,160 @@
+package com.github.davidmoten.rtree;
+
+import static com.github.davidmoten.rtree.geometry.Geometries.point;
+import static com.github.davidmoten.rtree.geometry.Geometries.rectangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+
+public class ConcurrentRTreeTest {
+
+    @Test
+    public void testAddAndDeleteMatchBruteForce() {
+        Random random = new Random(3);
+        ConcurrentRTree<Object, Rectangle> tree = RTree.star().maxChildren(6)
+                .<Object, Rectangle> createConcurrent();
+        List<Entry<Object, Rectangle>> entries = randomEntries(random, 2000);
+        for (Entry<Object, Rectangle> entry : entries)
+            tree.add(entry);
+        assertEquals(entries.size(), tree.size());
+        checkAgainstBruteForce(random, tree, entries);
+
+        List<Entry<Object, Rectangle>> remaining = new ArrayList<Entry<Object, Rectangle>>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (i % 3 == 0)
+                remaining.add(entries.get(i));
+            else
+                assertTrue(tree.delete(entries.get(i)));
+        }
+        assertEquals(remaining.size(), tree.size());
+        checkAgainstBruteForce(random, tree, remaining);
+
+        for (Entry<Object, Rectangle> entry : remaining)
+            assertTrue(tree.delete(entry));
+        assertTrue(tree.isEmpty());
+        assertTrue(tree.snapshot().isEmpty());
+        assertTrue(tree.search(rectangle(0, 0, 100, 100)).isEmpty());
+    }
+
+    @Test
+    public void testDeleteOfAbsentEntryReturnsFalse() {
+        ConcurrentRTree<Object, Point> tree = ConcurrentRTree.create();
+        assertFalse(tree.delete(1, point(1, 1)));
+        tree.add(1, point(1, 1));
+        assertFalse(tree.delete(2, point(1, 1)));
+        assertFalse(tree.delete(1, point(2, 2)));
+        assertTrue(tree.delete(1, point(1, 1)));
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterChanges() {
+        ConcurrentRTree<Object, Point> tree = ConcurrentRTree.create();
+        for (int i = 0; i < 100; i++)
+            tree.add(i, point(i, i));
+        RTree<Object, Point> snapshot = tree.snapshot();
+        tree.add(100, point(100, 100));
+        tree.delete(0, point(0, 0));
+        assertEquals(100, snapshot.size());
+        assertEquals(100, (int) snapshot.entries().count().toBlocking().single());
+        assertEquals(1, (int) snapshot.search(point(0, 0)).count().toBlocking().single());
+        assertEquals(0, (int) snapshot.search(point(100, 100)).count().toBlocking().single());
+
+        RTree<Object, Point> snapshot2 = tree.snapshot();
+        assertEquals(100, snapshot2.size());
+        assertEquals(0, (int) snapshot2.search(point(0, 0)).count().toBlocking().single());
+        assertEquals(1, (int) snapshot2.search(point(100, 100)).count().toBlocking().single());
+        // the snapshot is a normal R-tree
+        assertEquals(101, snapshot2.add(0, point(0, 0)).size());
+    }
+
+    @Test
+    public void testConcurrentAddsAndSearches() throws InterruptedException {
+        final ConcurrentRTree<Object, Rectangle> tree = RTree.maxChildren(8)
+                .<Object, Rectangle> createConcurrent();
+        final int threads = 4;
+        final int perThread = 2000;
+        final CountDownLatch latch = new CountDownLatch(threads * 2);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (Entry<Object, Rectangle> entry : randomEntries(new Random(seed),
+                                perThread))
+                            tree.add(entry);
+                    } catch (Throwable e) {
+                        error.set(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            tree.search(rectangle(0, 0, 50, 50));
+                            tree.snapshot();
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        assertEquals(null, error.get());
+        assertEquals(threads * perThread, tree.size());
+        assertEquals(threads * perThread, tree.search(rectangle(-1, -1, 101, 101)).size());
+    }
+
+    private static void checkAgainstBruteForce(Random random,
+            ConcurrentRTree<Object, Rectangle> tree, List<Entry<Object, Rectangle>> entries) {
+        RTree<Object, Rectangle> snapshot = tree.snapshot();
+        assertEquals(entries.size(), snapshot.size());
+        RTreeTest.checkChildrenCounts(snapshot.root().get(), snapshot.context(), true);
+        RTreeTest.checkLeavesHaveDepth(snapshot.root().get(), snapshot.calculateDepth(), 1);
+        for (int i = 0; i < 50; i++) {
+            float x = random.nextFloat() * 100;
+            float y = random.nextFloat() * 100;
+            Rectangle r = rectangle(x, y, x + 10, y + 10);
+            Set<Entry<Object, Rectangle>> expected = new HashSet<Entry<Object, Rectangle>>();
+            for (Entry<Object, Rectangle> entry : entries)
+                if (entry.geometry().intersects(r))
+                    expected.add(entry);
+            assertEquals(expected, new HashSet<Entry<Object, Rectangle>>(tree.search(r)));
+            assertEquals(expected, new HashSet<Entry<Object, Rectangle>>(snapshot.search(r)
+                    .toList().toBlocking().single()));
+        }
+    }
+
+    private static List<Entry<Object, Rectangle>> randomEntries(Random random, int n) {
+        List<Entry<Object, Rectangle>> list = new ArrayList<Entry<Object, Rectangle>>();
+        for (int i = 0; i < n; i++) {
+            float x = random.nextFloat() * 100;
+            float y = random.nextFloat() * 100;
+            list.add(Entry.<Object, Rectangle> entry(i, rectangle(x, y, x + random.nextFloat(), y
+                    + random.nextFloat())));
+        }
+        return list;
+    }
+}
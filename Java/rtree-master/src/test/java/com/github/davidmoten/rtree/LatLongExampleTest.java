@@ -1,8 +1,13 @@
 package com.github.davidmoten.rtree;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -10,6 +15,7 @@ import rx.Observable;
 import rx.functions.Func1;
 
 import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.rtree.geometry.Geographic;
 import com.github.davidmoten.rtree.geometry.Geometries;
 import com.github.davidmoten.rtree.geometry.Point;
 import com.github.davidmoten.rtree.geometry.Rectangle;
@@ -65,6 +71,57 @@ public class LatLongExampleTest {
                 });
     }
 
+    @Test
+    public void testSearchGeographicMatchesBruteForce() {
+        Random random = new Random(5);
+        List<Entry<Integer, Point>> entries = new ArrayList<Entry<Integer, Point>>();
+        for (int i = 0; i < 5000; i++)
+            entries.add(Entry.entry(i, Geometries.pointGeographic(random.nextDouble() * 360 - 180,
+                    random.nextDouble() * 180 - 90)));
+        RTree<Integer, Point> tree = RTree.star().maxChildren(8).<Integer, Point> create()
+                .add(entries);
+        // includes points near the antimeridian and the poles
+        Point[] froms = new Point[] { canberra, Geometries.pointGeographic(179.5, 10),
+                Geometries.pointGeographic(-179.5, -60), Geometries.pointGeographic(20, 87) };
+        for (Point from : froms) {
+            final double distanceKm = 1500;
+            Set<Entry<Integer, Point>> expected = new HashSet<Entry<Integer, Point>>();
+            for (Entry<Integer, Point> entry : entries)
+                if (Geographic.distanceKm(from, entry.geometry()) < distanceKm)
+                    expected.add(entry);
+            assertTrue(expected.size() > 5);
+            assertEquals(expected, new HashSet<Entry<Integer, Point>>(tree
+                    .searchGeographic(from, distanceKm).toList().toBlocking().single()));
+
+            List<Entry<Integer, Point>> nearest = tree.nearestGeographic(from, distanceKm, 5)
+                    .toList().toBlocking().single();
+            assertEquals(5, nearest.size());
+            double previous = 0;
+            for (Entry<Integer, Point> entry : nearest) {
+                double d = Geographic.distanceKm(from, entry.geometry());
+                assertTrue(d >= previous);
+                previous = d;
+            }
+            double fifth = previous;
+            int closer = 0;
+            for (Entry<Integer, Point> entry : entries)
+                if (Geographic.distanceKm(from, entry.geometry()) < fifth)
+                    closer++;
+            assertEquals(4, closer);
+        }
+    }
+
+    @Test
+    public void testNearestGeographicAcrossAntimeridian() {
+        RTree<String, Point> tree = RTree.<String, Point> create()
+                .add("west of antimeridian", Geometries.pointGeographic(179, 0))
+                .add("far east", Geometries.pointGeographic(170, 0));
+        // euclidean distance in degrees would choose far east
+        assertEquals("west of antimeridian",
+                tree.nearestGeographic(Geometries.pointGeographic(-175, 0)).first().toBlocking()
+                        .single().value());
+    }
+
     @Test
     public void testSearchLatLongCircles() {
         RTree<GeoCircleValue<String>, Rectangle> tree = RTree.star().create();
@@ -0,0 +1,148 @@
+package com.github.davidmoten.rtree;
+
+import static com.github.davidmoten.rtree.geometry.Geometries.circle;
+import static com.github.davidmoten.rtree.geometry.Geometries.line;
+import static com.github.davidmoten.rtree.geometry.Geometries.point;
+import static com.github.davidmoten.rtree.geometry.Geometries.rectangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.junit.Test;
+
+import rx.functions.Action1;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+
+public class MappedRTreeTest {
+
+    @Test
+    public void testRoundTripGreekDataSearchMatchesInMemoryTree() {
+        List<Entry<String, Point>> entries = new ArrayList<Entry<String, Point>>();
+        int i = 0;
+        for (Entry<Object, Point> entry : GreekEarthquakes.entriesList())
+            entries.add(Entry.entry("quake" + i++, entry.geometry()));
+        RTree<String, Point> tree = RTree.star().maxChildren(8).<String, Point> create()
+                .add(entries);
+        File file = new File("target/greek-mapped.rtree");
+        MappedRTree.write(tree, Serializers.utf8(), file);
+        MappedRTree<String, Point> mapped = MappedRTree.open(file, Serializers.utf8());
+
+        assertEquals(entries.size(), mapped.size());
+        assertFalse(mapped.isEmpty());
+        Rectangle r = rectangle(40, 27.0, 40.5, 27.5);
+        Set<Entry<String, Point>> expected = new HashSet<Entry<String, Point>>(tree.search(r)
+                .toList().toBlocking().single());
+        assertEquals(22, expected.size());
+        assertEquals(expected,
+                new HashSet<Entry<String, Point>>(mapped.search(r).toList().toBlocking().single()));
+        assertEquals(entries.size(), (int) mapped.entries().count().toBlocking().single());
+        assertEquals(new HashSet<Entry<String, Point>>(entries), new HashSet<Entry<String, Point>>(
+                mapped.entries().toList().toBlocking().single()));
+    }
+
+    @Test
+    public void testEmptyTree() {
+        ByteBuffer bb = toBuffer(RTree.<String, Point> create());
+        MappedRTree<String, Point> mapped = MappedRTree.open(bb, Serializers.utf8());
+        assertTrue(mapped.isEmpty());
+        assertEquals(0, (int) mapped.entries().count().toBlocking().single());
+        assertFalse(mapped.searchIterator(rectangle(0, 0, 1, 1)).hasNext());
+    }
+
+    @Test
+    public void testMixedGeometriesUseExactIntersection() {
+        RTree<String, Geometry> tree = RTree.maxChildren(4).<String, Geometry> create()
+                .add("point", point(1, 1)).add("rectangle", rectangle(2, 2, 4, 4))
+                .add("circle", circle(10, 10, 1)).add("line", line(20, 0, 30, 10))
+                .add("far", point(100, 100));
+        MappedRTree<String, Geometry> mapped = MappedRTree.open(toBuffer(tree),
+                Serializers.utf8());
+        assertEquals(set("point", "rectangle"), values(mapped, rectangle(0, 0, 3, 3)));
+        // intersects the mbr of the circle but not the circle
+        assertEquals(set(), values(mapped, rectangle(9, 9, 9.1, 9.1)));
+        assertEquals(set("circle"), values(mapped, rectangle(10, 10, 10.1, 10.1)));
+        // intersects the mbr of the line but not the line
+        assertEquals(set(), values(mapped, rectangle(28, 0, 29, 1)));
+        assertEquals(set("line"), values(mapped, rectangle(24, 4, 26, 6)));
+        assertEquals(set("far"), values(mapped, point(100, 100).mbr()));
+    }
+
+    @Test
+    public void testSearchVisitorAndPoint() {
+        RTree<String, Point> tree = RTree.<String, Point> create().add("a", point(1, 1))
+                .add("b", point(2, 2));
+        MappedRTree<String, Point> mapped = MappedRTree.open(toBuffer(tree), Serializers.utf8());
+        final List<String> found = new ArrayList<String>();
+        mapped.search(rectangle(0, 0, 1.5, 1.5), new Action1<Entry<String, Point>>() {
+            @Override
+            public void call(Entry<String, Point> entry) {
+                found.add(entry.value());
+            }
+        });
+        assertEquals(1, found.size());
+        assertEquals("a", found.get(0));
+        assertEquals("b", mapped.search(point(2, 2)).toBlocking().single().value());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testIteratorNextWhenExhaustedThrows() {
+        RTree<String, Point> tree = RTree.<String, Point> create().add("a", point(1, 1));
+        Iterator<Entry<String, Point>> it = MappedRTree.<String, Point> open(toBuffer(tree),
+                Serializers.utf8()).searchIterator(rectangle(0, 0, 2, 2));
+        it.next();
+        it.next();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenRejectsBufferThatIsNotAnRTree() {
+        MappedRTree.open(ByteBuffer.allocate(100), Serializers.utf8());
+    }
+
+    private static <S extends Geometry> ByteBuffer toBuffer(RTree<String, S> tree) {
+        File file = new File("target/mapped-test.rtree");
+        MappedRTree.write(tree, Serializers.utf8(), file);
+        // read into a heap buffer to check that mapping is not required
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                byte[] bytes = new byte[(int) raf.length()];
+                raf.readFully(bytes);
+                return ByteBuffer.wrap(bytes);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <S extends Geometry> Set<String> values(MappedRTree<String, S> tree,
+            Rectangle r) {
+        Set<String> set = new HashSet<String>();
+        Iterator<Entry<String, S>> it = tree.searchIterator(r);
+        while (it.hasNext())
+            set.add(it.next().value());
+        return set;
+    }
+
+    private static Set<String> set(String... values) {
+        Set<String> set = new HashSet<String>();
+        for (String value : values)
+            set.add(value);
+        return set;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.davidmoten.rtree;
+
+import static com.github.davidmoten.rtree.geometry.Geometries.circle;
+import static com.github.davidmoten.rtree.geometry.Geometries.point;
+import static com.github.davidmoten.rtree.geometry.Geometries.rectangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rtree.geometry.Geometry;
+import com.github.davidmoten.rtree.geometry.Point;
+import com.github.davidmoten.rtree.geometry.Rectangle;
+
+public class PackedEntriesTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPackPoints() {
+        List<Entry<Integer, Point>> entries = Arrays.asList(Entry.entry(1, point(1, 2)),
+                Entry.entry(2, point(-3, 4)));
+        List<Entry<Integer, Point>> packed = PackedEntries.pack(entries);
+        assertTrue(packed instanceof PackedEntries);
+        assertEquals(entries, packed);
+        assertEquals(rectangle(-3, 2, 1, 4), ((PackedEntries<Integer, Point>) packed).mbr());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPackRectangles() {
+        List<Entry<Integer, Rectangle>> entries = Arrays.asList(
+                Entry.entry(1, rectangle(1, 2, 3, 4)), Entry.entry(2, rectangle(-5, -6, -1, -2)));
+        List<Entry<Integer, Rectangle>> packed = PackedEntries.pack(entries);
+        assertTrue(packed instanceof PackedEntries);
+        assertEquals(entries, packed);
+        assertEquals(rectangle(-5, -6, 3, 4), ((PackedEntries<Integer, Rectangle>) packed).mbr());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMixedGeometriesAreNotPacked() {
+        List<Entry<Integer, Geometry>> entries = Arrays.asList(
+                Entry.<Integer, Geometry> entry(1, point(1, 2)),
+                Entry.<Integer, Geometry> entry(2, rectangle(1, 2, 3, 4)));
+        assertSame(entries, PackedEntries.pack(entries));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCirclesAreNotPacked() {
+        List<Entry<Integer, Geometry>> entries = Arrays.asList(Entry.<Integer, Geometry> entry(1,
+                circle(1, 2, 3)));
+        assertSame(entries, PackedEntries.pack(entries));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testIntersectsMatchesGeometryIntersects() {
+        List<Entry<Integer, Rectangle>> entries = Arrays.asList(
+                Entry.entry(1, rectangle(1, 1, 2, 2)), Entry.entry(2, rectangle(3, 3, 4, 4)));
+        PackedEntries<Integer, Rectangle> packed = (PackedEntries<Integer, Rectangle>) PackedEntries
+                .pack(entries);
+        Rectangle[] queries = { rectangle(0, 0, 1, 1), rectangle(2, 2, 3, 3),
+                rectangle(2.5, 2.5, 2.6, 2.6), rectangle(0, 0, 10, 10), rectangle(1.5, 0, 1.6, 5) };
+        for (Rectangle r : queries)
+            for (int i = 0; i < entries.size(); i++)
+                assertEquals(entries.get(i).geometry().intersects(r), packed.intersects(i, r));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPointIntersects() {
+        PackedEntries<Integer, Point> packed = (PackedEntries<Integer, Point>) PackedEntries
+                .pack(Arrays.asList(Entry.entry(1, point(1, 2))));
+        assertTrue(packed.intersects(0, rectangle(1, 2, 1, 2)));
+        assertTrue(packed.intersects(0, rectangle(0, 0, 1, 2)));
+        assertFalse(packed.intersects(0, rectangle(0, 0, 0.9, 2)));
+    }
+
+}
@@ -21,16 +21,22 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.schedulers.Schedulers;
 
 import com.github.davidmoten.rtree.geometry.Circle;
 import com.github.davidmoten.rtree.geometry.Geometries;
@@ -507,6 +513,201 @@ public class RTreeTest {
         assertFalse(completeCalled.get());
     }
 
+    @Test
+    public void testNearestUnboundedMatchesSortedDistancesOfGreekData() {
+        List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
+        RTree<Object, Point> tree = RTree.star().maxChildren(8).<Object, Point> create()
+                .add(entries);
+        final Rectangle r = rectangle(38.5, 22.5, 38.6, 22.6);
+        List<Double> expected = new ArrayList<Double>();
+        for (Entry<Object, Point> entry : entries)
+            expected.add(entry.geometry().distance(r));
+        Collections.sort(expected);
+        List<Entry<Object, Point>> list = tree.nearest(r).take(100).toList().toBlocking()
+                .single();
+        assertEquals(100, list.size());
+        for (int i = 0; i < list.size(); i++)
+            assertEquals(expected.get(i), list.get(i).geometry().distance(r), 0.0);
+    }
+
+    @Test
+    public void testNearestUnboundedReturnsAllEntriesInOrder() {
+        RTree<Object, Rectangle> tree = RTree.maxChildren(4).<Object, Rectangle> create();
+        for (int i = 20; i >= 1; i--)
+            tree = tree.add(e(i));
+        List<Entry<Object, Rectangle>> list = tree.nearest(point(0, 0)).toList().toBlocking()
+                .single();
+        assertEquals(20, list.size());
+        for (int i = 0; i < list.size(); i++)
+            assertEquals(i + 1, list.get(i).value());
+    }
+
+    @Test
+    public void testNearestUnboundedOnEmptyTree() {
+        assertTrue(RTree.create().nearest(point(0, 0)).isEmpty().toBlocking().single());
+    }
+
+    @Test
+    public void testNearestUnboundedSupportsBackpressure() {
+        RTree<Object, Rectangle> tree = RTree.maxChildren(4).<Object, Rectangle> create()
+                .add(e(1)).add(e(2)).add(e(3)).add(e(4)).add(e(5));
+        final List<Object> values = new ArrayList<Object>();
+        tree.nearest(point(0, 0)).subscribe(new Subscriber<Entry<Object, Rectangle>>() {
+
+            @Override
+            public void onStart() {
+                request(2);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onNext(Entry<Object, Rectangle> entry) {
+                values.add(entry.value());
+            }
+        });
+        assertEquals(Arrays.<Object> asList(1, 2), values);
+    }
+
+    @Test
+    public void testJoinMatchesNestedLoop() {
+        Random random = new Random(7);
+        List<Entry<Integer, Rectangle>> zones = new ArrayList<Entry<Integer, Rectangle>>();
+        for (int i = 0; i < 300; i++) {
+            float x = random.nextFloat() * 100;
+            float y = random.nextFloat() * 100;
+            zones.add(Entry.entry(i, rectangle(x, y, x + random.nextFloat() * 5, y
+                    + random.nextFloat() * 5)));
+        }
+        List<Entry<Integer, Point>> positions = new ArrayList<Entry<Integer, Point>>();
+        for (int i = 0; i < 2000; i++)
+            positions.add(Entry.entry(i, point(random.nextFloat() * 100, random.nextFloat() * 100)));
+        RTree<Integer, Rectangle> zoneTree = RTree.maxChildren(4).<Integer, Rectangle> create()
+                .add(zones);
+        RTree<Integer, Point> positionTree = RTree.star().maxChildren(10)
+                .<Integer, Point> create().add(positions);
+
+        Set<EntryPair<Integer, Rectangle, Integer, Point>> expected = new HashSet<EntryPair<Integer, Rectangle, Integer, Point>>();
+        for (Entry<Integer, Rectangle> zone : zones)
+            for (Entry<Integer, Point> position : positions)
+                if (zone.geometry().intersects(position.geometry().mbr()))
+                    expected.add(new EntryPair<Integer, Rectangle, Integer, Point>(zone, position));
+        assertTrue(expected.size() > 0);
+
+        List<EntryPair<Integer, Rectangle, Integer, Point>> list = zoneTree.join(positionTree)
+                .toList().toBlocking().single();
+        assertEquals(expected.size(), list.size());
+        assertEquals(expected, new HashSet<EntryPair<Integer, Rectangle, Integer, Point>>(list));
+
+        List<EntryPair<Integer, Point, Integer, Rectangle>> reversed = positionTree
+                .join(zoneTree).toList().toBlocking().single();
+        assertEquals(expected.size(), reversed.size());
+
+        List<EntryPair<Integer, Rectangle, Integer, Point>> parallel = zoneTree
+                .join(positionTree, new Func2<Rectangle, Point, Boolean>() {
+                    @Override
+                    public Boolean call(Rectangle r, Point p) {
+                        return true;
+                    }
+                }, Schedulers.computation()).toList().toBlocking().single();
+        assertEquals(expected.size(), parallel.size());
+        assertEquals(expected, new HashSet<EntryPair<Integer, Rectangle, Integer, Point>>(parallel));
+    }
+
+    @Test
+    public void testJoinUsesIntersectsFunction() {
+        RTree<String, Circle> circles = RTree.<String, Circle> create()
+                .add("a", circle(0, 0, 1)).add("b", circle(10, 10, 1));
+        RTree<String, Point> points = RTree.<String, Point> create().add("p", point(0.9, 0.9))
+                .add("q", point(0.5, 0.5)).add("r", point(10, 10.5));
+        List<EntryPair<String, Circle, String, Point>> list = circles
+                .join(points, new Func2<Circle, Point, Boolean>() {
+                    @Override
+                    public Boolean call(Circle c, Point p) {
+                        return c.intersects(p);
+                    }
+                }).toList().toBlocking().single();
+        Set<String> found = new HashSet<String>();
+        for (EntryPair<String, Circle, String, Point> pair : list)
+            found.add(pair.left().value() + pair.right().value());
+        assertEquals(Sets.newHashSet("aq", "br"), found);
+    }
+
+    @Test
+    public void testJoinWithEmptyTree() {
+        RTree<Object, Rectangle> tree = RTree.<Object, Rectangle> create().add(e(1));
+        RTree<Object, Rectangle> empty = RTree.create();
+        assertTrue(tree.join(empty).isEmpty().toBlocking().single());
+        assertTrue(empty.join(tree).isEmpty().toBlocking().single());
+        assertTrue(empty.join(tree, new Func2<Rectangle, Rectangle, Boolean>() {
+            @Override
+            public Boolean call(Rectangle a, Rectangle b) {
+                return true;
+            }
+        }, Schedulers.computation()).isEmpty().toBlocking().single());
+    }
+
+    @Test
+    public void testParallelSearchMatchesSearch() {
+        RTree<Object, Point> tree = RTree.star().maxChildren(8).<Object, Point> create()
+                .add(GreekEarthquakes.entriesList());
+        Rectangle r = rectangle(36, 21, 40, 26);
+        List<Entry<Object, Point>> expected = tree.search(r).toList().toBlocking().single();
+        assertTrue(expected.size() > 1000);
+
+        List<Entry<Object, Point>> unordered = tree.search(r, Schedulers.computation(), 50)
+                .toList().toBlocking().single();
+        assertEquals(expected.size(), unordered.size());
+        assertEquals(new HashSet<Entry<Object, Point>>(expected),
+                new HashSet<Entry<Object, Point>>(unordered));
+
+        assertEquals(expected, tree.searchInOrder(r, Schedulers.computation(), 50).toList()
+                .toBlocking().single());
+
+        assertEquals(expected.size(), (int) tree.search(r, Schedulers.computation()).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testParallelSearchWithVisitor() {
+        RTree<Object, Point> tree = RTree.star().maxChildren(8).<Object, Point> create()
+                .add(GreekEarthquakes.entriesList());
+        Rectangle r = rectangle(36, 21, 40, 26);
+        final AtomicInteger count = new AtomicInteger();
+        tree.search(r, new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                count.incrementAndGet();
+            }
+        }, Schedulers.computation(), 50);
+        assertEquals((int) tree.search(r).count().toBlocking().single(), count.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testParallelSearchWithVisitorRethrowsError() {
+        RTree<Object, Rectangle> tree = RTree.<Object, Rectangle> create().add(e(1));
+        tree.search(r(1), new Action1<Entry<Object, Rectangle>>() {
+            @Override
+            public void call(Entry<Object, Rectangle> entry) {
+                throw new IllegalStateException("boo");
+            }
+        }, Schedulers.computation(), 1);
+    }
+
+    @Test
+    public void testParallelSearchOfEmptyTree() {
+        RTree<Object, Point> tree = RTree.create();
+        assertTrue(tree.search(r(1), Schedulers.computation()).isEmpty().toBlocking().single());
+        assertTrue(tree.searchInOrder(r(1), Schedulers.computation(), 10).isEmpty().toBlocking()
+                .single());
+    }
+
     @Test
     public void testVisualizer() {
         List<Entry<Object, Geometry>> entries = createRandomEntries(1000);
@@ -880,6 +1081,186 @@ public class RTreeTest {
         assertEquals(0, list.size());
     }
 
+    @Test
+    public void testBulkLoadOfEmptyListGivesEmptyTree() {
+        RTree<Object, Rectangle> tree = RTree.create(new ArrayList<Entry<Object, Rectangle>>());
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.calculateDepth());
+    }
+
+    @Test
+    public void testBulkLoadOfOneEntry() {
+        RTree<Object, Rectangle> tree = RTree.create(Collections.singletonList(e(1)));
+        assertEquals(1, tree.size());
+        assertEquals(Collections.singletonList(e(1)), tree.entries().toList().toBlocking().single());
+    }
+
+    @Test
+    public void testBulkLoadSearchMatchesIncrementalBuild() {
+        List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
+        RTree<Object, Point> packed = RTree.star().maxChildren(8).create(entries);
+        RTree<Object, Point> incremental = RTree.star().maxChildren(8).<Object, Point> create()
+                .add(entries);
+        assertEquals(entries.size(), packed.size());
+        assertEquals(entries.size(), (int) packed.entries().count().toBlocking().single());
+        Rectangle r = rectangle(40, 27.0, 40.5, 27.5);
+        assertEquals(Sets.newHashSet(incremental.search(r).toList().toBlocking().single()),
+                Sets.newHashSet(packed.search(r).toList().toBlocking().single()));
+    }
+
+    @Test
+    public void testBulkLoadHonoursMinAndMaxChildren() {
+        for (int n = 1; n <= 200; n++) {
+            List<Entry<Object, Rectangle>> entries = new ArrayList<Entry<Object, Rectangle>>();
+            for (int i = 0; i < n; i++)
+                entries.add(e(i));
+            RTree<Object, Rectangle> tree = RTree.minChildren(2).maxChildren(5)
+                    .loadingFactor(1.0).create(entries);
+            assertEquals(n, tree.size());
+            checkChildrenCounts(tree.root().get(), tree.context(), true);
+            checkLeavesHaveDepth(tree.root().get(), tree.calculateDepth(), 1);
+        }
+    }
+
+    @Test
+    public void testBulkLoadCanBeAddedToAndDeletedFrom() {
+        List<Entry<Object, Rectangle>> entries = new ArrayList<Entry<Object, Rectangle>>();
+        for (int i = 0; i < 100; i++)
+            entries.add(e(i));
+        RTree<Object, Rectangle> tree = RTree.maxChildren(4).create(entries).add(e(100))
+                .delete(e(3));
+        assertEquals(100, tree.size());
+        assertEquals(100, (int) tree.entries().count().toBlocking().single());
+        assertTrue(tree.search(r(3)).filter(new Func1<Entry<Object, Rectangle>, Boolean>() {
+            @Override
+            public Boolean call(Entry<Object, Rectangle> entry) {
+                return entry.equals(e(3));
+            }
+        }).isEmpty().toBlocking().single());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadingFactorMustBePositive() {
+        RTree.loadingFactor(0);
+    }
+
+    @Test
+    public void testSearchWithVisitorMatchesObservableSearch() {
+        List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
+        RTree<Object, Point> tree = RTree.star().maxChildren(10).<Object, Point> create()
+                .add(entries);
+        Rectangle r = rectangle(40, 27.0, 40.5, 27.5);
+        final List<Entry<Object, Point>> found = new ArrayList<Entry<Object, Point>>();
+        tree.search(r, new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                found.add(entry);
+            }
+        });
+        assertEquals(22, found.size());
+        assertEquals(Sets.newHashSet(tree.search(r).toList().toBlocking().single()),
+                Sets.newHashSet(found));
+    }
+
+    @Test
+    public void testSearchWithVisitorOnEmptyTree() {
+        RTree<Object, Point> tree = RTree.create();
+        tree.search(point(1, 1), new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                throw new RuntimeException("unexpected");
+            }
+        });
+    }
+
+    @Test
+    public void testSearchIteratorMatchesObservableSearch() {
+        List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
+        RTree<Object, Point> tree = RTree.maxChildren(4).<Object, Point> create().add(entries);
+        Rectangle r = rectangle(40, 27.0, 40.5, 27.5);
+        List<Entry<Object, Point>> found = Lists.newArrayList(tree.searchIterator(r));
+        assertEquals(22, found.size());
+        assertEquals(tree.search(r).toList().toBlocking().single(), found);
+    }
+
+    @Test
+    public void testSearchIteratorOnEmptyTree() {
+        RTree<Object, Point> tree = RTree.create();
+        assertFalse(tree.searchIterator(rectangle(0, 0, 1, 1)).hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testSearchIteratorThrowsWhenExhausted() {
+        RTree<Object, Rectangle> tree = RTree.<Object, Rectangle> create().add(e(1));
+        Iterator<Entry<Object, Rectangle>> it = tree.searchIterator(r(1));
+        assertEquals(e(1), it.next());
+        it.next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSearchIteratorRemoveNotSupported() {
+        RTree<Object, Rectangle> tree = RTree.<Object, Rectangle> create().add(e(1));
+        Iterator<Entry<Object, Rectangle>> it = tree.searchIterator(r(1));
+        it.next();
+        it.remove();
+    }
+
+    @Test
+    public void testPackedLeavesSearchMatchesDefaultLeaves() {
+        List<Entry<Object, Point>> entries = GreekEarthquakes.entriesList();
+        RTree<Object, Point> tree = RTree.star().maxChildren(10).<Object, Point> create()
+                .add(entries);
+        RTree<Object, Point> packed = RTree.star().maxChildren(10).packedLeaves()
+                .<Object, Point> create().add(entries);
+        assertTrue(packed.context().packedLeaves());
+        Rectangle r = rectangle(40, 27.0, 40.5, 27.5);
+        Set<Entry<Object, Point>> expected = Sets.newHashSet(tree.search(r).toList()
+                .toBlocking().single());
+        assertEquals(22, expected.size());
+        assertEquals(expected, Sets.newHashSet(packed.search(r).toList().toBlocking().single()));
+        assertEquals(expected, Sets.newHashSet(packed.searchIterator(r)));
+        final Set<Entry<Object, Point>> found = new HashSet<Entry<Object, Point>>();
+        packed.search(r, new Action1<Entry<Object, Point>>() {
+            @Override
+            public void call(Entry<Object, Point> entry) {
+                found.add(entry);
+            }
+        });
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void testPackedLeavesDelete() {
+        List<Entry<Object, Rectangle>> entries = new ArrayList<Entry<Object, Rectangle>>();
+        for (int i = 0; i < 100; i++)
+            entries.add(e(i));
+        RTree<Object, Rectangle> tree = RTree.packedLeaves().maxChildren(4).create(entries);
+        for (int i = 0; i < 100; i += 2)
+            tree = tree.delete(e(i));
+        assertEquals(50, tree.size());
+        assertEquals(50, (int) tree.entries().count().toBlocking().single());
+        assertTrue(tree.search(r(2)).toList().toBlocking().single().contains(e(1)));
+        assertFalse(tree.search(r(2)).toList().toBlocking().single().contains(e(2)));
+    }
+
+    static void checkChildrenCounts(Node<Object, Rectangle> node, Context context,
+            boolean isRoot) {
+        assertTrue(node.count() <= context.maxChildren());
+        if (!isRoot)
+            assertTrue(node.count() >= context.minChildren());
+        if (node instanceof NonLeaf)
+            for (Node<Object, Rectangle> child : ((NonLeaf<Object, Rectangle>) node).children())
+                checkChildrenCounts(child, context, false);
+    }
+
+    static void checkLeavesHaveDepth(Node<Object, Rectangle> node, int depth, int level) {
+        if (node instanceof Leaf)
+            assertEquals(depth, level);
+        else
+            for (Node<Object, Rectangle> child : ((NonLeaf<Object, Rectangle>) node).children())
+                checkLeavesHaveDepth(child, depth, level + 1);
+    }
+
     private static Func2<Point, Circle, Double> distanceCircleToPoint = new Func2<Point, Circle, Double>() {
         @Override
         public Double call(Point point, Circle circle) {
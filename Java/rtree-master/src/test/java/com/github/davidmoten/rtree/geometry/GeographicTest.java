@@ -0,0 +1,104 @@
+package com.github.davidmoten.rtree.geometry;
+
+import static com.github.davidmoten.rtree.geometry.Geometries.point;
+import static com.github.davidmoten.rtree.geometry.Geometries.rectangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.davidmoten.grumpy.core.Position;
+
+public class GeographicTest {
+
+    private static final Point SYDNEY = point(151.2094, -33.86);
+    private static final Point CANBERRA = point(149.1244, -35.3075);
+
+    @Test
+    public void testDistanceBetweenPointsMatchesPosition() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            Point a = randomPoint(random);
+            Point b = randomPoint(random);
+            double expected = Position.create(a.y(), a.x()).getDistanceToKm(
+                    Position.create(b.y(), b.x()));
+            assertEquals(expected, Geographic.distanceKm(a, b), expected * 0.001 + 0.001);
+        }
+        assertEquals(249.7, Geographic.distanceKm(SYDNEY, CANBERRA), 0.1);
+    }
+
+    @Test
+    public void testDistanceToDegenerateRectangleIsDistanceToPoint() {
+        assertEquals(Geographic.distanceKm(SYDNEY, CANBERRA),
+                Geographic.distanceKm(SYDNEY, CANBERRA.mbr()), 0.000001);
+    }
+
+    @Test
+    public void testDistanceToContainingRectangleIsZero() {
+        assertEquals(0, Geographic.distanceKm(SYDNEY, rectangle(150, -34, 152, -33)), 0);
+        // across the antimeridian
+        assertEquals(0, Geographic.distanceKm(point(-179, 10), rectangle(170, 0, 190, 20)), 0);
+    }
+
+    @Test
+    public void testDistanceToSameMeridianRectangle() {
+        // one degree of latitude
+        assertEquals(111.19, Geographic.distanceKm(point(10, 0), rectangle(5, 1, 15, 2)), 0.01);
+    }
+
+    @Test
+    public void testDistanceToRectangleMatchesBruteForce() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            Point p = randomPoint(random);
+            float lon = random.nextFloat() * 360 - 180;
+            float lat = random.nextFloat() * 170 - 85;
+            Rectangle r = rectangle(lon, lat, lon + random.nextFloat() * 40,
+                    Math.min(90, lat + random.nextFloat() * 40));
+            double d = Geographic.distanceKm(p, r);
+            double min = Double.MAX_VALUE;
+            int n = 200;
+            for (int j = 0; j <= n; j++)
+                for (int k = 0; k <= n; k++) {
+                    Point q = point(r.x1() + (r.x2() - r.x1()) * j / n, r.y1() + (r.y2() - r.y1())
+                            * k / n);
+                    min = Math.min(min, Geographic.distanceKm(p, q));
+                }
+            // a lower bound that is close to the sampled minimum
+            assertTrue(p + " " + r + " " + d + " " + min, d <= min + 0.001);
+            assertEquals(min, d, 25);
+        }
+    }
+
+    @Test
+    public void testBoundingRectanglesContainPointsWithinDistance() {
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            Point p = randomPoint(random);
+            double distanceKm = random.nextDouble() * 3000;
+            List<Rectangle> bounds = Geographic.boundingRectangles(p, distanceKm);
+            for (int j = 0; j < 20; j++) {
+                Position q = Position.create(p.y(), p.x()).predict(
+                        random.nextDouble() * distanceKm * 0.999, random.nextDouble() * 360);
+                Point pq = Geometries.pointGeographic(q.getLon(), q.getLat());
+                boolean found = false;
+                for (Rectangle r : bounds)
+                    found |= r.intersects(pq.mbr());
+                assertTrue(p + " " + distanceKm + " " + pq, found);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundingRectanglesOfPolarRegionCoverAllLongitudes() {
+        List<Rectangle> bounds = Geographic.boundingRectangles(point(0, 89), 500);
+        assertEquals(rectangle(-180, 89 - 500 / 111.195, 180, 90), bounds.get(1));
+    }
+
+    private static Point randomPoint(Random random) {
+        return point(random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90);
+    }
+}